@@ -16,20 +16,31 @@ import com.fleetpin.graphql.database.manager.access.ForbiddenWriteException;
 import com.fleetpin.graphql.database.manager.access.ModificationPermission;
 import com.fleetpin.graphql.database.manager.util.BackupItem;
 import com.fleetpin.graphql.database.manager.util.TableCoreUtil;
+import com.google.common.collect.HashMultimap;
 import org.dataloader.DataLoader;
 import org.dataloader.DataLoaderOptions;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @SuppressWarnings("unchecked")
 public class Database {
+	static final Duration DEFAULT_BATCH_WINDOW = Duration.ofMillis(1);
+
 	private String organisationId;
 	private final DatabaseDriver driver;
 
@@ -39,22 +50,42 @@ public class Database {
 
 	private final Function<Table, CompletableFuture<Boolean>> putAllow;
 
+	private final Executor dispatcher;
+	private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+	private volatile CompletableFuture<?> running;
+
 	Database(String organisationId, DatabaseDriver driver, ModificationPermission putAllow) {
+		this(organisationId, driver, putAllow, DEFAULT_BATCH_WINDOW);
+	}
+
+	Database(String organisationId, DatabaseDriver driver, ModificationPermission putAllow, Duration batchWindow) {
 		this.organisationId = organisationId;
 		this.driver = driver;
 		this.putAllow = putAllow;
+		//shared by every query batch so overlapping batches are bounded together
+		var queryScope = driver.newQueryScope();
+		if (batchWindow.isZero()) {
+			this.dispatcher = ForkJoinPool.commonPool();
+		} else {
+			this.dispatcher = CompletableFuture.delayedExecutor(batchWindow.toNanos(), TimeUnit.NANOSECONDS);
+		}
 
 		items = new TableDataLoader<>(new DataLoader<DatabaseKey<Table>, Table>(keys -> {
 			return driver.get(keys);
-		}, DataLoaderOptions.newOptions().setMaxBatchSize(driver.maxBatchSize()))); // will auto call global
+		}, DataLoaderOptions.newOptions().setMaxBatchSize(driver.maxBatchSize())), this::requestDispatch); // will auto call global
 
 		queries = new TableDataLoader<>(new DataLoader<DatabaseQueryKey<Table>, List<Table>>(keys -> {
-			return merge(keys.stream().map(key -> driver.query(key)));
-		}, DataLoaderOptions.newOptions().setBatchingEnabled(false))); // will auto call global
+			return driver.query(keys, queryScope).thenApply(results -> {
+				for(int i = 0; i < keys.size(); i++) {
+					primeAll(keys.get(i).getQuery().getType(), results.get(i));
+				}
+				return results;
+			});
+		}), this::requestDispatch); // will auto call global
 		
 		queryHistories = new TableDataLoader<>(new DataLoader<DatabaseQueryHistoryKey<Table>, List<Table>>(keys -> {
 			return merge(keys.stream().map(key -> driver.queryHistory(key)));
-		}, DataLoaderOptions.newOptions().setBatchingEnabled(false))); // will auto call global
+		}, DataLoaderOptions.newOptions().setBatchingEnabled(false)), this::requestDispatch); // will auto call global
 	}
 
 	public <T extends Table> CompletableFuture<List<T>> query(Class<T> type, Function<QueryBuilder<T>, QueryBuilder<T>> func) {
@@ -68,6 +99,33 @@ public class Database {
 				.thenApply(items -> items.stream().filter(Objects::nonNull).collect(Collectors.toList()));
 	}
 	
+	/**
+	 * Streams the results of a query without holding them all in memory. Nothing is cached so each subscription reads from the database again.
+	 *
+	 * @param <T> database entity type to read
+	 * @param query query to run, limit caps the number of entities published
+	 * @return publisher that reads pages as the subscriber requests more entities
+	 */
+	public <T extends Table> Flow.Publisher<T> queryStream(Query<T> query) {
+		DatabaseQueryKey<T> key = KeyFactory.createDatabaseQueryKey(organisationId, query);
+		return driver.queryStream(key);
+	}
+
+	/**
+	 * Reads a single page of a query, pages are not cached.
+	 *
+	 * @param <T> database entity type to read
+	 * @param query limit sets the page size, cursor resumes from a previous page
+	 * @return the page with a cursor for the next one
+	 */
+	public <T extends Table> CompletableFuture<QueryPage<T>> queryPage(Query<T> query) {
+		DatabaseQueryKey<T> key = KeyFactory.createDatabaseQueryKey(organisationId, query);
+		return driver.queryPage(key).thenApply(page -> {
+			primeAll(query.getType(), page.getItems());
+			return page;
+		});
+	}
+
 	public <T extends Table> CompletableFuture<List<T>> queryHistory(QueryHistory<T> queryHistory) {
 		DatabaseQueryHistoryKey<Table> key = (DatabaseQueryHistoryKey<Table>) KeyFactory.createDatabaseQueryHistoryKey(organisationId, queryHistory);
 		CompletableFuture<List<T>> toReturn = queryHistories.load(key);
@@ -80,7 +138,12 @@ public class Database {
 	}
 
 	public <T extends Table> CompletableFuture<List<T>> queryGlobal(Class<T> type, String id) {
-		return driver.queryGlobal(type, id);
+		return driver.queryGlobal(type, id).thenApply(results -> {
+			//a get merges the global row into the organisation one so only rows that exist just for this organisation are safe to cache
+			var globalIds = results.stream().filter(entity -> !organisationId.equals(getSourceOrganisationId(entity))).map(Table::getId).collect(Collectors.toSet());
+			primeAll(type, results.stream().filter(entity -> organisationId.equals(getSourceOrganisationId(entity)) && !globalIds.contains(entity.getId())).collect(Collectors.toList()));
+			return results;
+		});
 	}
 	public <T extends Table> CompletableFuture<T> queryGlobalUnique(Class<T> type, String id) {
 		return queryGlobal(type, id).thenApply(items -> {
@@ -98,16 +161,90 @@ public class Database {
 		return driver.takeBackup(organisationId);
 	}
 
+	/**
+	 * Streams the organisation to the stream as newline delimited json without holding it all in memory, the stream is left open
+	 * @return number of items written
+	 */
+	public CompletableFuture<Long> backup(String organisationId, OutputStream out) {
+		return backup(organisationId, out, false);
+	}
+
+	public CompletableFuture<Long> backup(String organisationId, OutputStream out, boolean gzip) {
+		return driver.backup(organisationId, out, gzip);
+	}
+
+	/**
+	 * Streams what changed in the organisation since the instant, entities of types with history only, along with tombstones for those removed.
+	 * Restore with {@link #restoreIncremental(InputStream, List)} on top of a full backup taken before the instant
+	 * @return number of items written
+	 */
+	public CompletableFuture<Long> takeIncrementalBackup(String organisationId, Instant since, OutputStream out) {
+		return takeIncrementalBackup(organisationId, since, out, false);
+	}
+
+	public CompletableFuture<Long> takeIncrementalBackup(String organisationId, Instant since, OutputStream out, boolean gzip) {
+		return driver.takeIncrementalBackup(organisationId, since, out, gzip);
+	}
+
 	public CompletableFuture<Void> restoreBackup(List<BackupItem> entities) {
 		return driver.restoreBackup(entities);
 	}
 
+	/**
+	 * Completes once every item is written, the listener is told the running count as batches finish
+	 */
+	public CompletableFuture<Void> restoreBackup(List<BackupItem> entities, ProgressListener listener) {
+		return driver.restoreBackup(entities, listener);
+	}
+
+	/**
+	 * Restores a backup written by {@link #backup(String, OutputStream)}, reading items as they are written rather than loading the whole backup first.
+	 * Gzipped backups are detected, the stream is left open
+	 * @return number of items written
+	 */
+	public CompletableFuture<Long> restore(InputStream in) {
+		return restore(in, RestoreOptions.DEFAULT);
+	}
+
+	public CompletableFuture<Long> restore(InputStream in, RestoreOptions options) {
+		return restore(in, options, ProgressListener.NONE);
+	}
+
+	public CompletableFuture<Long> restore(InputStream in, RestoreOptions options, ProgressListener listener) {
+		return driver.restore(in, options, listener);
+	}
+
+	/**
+	 * Restores a full backup then each increment on top of it, oldest first. An increment only starts once the one before it is written
+	 * @return number of items written across all of them
+	 */
+	public CompletableFuture<Long> restoreIncremental(InputStream base, List<InputStream> increments) {
+		return restoreIncremental(base, increments, RestoreOptions.DEFAULT);
+	}
+
+	public CompletableFuture<Long> restoreIncremental(InputStream base, List<InputStream> increments, RestoreOptions options) {
+		var future = restore(base, options);
+		for (var increment : increments) {
+			future = future.thenCompose(count -> restore(increment, options).thenApply(written -> count + written));
+		}
+		return future;
+	}
+
+	/**
+	 * Loads every entity of the type so they can be returned before deleting them in bulk.
+	 *
+	 * @deprecated holds the whole type in memory, use {@link #deleteAll(Class)} which only pages through keys
+	 */
+	@Deprecated
 	public <T extends Table> CompletableFuture<List<T>> delete(String organisationId, Class<T> clazz) {
+		var table = TableCoreUtil.table(clazz);
+		items.clearIf(key -> TableCoreUtil.table(key.getType()).equals(table));
+		clearQueries(table, null);
 		return driver.delete(organisationId, clazz);
 	}
 
 	public <T extends Table> CompletableFuture<List<T>> querySecondary(Class<T> type, String id) {
-		return driver.querySecondary(type, organisationId, id, items);
+		return driver.querySecondary(type, organisationId, id, items).thenApply(results -> primeAll(type, results));
 	}
 
 	public <T extends Table> CompletableFuture<T> querySecondaryUnique(Class<T> type, String id) {
@@ -154,15 +291,76 @@ public class Database {
 			}
 			DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
     		items.clear(key);
-    		queries.clearAll();
+    		clearQueries(entity.getClass(), entity.getId());
 
     		if(deleteLinks) {
-    			return deleteLinks(entity).thenCompose(t -> driver.delete(organisationId, entity));
+    			return deleteLinks(entity).thenCompose(t -> {
+    				items.clear(key);
+    				return driver.delete(organisationId, entity);
+    			});
     		}
     		return driver.delete(organisationId, entity);
 		});
 	}
 
+	/**
+	 * Removes every entity of the type from the organisation without loading them. Links held by other entities are left in place.
+	 */
+	public <T extends Table> CompletableFuture<Void> deleteAll(Class<T> type) {
+		var table = TableCoreUtil.table(type);
+		items.clearIf(key -> TableCoreUtil.table(key.getType()).equals(table));
+		clearQueries(table, null);
+		return driver.deleteAll(organisationId, type);
+	}
+
+	/**
+	 * Deletes many entities in bulk, only passing for those whose revision matches what is currently in the database
+	 *
+	 * @param <T> database entity type to delete
+	 * @param entities entities to delete
+	 * @return a result for each entity in iteration order
+	 */
+	public <T extends Table> CompletableFuture<List<WriteResult<T>>> deleteAll(Collection<T> entities) {
+		return deleteAll(entities, true);
+	}
+
+	/**
+	 * Deletes many entities in bulk, much cheaper than a delete for each.
+	 *
+	 * @param <T> database entity type to delete
+	 * @param entities entities to delete, one that still has links fails as it would leave them dangling and one without permission fails with a ForbiddenWriteException
+	 * @param check only delete entities whose revision matches what is currently in the database
+	 * @return a result for each entity in iteration order, a failed revision check is reported as a RevisionMismatchException
+	 */
+	public <T extends Table> CompletableFuture<List<WriteResult<T>>> deleteAll(Collection<T> entities, boolean check) {
+		List<T> list = new ArrayList<>(entities);
+		return TableCoreUtil.all(list.stream().map(putAllow::apply).collect(Collectors.toList())).thenCompose(allowed -> {
+			List<WriteResult<T>> results = new ArrayList<>(Collections.nCopies(list.size(), null));
+			List<Integer> toDelete = new ArrayList<>();
+			for(int i = 0; i < list.size(); i++) {
+				T entity = list.get(i);
+				if(!allowed.get(i)) {
+					results.set(i, WriteResult.failure(entity, new ForbiddenWriteException("Delete not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId())));
+					continue;
+				}
+				if(!TableAccess.getTableLinks(entity).isEmpty()) {
+					results.set(i, WriteResult.failure(entity, new RuntimeException("deleting would leave dangling links")));
+					continue;
+				}
+				DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
+				items.clear(key);
+				clearQueries(entity.getClass(), entity.getId());
+				toDelete.add(i);
+			}
+			return driver.deleteAll(organisationId, toDelete.stream().map(list::get).collect(Collectors.toList()), check).thenApply(deleted -> {
+				for(int i = 0; i < deleted.size(); i++) {
+					results.set(toDelete.get(i), deleted.get(i));
+				}
+				return results;
+			});
+		});
+	}
+
 	public <T extends Table> CompletableFuture<List<T>> getLinks(final Table entry, Class<T> target) {
 		return driver.getViaLinks(organisationId, entry, target, items)
 			.thenApply(items -> items.stream().filter(Objects::nonNull).map(item -> (T) item).collect(Collectors.toList()));
@@ -188,10 +386,17 @@ public class Database {
 			if(!allow) {
 				throw new ForbiddenWriteException("Delete links not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId());
 			}
-			//impact of clearing links to tricky
-			items.clearAll();
-			queries.clearAll();
-			return driver.deleteLinks(organisationId, entity);
+			DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
+			items.clear(key);
+			clearQueries(entity.getClass(), entity.getId());
+
+			//only the entities on the other side of the links change, the links only know table names so match on that
+			var links = HashMultimap.create(TableAccess.getTableLinks(entity));
+			items.clearIf(k -> links.containsEntry(TableCoreUtil.table(k.getType()), k.getId()));
+			for(var link: links.entries()) {
+				clearQueries(link.getKey(), link.getValue());
+			}
+			return driver.deleteLinks(organisationId, entity).thenApply(this::prime);
 		});
 	}
 
@@ -199,6 +404,13 @@ public class Database {
 		return driver.destroyOrganisation(organisationId);
 	}
 
+	/**
+	 * @return items removed from each table, keyed by table name
+	 */
+	public CompletableFuture<Map<String, Long>> destroyOrganisationCounts(final String organisationId) {
+		return driver.destroyOrganisationCounts(organisationId);
+	}
+
 	/**
 	 * Will only pass if the entity revision matches what is currently in the database
 	 *
@@ -225,12 +437,111 @@ public class Database {
 			}
 			DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
     		items.clear(key);
-    		queries.clearAll();
-    		return driver.put(organisationId, entity, check);
+    		clearQueries(entity.getClass(), entity.getId());
+    		return driver.put(organisationId, entity, check).thenApply(this::prime);
 		});
 	}
 
 
+	/**
+	 * Writes many entities in bulk, much cheaper than a put for each.
+	 *
+	 * @param <T> database entity type to update
+	 * @param entities entities to write, an entity without permission to be written fails with a ForbiddenWriteException
+	 * @param check only write entities whose revision matches what is currently in the database
+	 * @return a result for each entity in iteration order, a failed revision check is reported as a RevisionMismatchException
+	 */
+	public <T extends Table> CompletableFuture<List<WriteResult<T>>> putAll(Collection<T> entities, boolean check) {
+		List<T> list = new ArrayList<>(entities);
+		return TableCoreUtil.all(list.stream().map(putAllow::apply).collect(Collectors.toList())).thenCompose(allowed -> {
+			List<WriteResult<T>> results = new ArrayList<>(Collections.nCopies(list.size(), null));
+			List<Integer> toWrite = new ArrayList<>();
+			for(int i = 0; i < list.size(); i++) {
+				T entity = list.get(i);
+				if(!allowed.get(i)) {
+					results.set(i, WriteResult.failure(entity, new ForbiddenWriteException("put not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId())));
+					continue;
+				}
+				DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
+				items.clear(key);
+				clearQueries(entity.getClass(), entity.getId());
+				toWrite.add(i);
+			}
+			return driver.putAll(organisationId, toWrite.stream().map(list::get).collect(Collectors.toList()), check).thenApply(written -> {
+				for(int i = 0; i < written.size(); i++) {
+					var result = written.get(i);
+					if(result.isSuccess()) {
+						prime(result.getEntity());
+					}
+					results.set(toWrite.get(i), result);
+				}
+				return results;
+			});
+		});
+	}
+
+	/**
+	 * Collects the puts, deletes and link changes made in the consumer and writes them together. Puts and deletes keep their revision checks, entities are updated in place once written.
+	 *
+	 * The writes are only all or nothing when they fit in a single dynamo transaction: at most 100 items once the changes to each entity are folded together,
+	 * and no entity both gaining and losing links of the same type through the other side of a link. Otherwise they are applied in parts one after the other
+	 * and a failure leaves the earlier parts written. Items written before links were stored are given an empty links map outside the transaction.
+	 * Drivers that can not write together apply each operation on its own.
+	 *
+	 * @param builder adds the operations, called before anything is written
+	 * @return fails with a RevisionMismatchException if any checked entity has changed
+	 */
+	public CompletableFuture<Void> transaction(Consumer<Transaction> builder) {
+		var transaction = new Transaction(driver::newId);
+		builder.accept(transaction);
+		var operations = transaction.getOperations();
+		if(operations.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return TableCoreUtil.all(operations.stream().map(operation -> putAllow.apply(operation.getEntity())).collect(Collectors.toList())).thenCompose(allowed -> {
+			for(int i = 0; i < operations.size(); i++) {
+				if(!allowed.get(i)) {
+					var entity = operations.get(i).getEntity();
+					throw new ForbiddenWriteException("Transaction not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId());
+				}
+			}
+			for(var operation: operations) {
+				var entity = operation.getEntity();
+				DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
+				items.clear(key);
+				clearQueries(entity.getClass(), entity.getId());
+				if(operation instanceof Transaction.Link) {
+					var link = (Transaction.Link) operation;
+					clearLinked(entity, link.getType(), link.getTargetIds());
+				} else if(operation instanceof Transaction.Unlink) {
+					var unlink = (Transaction.Unlink) operation;
+					clearLinked(entity, unlink.getType(), List.of(unlink.getTargetId()));
+				}
+			}
+			return driver.transaction(organisationId, operations).thenApply(__ -> {
+				//in order so the last operation on an entity decides what is left in the loader
+				for(var operation: operations) {
+					if(operation instanceof Transaction.Delete) {
+						var entity = operation.getEntity();
+						items.clear((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId()));
+					} else {
+						prime(operation.getEntity());
+					}
+				}
+				return null;
+			});
+		});
+	}
+
+	private void clearLinked(Table entity, Class<? extends Table> type, Collection<String> targetIds) {
+		var ids = new HashSet<>(getLinkIds(entity, type));
+		ids.addAll(targetIds);
+		for(String id: ids) {
+			items.clear((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, type, id));
+			clearQueries(type, id);
+		}
+	}
+
 	public <T extends Table> CompletableFuture<T> putGlobal(T entity) {
 		return putAllow.apply(entity).thenCompose(allow -> {
 			if(!allow) {
@@ -238,12 +549,51 @@ public class Database {
 			}
 			DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
     		items.clear(key);
-    		queries.clearAll();
+    		clearQueries(entity.getClass(), entity.getId());
     		return driver.put("global", entity, false);
 		});
 
 	}
 
+	/**
+	 * Puts an entity the driver has just written back into the request cache so reading it again does not go back to the database
+	 */
+	private <T extends Table> T prime(T entity) {
+		DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
+		items.prime(key, entity);
+		return entity;
+	}
+
+	/**
+	 * Caches entities a query read in full so a following get does not read them again
+	 */
+	private <T extends Table> List<T> primeAll(Class<? extends Table> type, List<T> entities) {
+		for(var entity: entities) {
+			if(entity != null) {
+				DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, type, entity.getId());
+				items.primeIfAbsent(key, entity);
+			}
+		}
+		return entities;
+	}
+
+	private void clearQueries(Class<? extends Table> type, String id) {
+		clearQueries(TableCoreUtil.table(type), id);
+	}
+
+	/**
+	 * Drops cached queries that could contain the written entity, those on the same table whose prefix matches the id
+	 */
+	private void clearQueries(String table, String id) {
+		queries.clearIf(key -> {
+			var query = key.getQuery();
+			if(!table.equals(TableCoreUtil.table(query.getType()))) {
+				return false;
+			}
+			return query.getStartsWith() == null || id == null || id.startsWith(query.getStartsWith());
+		});
+	}
+
 	private <T> CompletableFuture<List<T>> merge(Stream<CompletableFuture<T>> stream) {
 		List<CompletableFuture<T>> list = stream.collect(Collectors.toList());
 
@@ -261,22 +611,42 @@ public class Database {
 
 	}
 
-	private static final Executor DELAYER = CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS);
-	@SuppressWarnings("rawtypes")
+	/**
+	 * Dispatches queued keys until toReturn completes. Nothing polls, a dispatch is scheduled when a key is queued and again once the previous dispatch finishes.
+	 *
+	 * @param toReturn future of the request this database is serving
+	 */
 	public void start(CompletableFuture<?> toReturn) {
-		if(toReturn.isDone()) {
+		this.running = toReturn;
+		requestDispatch();
+	}
+
+	private void requestDispatch() {
+		var running = this.running;
+		if(running == null || running.isDone() || !hasPending()) {
 			return;
 		}
+		if(dispatchScheduled.compareAndSet(false, true)) {
+			dispatcher.execute(this::dispatch);
+		}
+	}
 
-		if(items.dispatchDepth() > 0 || queries.dispatchDepth() > 0 || queryHistories.dispatchDepth() > 0) {
-			CompletableFuture[] all = new CompletableFuture[] {items.dispatch(), queries.dispatch(), queryHistories.dispatch()};
-			CompletableFuture.allOf(all).whenComplete((response, error) -> {
-				//go around again
-				start(toReturn);
-			});
-		}else {
-			CompletableFuture.supplyAsync(() -> null, DELAYER).acceptEither(toReturn, __ -> start(toReturn));
+	@SuppressWarnings("rawtypes")
+	private void dispatch() {
+		//cleared first so anything queued while dispatching schedules another round
+		dispatchScheduled.set(false);
+		if(running.isDone() || !hasPending()) {
+			return;
 		}
+		CompletableFuture[] all = new CompletableFuture[] {items.dispatch(), queries.dispatch(), queryHistories.dispatch()};
+		CompletableFuture.allOf(all).whenComplete((response, error) -> {
+			//go around again
+			requestDispatch();
+		});
+	}
+
+	private boolean hasPending() {
+		return items.dispatchDepth() > 0 || queries.dispatchDepth() > 0 || queryHistories.dispatchDepth() > 0;
 	}
 
 
@@ -288,20 +658,22 @@ public class Database {
 
 			DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
     		items.clear(key);
-    		queries.clearAll();
+    		clearQueries(entity.getClass(), entity.getId());
 
     		for(String id: getLinkIds(entity, class1)) {
     			key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, class1, id);
         		items.clear(key);
+        		clearQueries(class1, id);
     		}
 
     		for(String id: targetIds) {
     			key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, class1, id);
         		items.clear(key);
+        		clearQueries(class1, id);
     		}
 
 
-    		return driver.link(organisationId, entity, class1, targetIds);
+    		return driver.link(organisationId, entity, class1, targetIds).thenApply(this::prime);
 		});
 	}
 
@@ -314,6 +686,45 @@ public class Database {
 		}
 	}
 
+	/**
+	 * Links every entity to the one target, the same as calling link for each but the target is updated in a few requests rather than once per entity.
+	 *
+	 * @param <T> database entity type to link from
+	 * @param type type of the target
+	 * @param targetId replaces the links each entity has of the type
+	 * @param entities entities to link, one without permission fails with a ForbiddenWriteException
+	 * @return a result for each entity in iteration order, a failed revision check is reported as a RevisionMismatchException
+	 */
+	public <T extends Table> CompletableFuture<List<WriteResult<T>>> linkAll(Class<? extends Table> type, String targetId, Collection<T> entities) {
+		List<T> list = new ArrayList<>(entities);
+		return TableCoreUtil.all(list.stream().map(putAllow::apply).collect(Collectors.toList())).thenCompose(allowed -> {
+			List<WriteResult<T>> results = new ArrayList<>(Collections.nCopies(list.size(), null));
+			List<Integer> toLink = new ArrayList<>();
+			for(int i = 0; i < list.size(); i++) {
+				T entity = list.get(i);
+				if(!allowed.get(i)) {
+					results.set(i, WriteResult.failure(entity, new ForbiddenWriteException("Link not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId())));
+					continue;
+				}
+				DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
+				items.clear(key);
+				clearQueries(entity.getClass(), entity.getId());
+				clearLinked(entity, type, List.of(targetId));
+				toLink.add(i);
+			}
+			return driver.linkAll(organisationId, type, targetId, toLink.stream().map(list::get).collect(Collectors.toList())).thenApply(linked -> {
+				for(int i = 0; i < linked.size(); i++) {
+					var result = linked.get(i);
+					if(result.isSuccess()) {
+						prime(result.getEntity());
+					}
+					results.set(toLink.get(i), result);
+				}
+				return results;
+			});
+		});
+	}
+
 	public <T extends Table> CompletableFuture<T> unlink(
 			final T entity,
 			final Class<? extends Table> clazz,
@@ -332,17 +743,19 @@ public class Database {
 					entity.getId()
 			);
 			items.clear(key);
-			queries.clearAll();
+			clearQueries(entity.getClass(), entity.getId());
 
 			for (final String id : getLinkIds(entity, clazz)) {
 				key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, clazz, id);
 				items.clear(key);
+				clearQueries(clazz, id);
 			}
 
 			key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, clazz, targetId);
 			items.clear(key);
+			clearQueries(clazz, targetId);
 
-			return driver.unlink(organisationId, entity, clazz, targetId);
+			return driver.unlink(organisationId, entity, clazz, targetId).thenApply(this::prime);
 		});
 	}
 
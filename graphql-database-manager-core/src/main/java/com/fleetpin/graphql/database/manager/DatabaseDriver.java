@@ -12,12 +12,26 @@
 
 package com.fleetpin.graphql.database.manager;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fleetpin.graphql.database.manager.util.BackupItem;
+import com.fleetpin.graphql.database.manager.util.BackupWriter;
+import com.fleetpin.graphql.database.manager.util.CompletableFutureUtil;
+import com.fleetpin.graphql.database.manager.util.ListPublisher;
 import com.google.common.collect.HashMultimap;
 
 public abstract class DatabaseDriver {
@@ -25,10 +39,41 @@ public abstract class DatabaseDriver {
 
     public abstract <T extends Table> CompletableFuture<List<T>> delete(String organisationId, Class<T> clazz);
 
+    /**
+     * Removes every entity of the type from the organisation. By default the type is loaded and each entity deleted on its own.
+     */
+    public <T extends Table> CompletableFuture<Void> deleteAll(String organisationId, Class<T> clazz) {
+        return delete(organisationId, clazz).thenApply(deleted -> null);
+    }
+
+    /**
+     * Deletes many entities, results line up with the entities and a failure only fails its own entity. By default each entity is deleted on its own and the revision is always checked.
+     */
+    public <T extends Table> CompletableFuture<List<WriteResult<T>>> deleteAll(String organisationId, Collection<T> entities, boolean check) {
+        return CompletableFutureUtil.sequence(entities.stream().map(entity -> delete(organisationId, entity).handle((result, failure) -> {
+            if (failure == null) {
+                return WriteResult.success(result);
+            }
+            return WriteResult.failure(entity, failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+        })));
+    }
+
     public abstract <T extends Table> CompletableFuture<T> deleteLinks(String organisationId, T entity);
 
     public abstract <T extends Table> CompletableFuture<T> put(String organisationId, T entity, boolean check);
 
+    /**
+     * Writes many entities, results line up with the entities and a failure only fails its own entity. By default each entity is put on its own.
+     */
+    public <T extends Table> CompletableFuture<List<WriteResult<T>>> putAll(String organisationId, Collection<T> entities, boolean check) {
+        return CompletableFutureUtil.sequence(entities.stream().map(entity -> put(organisationId, entity, check).handle((result, failure) -> {
+            if (failure == null) {
+                return WriteResult.success(result);
+            }
+            return WriteResult.failure(entity, failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+        })));
+    }
+
 
     public abstract <T extends Table> CompletableFuture<List<T>> get(List<DatabaseKey<T>> keys);
 
@@ -36,10 +81,100 @@ public abstract class DatabaseDriver {
 
     public abstract <T extends Table> CompletableFuture<List<T>> query(DatabaseQueryKey<T> key);
 
+    /**
+     * Runs a batch of queries, results line up with the keys. Drivers can override to share reads between the keys.
+     */
+    public <T extends Table> CompletableFuture<List<List<T>>> query(List<DatabaseQueryKey<T>> keys) {
+        return CompletableFutureUtil.sequence(keys.stream().map(key -> query(key)));
+    }
+
+    /**
+     * Made once for each database, every query batch the database dispatches is handed the same one. Drivers that bound their queries use it to
+     * bound all of a database's batches together rather than each on its own, by default there is nothing to share.
+     */
+    public Object newQueryScope() {
+        return null;
+    }
+
+    /**
+     * Runs a batch of queries for the database that made the scope, by default the scope is ignored
+     */
+    public <T extends Table> CompletableFuture<List<List<T>>> query(List<DatabaseQueryKey<T>> keys, Object scope) {
+        return query(keys);
+    }
+
+    /**
+     * Streams the query results, by default the full result is loaded before anything is published. Drivers can override to read on demand.
+     */
+    public <T extends Table> Flow.Publisher<T> queryStream(DatabaseQueryKey<T> key) {
+        return new ListPublisher<>(query(key));
+    }
+
+    /**
+     * Reads a single page. By default the cursor is the last id returned and one extra entity is read to tell if there is more, drivers that merge several sources should override to track each one.
+     */
+    public <T extends Table> CompletableFuture<QueryPage<T>> queryPage(DatabaseQueryKey<T> key) {
+        var query = key.getQuery();
+        var after = query.getCursor() == null ? query.getAfter() : new String(Base64.getUrlDecoder().decode(query.getCursor()), StandardCharsets.UTF_8);
+        var pageQuery = QueryBuilder.create(query.getType())
+                .startsWith(query.getStartsWith())
+                .after(after)
+                .limit(query.getLimit() == null ? null : query.getLimit() + 1)
+                .build();
+        return query(KeyFactory.createDatabaseQueryKey(key.getOrganisationId(), pageQuery)).thenApply(items -> {
+            if (query.getLimit() == null || items.size() <= query.getLimit()) {
+                return new QueryPage<>(items, false, null);
+            }
+            var page = new ArrayList<>(items.subList(0, query.getLimit()));
+            var last = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+            return new QueryPage<>(page, true, last == null ? null : Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8)));
+        });
+    }
+
     public abstract CompletableFuture<Void> restoreBackup(List<BackupItem> entities);
 
+    /**
+     * Restores as {@link #restoreBackup(List)} telling the listener as items are written. By default progress is only reported once everything is written.
+     */
+    public CompletableFuture<Void> restoreBackup(List<BackupItem> entities, ProgressListener listener) {
+        return restoreBackup(entities).thenRun(() -> listener.progress(entities.size(), entities.size()));
+    }
+
     public abstract CompletableFuture<List<BackupItem>> takeBackup(String organisationId);
 
+    /**
+     * Writes every item of the organisation to the stream as newline delimited json, completing with the number written.
+     * By default the whole backup is taken first, drivers that can should write a page at a time.
+     */
+    public CompletableFuture<Long> backup(String organisationId, OutputStream out, boolean gzip) {
+        return takeBackup(organisationId).thenApply(items -> {
+            try (var writer = new BackupWriter(new ObjectMapper(), out, gzip)) {
+                for (var item : items) {
+                    writer.write(item);
+                }
+                return writer.getCount();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes only what changed in the organisation since the instant, in the same format as {@link #backup(String, OutputStream, boolean)},
+     * with tombstones for entities removed since. Drivers need a record of changes to do this so there is no default.
+     */
+    public CompletableFuture<Long> takeIncrementalBackup(String organisationId, Instant since, OutputStream out, boolean gzip) {
+        return CompletableFuture.failedFuture(new UnsupportedOperationException("incremental backups are not supported by " + getClass().getSimpleName()));
+    }
+
+    /**
+     * Restores what {@link #backup(String, OutputStream, boolean)} wrote reading the stream as it goes, completing with the number of items written.
+     * Drivers need to know their own backup item type so there is no default.
+     */
+    public CompletableFuture<Long> restore(InputStream in, RestoreOptions options, ProgressListener listener) {
+        return CompletableFuture.failedFuture(new UnsupportedOperationException("streaming restore is not supported by " + getClass().getSimpleName()));
+    }
+
     public abstract <T extends Table> CompletableFuture<List<T>> queryHistory(DatabaseQueryHistoryKey<T> key);
 
     public abstract <T extends Table> CompletableFuture<List<T>> queryGlobal(Class<T> type, String value);
@@ -48,6 +183,18 @@ public abstract class DatabaseDriver {
 
     public abstract <T extends Table> CompletableFuture<T> link(String organisationId, T entry, Class<? extends Table> class1, List<String> groupIds);
 
+    /**
+     * Links each entity to the target as a link of each would, results line up with the entities. By default each entity is linked on its own.
+     */
+    public <T extends Table> CompletableFuture<List<WriteResult<T>>> linkAll(String organisationId, Class<? extends Table> type, String targetId, Collection<T> entities) {
+        return CompletableFutureUtil.sequence(entities.stream().map(entity -> link(organisationId, entity, type, List.of(targetId)).handle((result, failure) -> {
+            if (failure == null) {
+                return WriteResult.success(result);
+            }
+            return WriteResult.failure(entity, failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+        })));
+    }
+
     public abstract <T extends Table> CompletableFuture<T> unlink(
         final String organisationId,
         final T entity,
@@ -55,12 +202,31 @@ public abstract class DatabaseDriver {
         final String targetId
     );
 
+    /**
+     * Applies the operations of a transaction in order. By default each one is written on its own so a failure part way leaves the earlier ones in place, drivers should override to write them together.
+     */
+    public CompletableFuture<Void> transaction(String organisationId, List<Transaction.Operation> operations) {
+        CompletableFuture<?> future = CompletableFuture.completedFuture(null);
+        for (var operation : operations) {
+            future = future.thenCompose(__ -> operation.apply(organisationId, this));
+        }
+        return future.thenApply(__ -> null);
+    }
+
     public abstract int maxBatchSize();
 
     public abstract String newId();
 
     public abstract CompletableFuture<Boolean> destroyOrganisation(final String organisationId);
 
+    /**
+     * Destroys the organisation as {@link #destroyOrganisation(String)}, completing with how many items were removed from each table.
+     * By default the counts are not known and the map is empty.
+     */
+    public CompletableFuture<Map<String, Long>> destroyOrganisationCounts(final String organisationId) {
+        return destroyOrganisation(organisationId).thenApply(__ -> Map.of());
+    }
+
     protected <T extends Table> String getSourceOrganisationId(final T entity) {
         return entity.getSourceOrganisationId();
     }
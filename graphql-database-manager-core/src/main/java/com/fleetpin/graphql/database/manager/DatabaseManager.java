@@ -1,5 +1,6 @@
 package com.fleetpin.graphql.database.manager;
 
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 
 import com.fleetpin.graphql.database.manager.access.ModificationPermission;
@@ -8,10 +9,19 @@ public abstract class DatabaseManager {
 
 
 	private final DatabaseDriver dynamoDb;
+	private final Duration batchWindow;
 	
 	
 	public DatabaseManager(DatabaseDriver dynamoDb) {
+		this(dynamoDb, Database.DEFAULT_BATCH_WINDOW);
+	}
+
+	/**
+	 * @param batchWindow how long a database waits after the first key is queued before it dispatches, gives the rest of a resolver wave a chance to join the batch
+	 */
+	public DatabaseManager(DatabaseDriver dynamoDb, Duration batchWindow) {
 		this.dynamoDb = dynamoDb;
+		this.batchWindow = batchWindow;
 	}
 
 
@@ -21,7 +31,7 @@ public abstract class DatabaseManager {
 	
 	
 	public Database getDatabase(String organisationId, ModificationPermission putAllow) {
-		return new Database(organisationId, dynamoDb, putAllow);
+		return new Database(organisationId, dynamoDb, putAllow, batchWindow);
 	}
 	
 }
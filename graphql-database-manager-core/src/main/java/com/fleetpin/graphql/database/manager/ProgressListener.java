@@ -0,0 +1,29 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager;
+
+/**
+ * Told about progress of a long running operation such as a restore. Called from whichever thread finished the work so it should return quickly.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+	ProgressListener NONE = (completed, total) -> {
+	};
+
+	/**
+	 * @param completed items done so far
+	 * @param total items there are to do, -1 when that is not known up front
+	 */
+	void progress(long completed, long total);
+}
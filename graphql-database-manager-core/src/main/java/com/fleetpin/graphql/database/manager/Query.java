@@ -8,8 +8,13 @@ public class Query<T extends Table> {
 	private final String startsWith;
 	private final String after;
 	private final Integer limit;
+	private final String cursor;
 
 	Query(Class<T> type, String startsWith, String after, Integer limit) {
+		this(type, startsWith, after, limit, null);
+	}
+
+	Query(Class<T> type, String startsWith, String after, Integer limit, String cursor) {
 		if (type == null) {
 			throw new RuntimeException("type can not be null, did you forget to call .on(Table::class)?");
 		}
@@ -17,6 +22,7 @@ public class Query<T extends Table> {
 		this.startsWith = startsWith;
 		this.after = after;
 		this.limit = limit;
+		this.cursor = cursor;
 	}
 
 	public Class<T> getType() {
@@ -38,9 +44,16 @@ public class Query<T extends Table> {
 
 	public boolean hasLimit() { return getLimit() != null; }
 
+	/**
+	 * Continuation token from a previous {@link QueryPage}, only used by paged queries
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
 	@Override
 	public int hashCode() {
-		return Objects.hash(after, limit, startsWith, type);
+		return Objects.hash(after, cursor, limit, startsWith, type);
 	}
 
 	@Override
@@ -52,7 +65,7 @@ public class Query<T extends Table> {
 		if (getClass() != obj.getClass())
 			return false;
 		Query other = (Query) obj;
-		return Objects.equals(after, other.after) && Objects.equals(limit, other.limit)
+		return Objects.equals(after, other.after) && Objects.equals(cursor, other.cursor) && Objects.equals(limit, other.limit)
 				&& Objects.equals(startsWith, other.startsWith)
 				&& Objects.equals(type, other.type);
 	}
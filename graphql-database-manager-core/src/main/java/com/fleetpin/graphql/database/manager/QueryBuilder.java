@@ -8,6 +8,7 @@ public class QueryBuilder<V extends Table> {
 	private String startsWith;
 	private String after;
 	private Integer limit;
+	private String cursor;
 	
     private QueryBuilder(Class<V> type) {
     	this.type = type;
@@ -29,13 +30,21 @@ public class QueryBuilder<V extends Table> {
     }
 
 
+    /**
+     * Resumes a paged query where the previous {@link QueryPage} left off
+     */
+    public QueryBuilder<V> cursor(String cursor) {
+    	this.cursor = cursor;
+    	return this;
+    }
+
     public QueryBuilder<V> applyMutation(Consumer<QueryBuilder<V>> mutator) {
         mutator.accept((QueryBuilder<V>) this);
         return (QueryBuilder<V>) this;
     }
 
     public Query<V> build() {
-    	return new Query<V>(type, startsWith, after, limit);
+    	return new Query<V>(type, startsWith, after, limit, cursor);
     }
     
     public static <V extends Table> QueryBuilder<V> create(Class<V> type) {
@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager;
+
+import java.util.List;
+
+/**
+ * One page of a query, pass the cursor to {@link QueryBuilder#cursor(String)} to read the next page.
+ */
+public class QueryPage<T extends Table> {
+
+	private final List<T> items;
+	private final boolean hasMore;
+	private final String cursor;
+
+	public QueryPage(List<T> items, boolean hasMore, String cursor) {
+		this.items = items;
+		this.hasMore = hasMore;
+		this.cursor = cursor;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public boolean hasMore() {
+		return hasMore;
+	}
+
+	/**
+	 * @return opaque token to resume from, null once there is nothing more to read
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+}
@@ -0,0 +1,52 @@
+package com.fleetpin.graphql.database.manager;
+
+/**
+ * How a streamed backup is written back, by default items are restored exactly as they were backed up
+ */
+public class RestoreOptions {
+
+	public static final RestoreOptions DEFAULT = RestoreOptionsBuilder.create().build();
+
+	private final String organisationId;
+	private final boolean keepRevisions;
+	private final boolean keepTimestamps;
+	private final int writers;
+
+	RestoreOptions(String organisationId, boolean keepRevisions, boolean keepTimestamps, int writers) {
+		if (writers < 0) {
+			throw new IllegalArgumentException("writers can not be negative");
+		}
+		this.organisationId = organisationId;
+		this.keepRevisions = keepRevisions;
+		this.keepTimestamps = keepTimestamps;
+		this.writers = writers;
+	}
+
+	/**
+	 * Organisation every item is restored into, null keeps the organisation it was backed up from
+	 */
+	public String getOrganisationId() {
+		return organisationId;
+	}
+
+	/**
+	 * When false items start again at the first revision
+	 */
+	public boolean isKeepRevisions() {
+		return keepRevisions;
+	}
+
+	/**
+	 * When false createdAt and updatedAt are set to the time of the restore
+	 */
+	public boolean isKeepTimestamps() {
+		return keepTimestamps;
+	}
+
+	/**
+	 * Number of writers the items are sharded across, 0 lets the driver decide
+	 */
+	public int getWriters() {
+		return writers;
+	}
+}
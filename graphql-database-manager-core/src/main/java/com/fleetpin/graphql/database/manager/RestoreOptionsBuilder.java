@@ -0,0 +1,47 @@
+package com.fleetpin.graphql.database.manager;
+
+import java.util.function.Consumer;
+
+public class RestoreOptionsBuilder {
+
+	private String organisationId;
+	private boolean keepRevisions = true;
+	private boolean keepTimestamps = true;
+	private int writers;
+
+	private RestoreOptionsBuilder() {
+	}
+
+	public RestoreOptionsBuilder organisationId(String organisationId) {
+		this.organisationId = organisationId;
+		return this;
+	}
+
+	public RestoreOptionsBuilder keepRevisions(boolean keepRevisions) {
+		this.keepRevisions = keepRevisions;
+		return this;
+	}
+
+	public RestoreOptionsBuilder keepTimestamps(boolean keepTimestamps) {
+		this.keepTimestamps = keepTimestamps;
+		return this;
+	}
+
+	public RestoreOptionsBuilder writers(int writers) {
+		this.writers = writers;
+		return this;
+	}
+
+	public RestoreOptionsBuilder applyMutation(Consumer<RestoreOptionsBuilder> mutator) {
+		mutator.accept(this);
+		return this;
+	}
+
+	public RestoreOptions build() {
+		return new RestoreOptions(organisationId, keepRevisions, keepTimestamps, writers);
+	}
+
+	public static RestoreOptionsBuilder create() {
+		return new RestoreOptionsBuilder();
+	}
+}
@@ -2,6 +2,8 @@ package com.fleetpin.graphql.database.manager;
 
 import com.google.common.collect.HashMultimap;
 
+import java.time.Instant;
+
 public interface TableAccess {
     public static <T extends Table> void setTableSource(
             final T table,
@@ -19,4 +21,12 @@ public interface TableAccess {
     public static <T extends Table> HashMultimap<String, String> getTableLinks(final T table) {
         return table.getLinks();
     }
+
+    public static <T extends Table> void setTableCreatedAt(final T table, final Instant createdAt) {
+        table.setCreatedAt(createdAt);
+    }
+
+    public static <T extends Table> void setTableUpdatedAt(final T table, final Instant updatedAt) {
+        table.setUpdatedAt(updatedAt);
+    }
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package com.fleetpin.graphql.database.manager;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.dataloader.DataLoader;
@@ -9,24 +12,64 @@ import org.dataloader.DataLoader;
 public class TableDataLoader<K> {
 
 	private final DataLoader<K, ?> loader;
+	private final Runnable onLoad;
+	//data loader does not expose its cache so keep track of what could be in it
+	private final Set<K> keys = ConcurrentHashMap.newKeySet();
 	
-	TableDataLoader(DataLoader<K, ?> loader) {
+	TableDataLoader(DataLoader<K, ?> loader, Runnable onLoad) {
 		this.loader = loader;
+		this.onLoad = onLoad;
 	}
 	
 	public <T> CompletableFuture<T> load(K key) {
-		return (CompletableFuture<T>) loader.load(key);
+		keys.add(key);
+		var toReturn = (CompletableFuture<T>) loader.load(key);
+		onLoad.run();
+		return toReturn;
 	}
 	public <T> CompletableFuture<List<T>> loadMany(List<K> keys) {
+		this.keys.addAll(keys);
 		//annoying waste of memory/cpu to get around cast :(
-		return loader.loadMany(keys).thenApply(r -> r.stream().map(t -> (T) t).collect(Collectors.toList()));
+		var toReturn = loader.loadMany(keys).thenApply(r -> r.stream().map(t -> (T) t).collect(Collectors.toList()));
+		onLoad.run();
+		return toReturn;
 	}
 
 	public void clear(K key) {
+		keys.remove(key);
 		loader.clear(key);
 	}
+
+	/**
+	 * Replaces whatever is cached for the key with a value that is already known
+	 */
+	public <T> void prime(K key, T value) {
+		clear(key);
+		keys.add(key);
+		((DataLoader<K, T>) loader).prime(key, value);
+	}
+
+	/**
+	 * Caches a value that was read some other way, anything already loaded for the key is kept
+	 */
+	public <T> void primeIfAbsent(K key, T value) {
+		keys.add(key);
+		((DataLoader<K, T>) loader).prime(key, value);
+	}
+
+	/**
+	 * Clears every cached key that matches the predicate
+	 */
+	public void clearIf(Predicate<K> predicate) {
+		for(K key: keys) {
+			if(predicate.test(key)) {
+				clear(key);
+			}
+		}
+	}
 	
 	public void clearAll() {
+		keys.clear();
 		loader.clearAll();
 	}
 
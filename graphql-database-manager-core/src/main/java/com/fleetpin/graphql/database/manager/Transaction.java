@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Collects the writes of a {@link Database#transaction} so the driver can send them together. Nothing is written until the transaction is flushed.
+ */
+public final class Transaction {
+
+	private final Supplier<String> idGenerator;
+	private final List<Operation> operations = new ArrayList<>();
+
+	Transaction(Supplier<String> idGenerator) {
+		this.idGenerator = idGenerator;
+	}
+
+	/**
+	 * Will only pass if the entity revision matches what is currently in the database. A new entity is given its id straight away so it can be linked to in the same transaction
+	 */
+	public <T extends Table> Transaction put(T entity) {
+		return put(entity, true);
+	}
+
+	public <T extends Table> Transaction put(T entity, boolean check) {
+		if (entity.getId() == null) {
+			entity.setId(idGenerator.get());
+		}
+		operations.add(new Put(entity, check));
+		return this;
+	}
+
+	/**
+	 * Fails the transaction if the entity still has links once the earlier operations are applied
+	 */
+	public <T extends Table> Transaction delete(T entity) {
+		operations.add(new Delete(entity));
+		return this;
+	}
+
+	public <T extends Table> Transaction links(T entity, Class<? extends Table> type, List<String> targetIds) {
+		operations.add(new Link(entity, type, List.copyOf(targetIds)));
+		return this;
+	}
+
+	public <T extends Table> Transaction link(T entity, Class<? extends Table> type, String targetId) {
+		return links(entity, type, targetId == null ? Collections.emptyList() : List.of(targetId));
+	}
+
+	public <T extends Table> Transaction unlink(T entity, Class<? extends Table> type, String targetId) {
+		operations.add(new Unlink(entity, type, targetId));
+		return this;
+	}
+
+	public List<Operation> getOperations() {
+		return Collections.unmodifiableList(operations);
+	}
+
+	public abstract static class Operation {
+		private final Table entity;
+
+		private Operation(Table entity) {
+			this.entity = entity;
+		}
+
+		public Table getEntity() {
+			return entity;
+		}
+
+		/**
+		 * Applies the operation on its own, used by drivers that can not write them together
+		 */
+		abstract CompletableFuture<?> apply(String organisationId, DatabaseDriver driver);
+	}
+
+	public static final class Put extends Operation {
+		private final boolean check;
+
+		private Put(Table entity, boolean check) {
+			super(entity);
+			this.check = check;
+		}
+
+		public boolean isCheck() {
+			return check;
+		}
+
+		@Override
+		CompletableFuture<?> apply(String organisationId, DatabaseDriver driver) {
+			return driver.put(organisationId, getEntity(), check);
+		}
+	}
+
+	public static final class Delete extends Operation {
+
+		private Delete(Table entity) {
+			super(entity);
+		}
+
+		@Override
+		CompletableFuture<?> apply(String organisationId, DatabaseDriver driver) {
+			if (!TableAccess.getTableLinks(getEntity()).isEmpty()) {
+				return CompletableFuture.failedFuture(new RuntimeException("deleting would leave dangling links"));
+			}
+			return driver.delete(organisationId, getEntity());
+		}
+	}
+
+	public static final class Link extends Operation {
+		private final Class<? extends Table> type;
+		private final List<String> targetIds;
+
+		private Link(Table entity, Class<? extends Table> type, List<String> targetIds) {
+			super(entity);
+			this.type = type;
+			this.targetIds = targetIds;
+		}
+
+		public Class<? extends Table> getType() {
+			return type;
+		}
+
+		/**
+		 * @return every id the entity links to of the type once applied
+		 */
+		public List<String> getTargetIds() {
+			return targetIds;
+		}
+
+		@Override
+		CompletableFuture<?> apply(String organisationId, DatabaseDriver driver) {
+			return driver.link(organisationId, getEntity(), type, targetIds);
+		}
+	}
+
+	public static final class Unlink extends Operation {
+		private final Class<? extends Table> type;
+		private final String targetId;
+
+		private Unlink(Table entity, Class<? extends Table> type, String targetId) {
+			super(entity);
+			this.type = type;
+			this.targetId = targetId;
+		}
+
+		public Class<? extends Table> getType() {
+			return type;
+		}
+
+		public String getTargetId() {
+			return targetId;
+		}
+
+		@Override
+		CompletableFuture<?> apply(String organisationId, DatabaseDriver driver) {
+			return driver.unlink(organisationId, getEntity(), type, targetId);
+		}
+	}
+}
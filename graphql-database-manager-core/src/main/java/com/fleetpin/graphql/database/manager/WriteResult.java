@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager;
+
+/**
+ * Outcome of writing a single entity as part of a bulk write, one failure does not fail the rest.
+ */
+public class WriteResult<T extends Table> {
+
+	private final T entity;
+	private final Throwable failure;
+
+	private WriteResult(T entity, Throwable failure) {
+		this.entity = entity;
+		this.failure = failure;
+	}
+
+	public static <T extends Table> WriteResult<T> success(T entity) {
+		return new WriteResult<>(entity, null);
+	}
+
+	public static <T extends Table> WriteResult<T> failure(T entity, Throwable failure) {
+		return new WriteResult<>(entity, failure);
+	}
+
+	/**
+	 * @return the entity that was written, on success its revision has been updated
+	 */
+	public T getEntity() {
+		return entity;
+	}
+
+	public boolean isSuccess() {
+		return failure == null;
+	}
+
+	/**
+	 * @return why the write failed, null on success
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	public boolean isRevisionMismatch() {
+		return failure instanceof RevisionMismatchException;
+	}
+}
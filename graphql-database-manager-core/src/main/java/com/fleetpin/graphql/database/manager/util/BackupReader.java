@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads back what {@link BackupWriter} wrote one item at a time, gzip is detected from the stream itself.
+ * Closing leaves the underlying stream open for the caller.
+ */
+public final class BackupReader<T extends BackupItem> implements Closeable {
+	private final MappingIterator<T> items;
+	private long count;
+
+	public BackupReader(ObjectMapper mapper, InputStream in, Class<T> type) throws IOException {
+		var buffered = in.markSupported() ? in : new BufferedInputStream(in);
+		buffered.mark(2);
+		boolean gzip = buffered.read() == 0x1f && buffered.read() == 0x8b;
+		buffered.reset();
+
+		var parser = mapper.getFactory().createParser(gzip ? new GZIPInputStream(buffered) : buffered);
+		parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		this.items = mapper.readerFor(type).readValues(parser);
+	}
+
+	/**
+	 * @return the next item or null once the stream is exhausted
+	 */
+	public T next() throws IOException {
+		if (!items.hasNextValue()) {
+			return null;
+		}
+		count++;
+		return items.nextValue();
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		items.close();
+	}
+}
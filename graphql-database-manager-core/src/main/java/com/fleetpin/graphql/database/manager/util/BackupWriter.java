@@ -0,0 +1,66 @@
+package com.fleetpin.graphql.database.manager.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Writes backup items as newline delimited json, one item a line, optionally gzipped.
+ * Closing finishes the gzip stream but leaves the underlying stream open for the caller.
+ */
+public final class BackupWriter implements Closeable {
+    private final ObjectWriter writer;
+    private final OutputStream out;
+    private final GZIPOutputStream gzip;
+    private final JsonGenerator generator;
+    private long count;
+
+    public BackupWriter(ObjectMapper mapper, OutputStream out, boolean gzip) throws IOException {
+        //flushed by the caller once a batch of items is written rather than after every item
+        this.writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.out = out;
+        this.gzip = gzip ? new GZIPOutputStream(out, true) : null;
+        this.generator = mapper.getFactory().createGenerator(gzip ? this.gzip : out);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+    }
+
+    public void write(BackupItem item) throws IOException {
+        writer.writeValue(generator, item);
+        count++;
+    }
+
+    /**
+     * Pushes what has been written so far through to the underlying stream
+     */
+    public void flush() throws IOException {
+        generator.flush();
+        if (gzip != null) {
+            gzip.flush();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        //ends the last line so the file is newline terminated
+        if (count > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.close();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.util;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes a list that is loaded in one go, for drivers that can not stream.
+ */
+public class ListPublisher<T> implements Flow.Publisher<T> {
+	private final CompletableFuture<List<T>> source;
+
+	public ListPublisher(CompletableFuture<List<T>> source) {
+		this.source = source;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		var subscription = new ListSubscription<T>(subscriber);
+		subscriber.onSubscribe(subscription);
+		source.whenComplete((list, failure) -> {
+			if (failure != null) {
+				subscription.fail(failure);
+			} else {
+				subscription.ready(list);
+			}
+		});
+	}
+
+	private static class ListSubscription<T> implements Flow.Subscription {
+		private final Flow.Subscriber<? super T> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile List<T> list;
+		private int index;
+
+		private ListSubscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		private void ready(List<T> list) {
+			this.list = list;
+			drain();
+		}
+
+		private void fail(Throwable failure) {
+			if (done.compareAndSet(false, true)) {
+				subscriber.onError(failure);
+			}
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				fail(new IllegalArgumentException("request must be positive"));
+				return;
+			}
+			demand.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			done.set(true);
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			do {
+				var list = this.list;
+				if (list != null) {
+					while (!done.get() && index < list.size() && demand.get() > 0) {
+						demand.decrementAndGet();
+						subscriber.onNext(list.get(index++));
+					}
+					if (index == list.size() && done.compareAndSet(false, true)) {
+						subscriber.onComplete();
+					}
+				}
+			} while (wip.decrementAndGet() != 0);
+		}
+	}
+}
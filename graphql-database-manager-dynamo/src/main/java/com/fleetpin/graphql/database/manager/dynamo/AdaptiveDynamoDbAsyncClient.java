@@ -0,0 +1,363 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactGetItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactGetItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.paginators.QueryPublisher;
+import software.amazon.awssdk.services.dynamodb.paginators.ScanPublisher;
+
+/**
+ * Wraps the item operations of a client so throttling slows callers down instead of every request retrying on its own.
+ *
+ * Each table, and each index for queries and scans, has its own in flight limit. It halves when dynamo throttles and creeps back
+ * up as requests succeed, throttled requests are sent again with backoff once they get a slot. Tables can also be given a read
+ * and write capacity in units a second, requests then wait for capacity before they are sent and are charged what dynamo reports they used.
+ *
+ * Throttling is only seen once the wrapped client gives up, so it works best with the client's own retries turned down.
+ * Only item operations are supported, table management should go to the wrapped client.
+ */
+public final class AdaptiveDynamoDbAsyncClient implements DynamoDbAsyncClient {
+
+	private static final double TRANSACTION_COST = 2;
+
+	private final DynamoDbAsyncClient client;
+	private final int minInFlight;
+	private final int maxInFlight;
+	private final Map<String, RateLimiter> readCapacity;
+	private final Map<String, RateLimiter> writeCapacity;
+	private final ConcurrentHashMap<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+	private final AtomicLong throttled = new AtomicLong();
+
+	private AdaptiveDynamoDbAsyncClient(DynamoDbAsyncClient client, int minInFlight, int maxInFlight, Map<String, RateLimiter> readCapacity, Map<String, RateLimiter> writeCapacity) {
+		this.client = client;
+		this.minInFlight = minInFlight;
+		this.maxInFlight = maxInFlight;
+		this.readCapacity = readCapacity;
+		this.writeCapacity = writeCapacity;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return current in flight limit for the table, or an index of it when index is not null
+	 */
+	public int getLimit(String table, String index) {
+		return limiter(resource(table, index)).limit();
+	}
+
+	public int getQueueDepth(String table, String index) {
+		return limiter(resource(table, index)).queued();
+	}
+
+	/**
+	 * @return throttled responses seen, including batches that came back with unprocessed items
+	 */
+	public long getThrottledCount() {
+		return throttled.get();
+	}
+
+	@Override
+	public String serviceName() {
+		return client.serviceName();
+	}
+
+	@Override
+	public void close() {
+		client.close();
+	}
+
+	@Override
+	public CompletableFuture<GetItemResponse> getItem(GetItemRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), readCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		return call(List.of(resource(request.tableName(), null)), readCapacity, Map.of(request.tableName(), 1d), () -> client.getItem(toSend), response -> single(response.consumedCapacity()), response -> false);
+	}
+
+	@Override
+	public CompletableFuture<QueryResponse> query(QueryRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), readCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		return call(List.of(resource(request.tableName(), request.indexName())), readCapacity, Map.of(request.tableName(), 1d), () -> client.query(toSend), response -> single(response.consumedCapacity()), response -> false);
+	}
+
+	@Override
+	public QueryPublisher queryPaginator(QueryRequest request) {
+		return new QueryPublisher(this, request);
+	}
+
+	@Override
+	public CompletableFuture<ScanResponse> scan(ScanRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), readCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		return call(List.of(resource(request.tableName(), request.indexName())), readCapacity, Map.of(request.tableName(), 1d), () -> client.scan(toSend), response -> single(response.consumedCapacity()), response -> false);
+	}
+
+	@Override
+	public ScanPublisher scanPaginator(ScanRequest request) {
+		return new ScanPublisher(this, request);
+	}
+
+	@Override
+	public CompletableFuture<BatchGetItemResponse> batchGetItem(BatchGetItemRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), readCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		var units = new TreeMap<String, Double>();
+		request.requestItems().forEach((table, keys) -> units.put(table, (double) keys.keys().size()));
+		return call(List.copyOf(units.keySet()), readCapacity, units, () -> client.batchGetItem(toSend), BatchGetItemResponse::consumedCapacity, response -> response.hasUnprocessedKeys() && !response.unprocessedKeys().isEmpty());
+	}
+
+	@Override
+	public CompletableFuture<TransactGetItemsResponse> transactGetItems(TransactGetItemsRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), readCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		var units = new TreeMap<String, Double>();
+		request.transactItems().forEach(item -> units.merge(item.get().tableName(), TRANSACTION_COST, Double::sum));
+		return call(List.copyOf(units.keySet()), readCapacity, units, () -> client.transactGetItems(toSend), TransactGetItemsResponse::consumedCapacity, response -> false);
+	}
+
+	@Override
+	public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), writeCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		return call(List.of(resource(request.tableName(), null)), writeCapacity, Map.of(request.tableName(), 1d), () -> client.putItem(toSend), response -> single(response.consumedCapacity()), response -> false);
+	}
+
+	@Override
+	public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), writeCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		return call(List.of(resource(request.tableName(), null)), writeCapacity, Map.of(request.tableName(), 1d), () -> client.updateItem(toSend), response -> single(response.consumedCapacity()), response -> false);
+	}
+
+	@Override
+	public CompletableFuture<DeleteItemResponse> deleteItem(DeleteItemRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), writeCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		return call(List.of(resource(request.tableName(), null)), writeCapacity, Map.of(request.tableName(), 1d), () -> client.deleteItem(toSend), response -> single(response.consumedCapacity()), response -> false);
+	}
+
+	@Override
+	public CompletableFuture<BatchWriteItemResponse> batchWriteItem(BatchWriteItemRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), writeCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		var units = new TreeMap<String, Double>();
+		request.requestItems().forEach((table, writes) -> units.put(table, (double) writes.size()));
+		return call(List.copyOf(units.keySet()), writeCapacity, units, () -> client.batchWriteItem(toSend), BatchWriteItemResponse::consumedCapacity, response -> response.hasUnprocessedItems() && !response.unprocessedItems().isEmpty());
+	}
+
+	@Override
+	public CompletableFuture<TransactWriteItemsResponse> transactWriteItems(TransactWriteItemsRequest request) {
+		var toSend = tracked(request.returnConsumedCapacity(), writeCapacity) ? request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build() : request;
+		var units = new TreeMap<String, Double>();
+		request.transactItems().forEach(item -> units.merge(tableName(item), TRANSACTION_COST, Double::sum));
+		return call(List.copyOf(units.keySet()), writeCapacity, units, () -> client.transactWriteItems(toSend), TransactWriteItemsResponse::consumedCapacity, response -> false);
+	}
+
+	/**
+	 * @param resources sorted so requests covering several tables take their slots in the same order
+	 * @param units estimated cost for each table, corrected by what the response reports
+	 * @param partial tells a response that only did part of its work because of throttling
+	 */
+	private <R> CompletableFuture<R> call(List<String> resources, Map<String, RateLimiter> capacity, Map<String, Double> units, Supplier<CompletableFuture<R>> send,
+			Function<R, List<ConsumedCapacity>> consumed, Predicate<R> partial) {
+		return call(resources, capacity, units, send, consumed, partial, 0);
+	}
+
+	private <R> CompletableFuture<R> call(List<String> resources, Map<String, RateLimiter> capacity, Map<String, Double> units, Supplier<CompletableFuture<R>> send,
+			Function<R, List<ConsumedCapacity>> consumed, Predicate<R> partial, int attempt) {
+		var waits = units.entrySet().stream()
+				.filter(entry -> capacity.containsKey(entry.getKey()))
+				.map(entry -> capacity.get(entry.getKey()).acquire(entry.getValue()))
+				.toArray(CompletableFuture[]::new);
+
+		return CompletableFuture.allOf(waits).thenCompose(__ -> limited(resources, 0, send, partial)).handle((response, failure) -> {
+			if (failure == null) {
+				charge(capacity, units, consumed.apply(response));
+				return CompletableFuture.completedFuture(response);
+			}
+			if (!retryable(unwrap(failure)) || attempt + 1 >= Backoff.MAX_ATTEMPTS) {
+				return CompletableFuture.<R>failedFuture(unwrap(failure));
+			}
+			return Backoff.delay(attempt).thenCompose(___ -> call(resources, capacity, units, send, consumed, partial, attempt + 1));
+		}).thenCompose(future -> future);
+	}
+
+	private <R> CompletableFuture<R> limited(List<String> resources, int index, Supplier<CompletableFuture<R>> send, Predicate<R> partial) {
+		if (index == resources.size()) {
+			return send.get();
+		}
+		return limiter(resources.get(index)).run(() -> limited(resources, index + 1, send, partial), (response, failure) -> {
+			boolean slowDown = failure != null ? isThrottle(unwrap(failure)) : partial.test(response);
+			if (slowDown && index == 0) {
+				throttled.incrementAndGet();
+			}
+			return slowDown;
+		});
+	}
+
+	private void charge(Map<String, RateLimiter> capacity, Map<String, Double> units, List<ConsumedCapacity> consumed) {
+		if (consumed == null) {
+			return;
+		}
+		for (var used : consumed) {
+			var limiter = capacity.get(used.tableName());
+			if (limiter != null && used.capacityUnits() != null) {
+				limiter.adjust(used.capacityUnits() - units.getOrDefault(used.tableName(), 0d));
+			}
+		}
+	}
+
+	private AdaptiveLimiter limiter(String resource) {
+		return limiters.computeIfAbsent(resource, __ -> new AdaptiveLimiter(minInFlight, maxInFlight));
+	}
+
+	private static boolean tracked(ReturnConsumedCapacity requested, Map<String, RateLimiter> capacity) {
+		return requested == null && !capacity.isEmpty();
+	}
+
+	private static String resource(String table, String index) {
+		return index == null ? table : table + "/" + index;
+	}
+
+	private static List<ConsumedCapacity> single(ConsumedCapacity consumed) {
+		return consumed == null ? Collections.emptyList() : List.of(consumed);
+	}
+
+	private static String tableName(TransactWriteItem item) {
+		if (item.put() != null) {
+			return item.put().tableName();
+		}
+		if (item.update() != null) {
+			return item.update().tableName();
+		}
+		if (item.delete() != null) {
+			return item.delete().tableName();
+		}
+		return item.conditionCheck().tableName();
+	}
+
+	private static Throwable unwrap(Throwable failure) {
+		if (failure instanceof CompletionException && failure.getCause() != null) {
+			return failure.getCause();
+		}
+		return failure;
+	}
+
+	private static boolean retryable(Throwable failure) {
+		if (failure instanceof ProvisionedThroughputExceededException || failure instanceof RequestLimitExceededException) {
+			return true;
+		}
+		if (failure instanceof AwsServiceException) {
+			var details = ((AwsServiceException) failure).awsErrorDetails();
+			return details != null && "ThrottlingException".equals(details.errorCode());
+		}
+		return false;
+	}
+
+	/**
+	 * A cancelled transaction is left to the caller to send again but still counts against the limit
+	 */
+	private static boolean isThrottle(Throwable failure) {
+		if (failure instanceof TransactionCanceledException) {
+			var canceled = (TransactionCanceledException) failure;
+			return canceled.hasCancellationReasons() && canceled.cancellationReasons().stream().anyMatch(reason -> "ThrottlingError".equals(reason.code()) || "ProvisionedThroughputExceeded".equals(reason.code()));
+		}
+		return retryable(failure);
+	}
+
+	public static class Builder {
+		private int minInFlight = 1;
+		private int maxInFlight = 64;
+		private final Map<String, Double> readCapacity = new HashMap<>();
+		private final Map<String, Double> writeCapacity = new HashMap<>();
+
+		/**
+		 * Lowest the in flight limit of a table or index drops to, defaults to 1
+		 */
+		public Builder minInFlight(int minInFlight) {
+			this.minInFlight = minInFlight;
+			return this;
+		}
+
+		/**
+		 * Limit each table or index starts at and grows back to, defaults to 64
+		 */
+		public Builder maxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/**
+		 * Read capacity units a second to keep requests to the table under, up to a second of unused capacity can be spent at once
+		 */
+		public Builder readCapacity(String table, double unitsPerSecond) {
+			Preconditions.checkArgument(unitsPerSecond > 0, "Read capacity must be positive");
+			readCapacity.put(table, unitsPerSecond);
+			return this;
+		}
+
+		public Builder writeCapacity(String table, double unitsPerSecond) {
+			Preconditions.checkArgument(unitsPerSecond > 0, "Write capacity must be positive");
+			writeCapacity.put(table, unitsPerSecond);
+			return this;
+		}
+
+		public AdaptiveDynamoDbAsyncClient build(DynamoDbAsyncClient client) {
+			Preconditions.checkNotNull(client, "Client must be set");
+			Preconditions.checkArgument(minInFlight > 0, "Min in flight must be positive");
+			Preconditions.checkArgument(maxInFlight >= minInFlight, "Max in flight can not be below min in flight");
+			return new AdaptiveDynamoDbAsyncClient(client, minInFlight, maxInFlight, buckets(readCapacity), buckets(writeCapacity));
+		}
+
+		private static Map<String, RateLimiter> buckets(Map<String, Double> capacity) {
+			var buckets = new HashMap<String, RateLimiter>();
+			capacity.forEach((table, units) -> buckets.put(table, new RateLimiter(units, units)));
+			return buckets;
+		}
+	}
+}
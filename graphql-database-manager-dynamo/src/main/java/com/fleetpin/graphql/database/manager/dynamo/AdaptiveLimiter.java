@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Caps in flight async calls like {@link ConcurrencyLimiter} but moves the cap with the responses. Each success grows it by
+ * one over the current cap, so roughly one a round trip, and a throttled call halves it.
+ */
+final class AdaptiveLimiter {
+
+	private final int min;
+	private final int max;
+	private final Queue<Runnable> waiting = new ArrayDeque<>();
+	private double limit;
+	private int running;
+	private long lastDecrease;
+
+	AdaptiveLimiter(int min, int max) {
+		Preconditions.checkArgument(min > 0, "minimum limit must be positive");
+		Preconditions.checkArgument(max >= min, "maximum limit can not be below the minimum");
+		this.min = min;
+		this.max = max;
+		this.limit = max;
+		this.lastDecrease = System.nanoTime();
+	}
+
+	/**
+	 * @param throttled tells from the outcome whether the call was throttled
+	 */
+	<T> CompletableFuture<T> run(Supplier<CompletableFuture<T>> task, BiPredicate<T, Throwable> throttled) {
+		var toReturn = new CompletableFuture<T>();
+		Runnable start = () -> {
+			long startedAt = System.nanoTime();
+			CompletableFuture<T> future;
+			try {
+				future = task.get();
+			} catch (Throwable t) {
+				future = CompletableFuture.failedFuture(t);
+			}
+			future.whenComplete((response, failure) -> {
+				release(startedAt, throttled.test(response, failure));
+				if (failure != null) {
+					toReturn.completeExceptionally(failure);
+				} else {
+					toReturn.complete(response);
+				}
+			});
+		};
+
+		boolean now;
+		synchronized (this) {
+			now = running < (int) limit;
+			if (now) {
+				running++;
+			} else {
+				waiting.add(start);
+			}
+		}
+		if (now) {
+			start.run();
+		}
+		return toReturn;
+	}
+
+	synchronized int limit() {
+		return (int) limit;
+	}
+
+	synchronized int queued() {
+		return waiting.size();
+	}
+
+	private void release(long startedAt, boolean throttled) {
+		var toStart = new ArrayDeque<Runnable>();
+		synchronized (this) {
+			if (throttled) {
+				//calls already in flight when the limit dropped were sent under the old limit, one congestion event only halves once
+				if (startedAt - lastDecrease >= 0) {
+					limit = Math.max(min, limit / 2);
+					lastDecrease = System.nanoTime();
+				}
+			} else {
+				limit = Math.min(max, limit + 1 / limit);
+			}
+			running--;
+			while (running < (int) limit && !waiting.isEmpty()) {
+				running++;
+				toStart.add(waiting.poll());
+			}
+		}
+		toStart.forEach(Runnable::run);
+	}
+}
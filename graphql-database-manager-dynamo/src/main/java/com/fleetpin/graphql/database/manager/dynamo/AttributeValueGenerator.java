@@ -0,0 +1,260 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.base.GeneratorBase;
+import com.fasterxml.jackson.core.json.JsonWriteContext;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Builds attribute values as the mapper serializes, so writes no longer go through a json tree first.
+ *
+ * Keeps what the tree conversion did: numbers are the text jackson would have written, binary is b and nulls are written as null.
+ * Empty strings can not be stored so they are left out of objects, in arrays they are written as null so positions are kept.
+ */
+final class AttributeValueGenerator extends GeneratorBase {
+
+	private static final AttributeValue NULL = AttributeValue.builder().nul(true).build();
+
+	private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+	private Map<String, AttributeValue> item;
+	private AttributeValue value;
+
+	AttributeValueGenerator(ObjectCodec codec) {
+		super(JsonGenerator.Feature.collectDefaults(), codec);
+	}
+
+	/**
+	 * @return the attributes of the object that was written
+	 */
+	Map<String, AttributeValue> getItem() {
+		if (item == null) {
+			throw new IllegalArgumentException("Only objects can be written as an item");
+		}
+		return item;
+	}
+
+	/**
+	 * @return the value that was written
+	 */
+	AttributeValue getValue() {
+		if (item != null) {
+			return AttributeValue.builder().m(item).build();
+		}
+		return value;
+	}
+
+	private void append(AttributeValue attribute) {
+		var frame = frames.peek();
+		if (frame == null) {
+			value = attribute;
+		} else if (frame.list != null) {
+			frame.list.add(attribute);
+		} else {
+			frame.map.put(frame.name, attribute);
+		}
+	}
+
+	@Override
+	public void writeStartObject() throws IOException {
+		_verifyValueWrite("start an object");
+		_writeContext = _writeContext.createChildObjectContext();
+		frames.push(new Frame(new HashMap<>(), null));
+	}
+
+	@Override
+	public void writeEndObject() throws IOException {
+		if (!_writeContext.inObject()) {
+			_reportError("Current context not Object but " + _writeContext.typeDesc());
+		}
+		_writeContext = _writeContext.clearAndGetParent();
+		var frame = frames.pop();
+		if (frames.isEmpty()) {
+			item = frame.map;
+		} else {
+			append(AttributeValue.builder().m(frame.map).build());
+		}
+	}
+
+	@Override
+	public void writeStartArray() throws IOException {
+		_verifyValueWrite("start an array");
+		_writeContext = _writeContext.createChildArrayContext();
+		frames.push(new Frame(null, new ArrayList<>()));
+	}
+
+	@Override
+	public void writeEndArray() throws IOException {
+		if (!_writeContext.inArray()) {
+			_reportError("Current context not Array but " + _writeContext.typeDesc());
+		}
+		_writeContext = _writeContext.clearAndGetParent();
+		append(AttributeValue.builder().l(frames.pop().list).build());
+	}
+
+	@Override
+	public void writeFieldName(String name) throws IOException {
+		if (_writeContext.writeFieldName(name) == JsonWriteContext.STATUS_EXPECT_VALUE) {
+			_reportError("Can not write a field name, expecting a value");
+		}
+		frames.peek().name = name;
+	}
+
+	@Override
+	public void writeString(String text) throws IOException {
+		_verifyValueWrite("write a string");
+		if (text == null) {
+			append(NULL);
+		} else if (!text.isEmpty()) {
+			append(AttributeValue.builder().s(text).build());
+		} else if (frames.peek() != null && frames.peek().list != null) {
+			append(NULL);
+		}
+	}
+
+	@Override
+	public void writeString(char[] text, int offset, int len) throws IOException {
+		writeString(new String(text, offset, len));
+	}
+
+	@Override
+	public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+		writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+		writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void writeRaw(String text) throws IOException {
+		_reportUnsupportedOperation();
+	}
+
+	@Override
+	public void writeRaw(String text, int offset, int len) throws IOException {
+		_reportUnsupportedOperation();
+	}
+
+	@Override
+	public void writeRaw(char[] text, int offset, int len) throws IOException {
+		_reportUnsupportedOperation();
+	}
+
+	@Override
+	public void writeRaw(char c) throws IOException {
+		_reportUnsupportedOperation();
+	}
+
+	@Override
+	public void writeBinary(Base64Variant bv, byte[] data, int offset, int len) throws IOException {
+		_verifyValueWrite("write a binary value");
+		append(AttributeValue.builder().b(SdkBytes.fromByteArray(Arrays.copyOfRange(data, offset, offset + len))).build());
+	}
+
+	@Override
+	public void writeNumber(int v) throws IOException {
+		writeNumber(Integer.toString(v));
+	}
+
+	@Override
+	public void writeNumber(long v) throws IOException {
+		writeNumber(Long.toString(v));
+	}
+
+	@Override
+	public void writeNumber(BigInteger v) throws IOException {
+		writeNumber(v == null ? null : v.toString());
+	}
+
+	@Override
+	public void writeNumber(double v) throws IOException {
+		writeNumber(Double.toString(v));
+	}
+
+	@Override
+	public void writeNumber(float v) throws IOException {
+		writeNumber(Float.toString(v));
+	}
+
+	@Override
+	public void writeNumber(BigDecimal v) throws IOException {
+		writeNumber(v == null ? null : v.toString());
+	}
+
+	@Override
+	public void writeNumber(String encodedValue) throws IOException {
+		_verifyValueWrite("write a number");
+		append(encodedValue == null ? NULL : AttributeValue.builder().n(encodedValue).build());
+	}
+
+	@Override
+	public void writeBoolean(boolean state) throws IOException {
+		_verifyValueWrite("write a boolean value");
+		append(AttributeValue.builder().bool(state).build());
+	}
+
+	@Override
+	public void writeNull() throws IOException {
+		_verifyValueWrite("write a null");
+		append(NULL);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		//nothing is buffered
+	}
+
+	@Override
+	protected void _releaseBuffers() {
+		//nothing is buffered
+	}
+
+	@Override
+	protected void _verifyValueWrite(String typeMsg) throws IOException {
+		if (_writeContext.writeValue() == JsonWriteContext.STATUS_EXPECT_NAME) {
+			_reportError("Can not " + typeMsg + ", expecting field name");
+		}
+	}
+
+	/**
+	 * An object or array being written, for objects the name is the field the next value belongs to
+	 */
+	private static final class Frame {
+		private final Map<String, AttributeValue> map;
+		private final List<AttributeValue> list;
+		private String name;
+
+		private Frame(Map<String, AttributeValue> map, List<AttributeValue> list) {
+			this.map = map;
+			this.list = list;
+		}
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.core.base.ParserMinimalBase;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.util.DefaultSdkAutoConstructList;
+import software.amazon.awssdk.core.util.DefaultSdkAutoConstructMap;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Walks an attribute value graph as json tokens so the mapper can bind straight to the entity without building a tree first.
+ *
+ * Mirrors what the tree conversion produced: binary is an embedded byte array, number and string sets are arrays of strings and an empty map is null.
+ * Numbers keep the text dynamo holds, whole numbers are read as exact integers and everything else as floating point.
+ */
+final class AttributeValueParser extends ParserMinimalBase {
+
+	private ObjectCodec codec;
+	private Cursor cursor;
+	private boolean fieldValue;
+	private Object value;
+	private Number number;
+	private boolean closed;
+
+	AttributeValueParser(Map<String, AttributeValue> item, ObjectCodec codec) {
+		this.codec = codec;
+		this.cursor = new Cursor(JsonStreamContext.TYPE_ROOT, null, List.of(item).iterator());
+	}
+
+	AttributeValueParser(AttributeValue item, ObjectCodec codec) {
+		this.codec = codec;
+		this.cursor = new Cursor(JsonStreamContext.TYPE_ROOT, null, List.of(item).iterator());
+	}
+
+	@Override
+	public JsonToken nextToken() throws IOException {
+		if (closed) {
+			return null;
+		}
+		value = null;
+		number = null;
+		if (fieldValue) {
+			fieldValue = false;
+			return _currToken = valueToken(cursor.value);
+		}
+		if (!cursor.advance()) {
+			if (cursor.parent == null) {
+				close();
+				return null;
+			}
+			var end = cursor.inObject() ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+			cursor = cursor.parent;
+			return _currToken = end;
+		}
+		if (cursor.inObject()) {
+			fieldValue = true;
+			return _currToken = JsonToken.FIELD_NAME;
+		}
+		return _currToken = valueToken(cursor.value);
+	}
+
+	private JsonToken valueToken(Object next) throws JsonParseException {
+		if (next instanceof String) {
+			value = next;
+			return JsonToken.VALUE_STRING;
+		}
+		if (next instanceof SdkBytes) {
+			value = ((SdkBytes) next).asByteArray();
+			return JsonToken.VALUE_EMBEDDED_OBJECT;
+		}
+		if (next instanceof Map) {
+			return startObject((Map<String, AttributeValue>) next);
+		}
+		var attribute = (AttributeValue) next;
+		if (attribute.bool() != null) {
+			return attribute.bool() ? JsonToken.VALUE_TRUE : JsonToken.VALUE_FALSE;
+		}
+		if (attribute.nul() != null && attribute.nul()) {
+			return JsonToken.VALUE_NULL;
+		}
+		if (attribute.b() != null) {
+			value = attribute.b().asByteArray();
+			return JsonToken.VALUE_EMBEDDED_OBJECT;
+		}
+		if (attribute.n() != null) {
+			value = attribute.n();
+			return isWhole(attribute.n()) ? JsonToken.VALUE_NUMBER_INT : JsonToken.VALUE_NUMBER_FLOAT;
+		}
+		if (attribute.s() != null) {
+			value = attribute.s();
+			return JsonToken.VALUE_STRING;
+		}
+
+		Object defArray = DefaultSdkAutoConstructList.getInstance();
+		Object defMap = DefaultSdkAutoConstructMap.getInstance();
+		if (attribute.bs() != defArray) {
+			return startArray(attribute.bs().iterator());
+		}
+		if (attribute.l() != defArray) {
+			return startArray(attribute.l().iterator());
+		}
+		if (attribute.ns() != defArray) {
+			return startArray(attribute.ns().iterator());
+		}
+		if (attribute.ss() != defArray) {
+			return startArray(attribute.ss().iterator());
+		}
+		if (attribute.m() != defMap) {
+			if (attribute.m().isEmpty()) {
+				return JsonToken.VALUE_NULL;
+			}
+			return startObject(attribute.m());
+		}
+		throw new JsonParseException(this, "Unsupported type " + attribute);
+	}
+
+	private JsonToken startObject(Map<String, AttributeValue> map) {
+		cursor = new Cursor(JsonStreamContext.TYPE_OBJECT, cursor, map.entrySet().iterator());
+		return JsonToken.START_OBJECT;
+	}
+
+	private JsonToken startArray(Iterator<?> values) {
+		cursor = new Cursor(JsonStreamContext.TYPE_ARRAY, cursor, values);
+		return JsonToken.START_ARRAY;
+	}
+
+	private static boolean isWhole(String n) {
+		for (int i = 0; i < n.length(); i++) {
+			char c = n.charAt(i);
+			if (c == '.' || c == 'e' || c == 'E') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected void _handleEOF() throws JsonParseException {
+		//the graph can not end part way through
+	}
+
+	@Override
+	public String getCurrentName() throws IOException {
+		var context = cursor;
+		if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+			context = context.parent;
+		}
+		return context == null ? null : context.name;
+	}
+
+	@Override
+	public void overrideCurrentName(String name) {
+		var context = cursor;
+		if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+			context = context.parent;
+		}
+		if (context != null) {
+			context.name = name;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		_currToken = null;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public JsonStreamContext getParsingContext() {
+		return cursor;
+	}
+
+	@Override
+	public String getText() throws IOException {
+		if (_currToken == null) {
+			return null;
+		}
+		switch (_currToken) {
+			case FIELD_NAME:
+				return cursor.name;
+			case VALUE_STRING:
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				return (String) value;
+			case VALUE_EMBEDDED_OBJECT:
+				return Base64Variants.getDefaultVariant().encode((byte[]) value);
+			default:
+				return _currToken.asString();
+		}
+	}
+
+	@Override
+	public char[] getTextCharacters() throws IOException {
+		var text = getText();
+		return text == null ? null : text.toCharArray();
+	}
+
+	@Override
+	public boolean hasTextCharacters() {
+		return false;
+	}
+
+	@Override
+	public int getTextLength() throws IOException {
+		var text = getText();
+		return text == null ? 0 : text.length();
+	}
+
+	@Override
+	public int getTextOffset() throws IOException {
+		return 0;
+	}
+
+	@Override
+	public byte[] getBinaryValue(Base64Variant b64variant) throws IOException {
+		if (_currToken == JsonToken.VALUE_EMBEDDED_OBJECT) {
+			return (byte[]) value;
+		}
+		if (_currToken == JsonToken.VALUE_STRING) {
+			return b64variant.decode((String) value);
+		}
+		throw new JsonParseException(this, "Current token (" + _currToken + ") not VALUE_STRING or VALUE_EMBEDDED_OBJECT, can not access as binary");
+	}
+
+	@Override
+	public Object getEmbeddedObject() throws IOException {
+		return _currToken == JsonToken.VALUE_EMBEDDED_OBJECT ? value : null;
+	}
+
+	@Override
+	public ObjectCodec getCodec() {
+		return codec;
+	}
+
+	@Override
+	public void setCodec(ObjectCodec codec) {
+		this.codec = codec;
+	}
+
+	@Override
+	public Version version() {
+		return Version.unknownVersion();
+	}
+
+	@Override
+	public JsonLocation getCurrentLocation() {
+		return JsonLocation.NA;
+	}
+
+	@Override
+	public JsonLocation getTokenLocation() {
+		return JsonLocation.NA;
+	}
+
+	@Override
+	public Number getNumberValue() throws IOException {
+		if (number == null) {
+			var text = numberText();
+			if (_currToken == JsonToken.VALUE_NUMBER_FLOAT) {
+				number = Double.parseDouble(text);
+			} else if (text.length() < 10) {
+				number = Integer.parseInt(text);
+			} else {
+				var exact = new BigInteger(text);
+				if (exact.bitLength() < Integer.SIZE) {
+					number = exact.intValue();
+				} else if (exact.bitLength() < Long.SIZE) {
+					number = exact.longValue();
+				} else {
+					number = exact;
+				}
+			}
+		}
+		return number;
+	}
+
+	@Override
+	public NumberType getNumberType() throws IOException {
+		var number = getNumberValue();
+		if (number instanceof Integer) {
+			return NumberType.INT;
+		}
+		if (number instanceof Long) {
+			return NumberType.LONG;
+		}
+		if (number instanceof BigInteger) {
+			return NumberType.BIG_INTEGER;
+		}
+		return NumberType.DOUBLE;
+	}
+
+	@Override
+	public int getIntValue() throws IOException {
+		return getNumberValue().intValue();
+	}
+
+	@Override
+	public long getLongValue() throws IOException {
+		return getNumberValue().longValue();
+	}
+
+	@Override
+	public BigInteger getBigIntegerValue() throws IOException {
+		if (_currToken == JsonToken.VALUE_NUMBER_INT) {
+			return new BigInteger(numberText());
+		}
+		return getDecimalValue().toBigInteger();
+	}
+
+	@Override
+	public float getFloatValue() throws IOException {
+		return Float.parseFloat(numberText());
+	}
+
+	@Override
+	public double getDoubleValue() throws IOException {
+		return Double.parseDouble(numberText());
+	}
+
+	@Override
+	public BigDecimal getDecimalValue() throws IOException {
+		return new BigDecimal(numberText());
+	}
+
+	private String numberText() throws JsonParseException {
+		if (_currToken != JsonToken.VALUE_NUMBER_INT && _currToken != JsonToken.VALUE_NUMBER_FLOAT) {
+			throw new JsonParseException(this, "Current token (" + _currToken + ") not numeric, can not use numeric value accessors");
+		}
+		return (String) value;
+	}
+
+	/**
+	 * Where the parser is within an object, array or the root. For objects the name is the field the value belongs to
+	 */
+	private static final class Cursor extends JsonStreamContext {
+		private final Cursor parent;
+		private final Iterator<?> values;
+		private String name;
+		private Object value;
+
+		private Cursor(int type, Cursor parent, Iterator<?> values) {
+			super(type, -1);
+			this.parent = parent;
+			this.values = values;
+		}
+
+		private boolean advance() {
+			if (!values.hasNext()) {
+				return false;
+			}
+			var next = values.next();
+			_index++;
+			if (next instanceof Map.Entry) {
+				var entry = (Map.Entry<String, AttributeValue>) next;
+				name = entry.getKey();
+				value = entry.getValue();
+			} else {
+				value = next;
+			}
+			return true;
+		}
+
+		private boolean inObject() {
+			return _type == TYPE_OBJECT;
+		}
+
+		@Override
+		public JsonStreamContext getParent() {
+			return parent;
+		}
+
+		@Override
+		public String getCurrentName() {
+			return name;
+		}
+	}
+}
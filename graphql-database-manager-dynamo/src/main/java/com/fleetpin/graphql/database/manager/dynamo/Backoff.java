@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponential backoff with full jitter for re-driving throttled or unprocessed requests.
+ */
+final class Backoff {
+
+	static final int MAX_ATTEMPTS = 10;
+	private static final long BASE_MILLIS = 25;
+	private static final long MAX_MILLIS = 5_000;
+
+	private Backoff() {
+	}
+
+	/**
+	 * @param attempt zero based count of attempts that have already failed
+	 */
+	static CompletableFuture<Void> delay(int attempt) {
+		long cap = Math.min(MAX_MILLIS, BASE_MILLIS << Math.min(attempt, 20));
+		long millis = ThreadLocalRandom.current().nextLong(cap + 1);
+		return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS));
+	}
+}
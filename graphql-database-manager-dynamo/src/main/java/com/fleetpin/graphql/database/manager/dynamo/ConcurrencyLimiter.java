@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Caps how many async calls are in flight at once, the rest wait in order until a slot frees up.
+ */
+final class ConcurrencyLimiter {
+
+	//tasks handed a slot while this thread is already starting queued tasks, run by the outer loop rather than nesting deeper
+	private static final ThreadLocal<ArrayDeque<Runnable>> HANDED_OFF = new ThreadLocal<>();
+
+	private final int limit;
+	private final Queue<Runnable> waiting = new ArrayDeque<>();
+	private int running;
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	ConcurrencyLimiter(int limit) {
+		Preconditions.checkArgument(limit > 0, "concurrency limit must be positive");
+		this.limit = limit;
+	}
+
+	<T> CompletableFuture<T> run(Supplier<CompletableFuture<T>> task) {
+		var toReturn = new CompletableFuture<T>();
+		long queuedAt = System.nanoTime();
+		Runnable start = () -> {
+			long waited = System.nanoTime() - queuedAt;
+			started.incrementAndGet();
+			totalWaitNanos.addAndGet(waited);
+			maxWaitNanos.accumulateAndGet(waited, Math::max);
+			CompletableFuture<T> future;
+			try {
+				future = task.get();
+			} catch (Throwable t) {
+				future = CompletableFuture.failedFuture(t);
+			}
+			future.whenComplete((response, failure) -> {
+				release();
+				if (failure != null) {
+					toReturn.completeExceptionally(failure);
+				} else {
+					toReturn.complete(response);
+				}
+			});
+		};
+
+		boolean now;
+		synchronized (this) {
+			now = running < limit;
+			if (now) {
+				running++;
+			} else {
+				waiting.add(start);
+			}
+		}
+		if (now) {
+			start.run();
+		}
+		return toReturn;
+	}
+
+	synchronized int queued() {
+		return waiting.size();
+	}
+
+	synchronized int running() {
+		return running;
+	}
+
+	long started() {
+		return started.get();
+	}
+
+	long totalWaitNanos() {
+		return totalWaitNanos.get();
+	}
+
+	long maxWaitNanos() {
+		return maxWaitNanos.get();
+	}
+
+	private void release() {
+		Runnable next;
+		synchronized (this) {
+			next = waiting.poll();
+			if (next == null) {
+				running--;
+			}
+		}
+		//slot is handed straight to the next task
+		if (next != null) {
+			handOff(next);
+		}
+	}
+
+	/**
+	 * A task whose future is already complete releases its slot before returning, starting the next one from there would recurse once per queued task.
+	 * Instead only the first hand off on a thread runs a loop and the ones made inside it are queued for that loop.
+	 */
+	private static void handOff(Runnable next) {
+		var pending = HANDED_OFF.get();
+		if (pending != null) {
+			pending.add(next);
+			return;
+		}
+		pending = new ArrayDeque<>();
+		HANDED_OFF.set(pending);
+		try {
+			for (var task = next; task != null; task = pending.poll()) {
+				task.run();
+			}
+		} finally {
+			HANDED_OFF.remove();
+		}
+	}
+}
@@ -13,7 +13,6 @@
 package com.fleetpin.graphql.database.manager.dynamo;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fleetpin.graphql.database.manager.util.BackupItem;
@@ -31,15 +30,13 @@ public class DynamoBackupItem implements Comparable<DynamoBackupItem>, BackupIte
 
 	private HashMultimap<String, String> links;
 	private String organisationId;
+	private Boolean tombstone;
 
 
 	public DynamoBackupItem() {
 	}
 
 	public DynamoBackupItem(String table, Map<String, AttributeValue> item, ObjectMapper objectMapper) {
-
-		objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-
 		this.table = table;
 		this.item = (Map<String, JsonNode>) TableUtil.convertTo(objectMapper, item, Map.class);
 
@@ -57,6 +54,20 @@ public class DynamoBackupItem implements Comparable<DynamoBackupItem>, BackupIte
 		this.organisationId = item.get("organisationId").s();
 	}
 
+	/**
+	 * Marks an entity removed since the backup an increment builds on, restore deletes it
+	 */
+	static DynamoBackupItem tombstone(String table, String organisationId, String id, ObjectMapper objectMapper) {
+		var toReturn = new DynamoBackupItem();
+		toReturn.table = table;
+		toReturn.item = Map.of("organisationId", objectMapper.getNodeFactory().textNode(organisationId), "id", objectMapper.getNodeFactory().textNode(id));
+		toReturn.links = HashMultimap.create();
+		toReturn.id = id;
+		toReturn.organisationId = organisationId;
+		toReturn.tombstone = true;
+		return toReturn;
+	}
+
 
 	public String getTable() {
 		return table;
@@ -86,5 +97,12 @@ public class DynamoBackupItem implements Comparable<DynamoBackupItem>, BackupIte
 		return organisationId;
 	}
 
+	/**
+	 * True for a tombstone in an incremental backup, otherwise null
+	 */
+	public Boolean getTombstone() {
+		return tombstone;
+	}
+
 
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * Sends a BatchWriteItem and keeps sending whatever dynamo leaves unprocessed, backing off between attempts.
+ * Every attempt takes a batch write slot from the scheduler for the first table in the request.
+ */
+final class DynamoBatchWriter {
+
+	static final int BATCH_WRITE_SIZE = 25;
+
+	private final DynamoDbAsyncClient client;
+	private final FanOutScheduler scheduler;
+
+	DynamoBatchWriter(DynamoDbAsyncClient client, FanOutScheduler scheduler) {
+		this.client = client;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @param requests at most {@link #BATCH_WRITE_SIZE} requests across all tables, with no key repeated
+	 */
+	CompletableFuture<Void> write(Map<String, List<WriteRequest>> requests) {
+		return write(requests, 0);
+	}
+
+	private CompletableFuture<Void> write(Map<String, List<WriteRequest>> requests, int attempt) {
+		var table = requests.keySet().iterator().next();
+		return scheduler.run(table, FanOutScheduler.Operation.BATCH_WRITE_ITEM, () -> client.batchWriteItem(builder -> builder.requestItems(requests))).thenCompose(response -> {
+			var unprocessed = response.unprocessedItems();
+			if (unprocessed == null || unprocessed.isEmpty()) {
+				return CompletableFuture.completedFuture(null);
+			}
+			if (attempt + 1 >= Backoff.MAX_ATTEMPTS) {
+				throw new RuntimeException("Batch write still had unprocessed items after " + Backoff.MAX_ATTEMPTS + " attempts");
+			}
+			return Backoff.delay(attempt).thenCompose(__ -> write(unprocessed, attempt + 1));
+		});
+	}
+}
@@ -12,24 +12,40 @@
 
 package com.fleetpin.graphql.database.manager.dynamo;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.fleetpin.graphql.database.manager.*;
 import com.fleetpin.graphql.database.manager.util.BackupItem;
+import com.fleetpin.graphql.database.manager.util.BackupReader;
+import com.fleetpin.graphql.database.manager.util.BackupWriter;
 import com.fleetpin.graphql.database.manager.util.CompletableFutureUtil;
-import com.fleetpin.graphql.database.manager.util.HistoryCoreUtil;
 import com.fleetpin.graphql.database.manager.util.TableCoreUtil;
 import com.google.common.base.Throwables;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest.Builder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.fleetpin.graphql.database.manager.util.TableCoreUtil.table;
@@ -38,33 +54,78 @@ public class DynamoDb extends DatabaseDriver {
     private static final AttributeValue REVISION_INCREMENT = AttributeValue.builder().n("1").build();
     private static final AttributeValue GLOBAL = AttributeValue.builder().s("global").build();
     private static final int BATCH_WRITE_SIZE = 25;
+    private static final int TRANSACT_WRITE_SIZE = 100;
+    private static final int LINK_SET_SIZE = 1000;
+    static final int DEFAULT_QUERY_CONCURRENCY = 16;
+    static final int DEFAULT_WRITE_CONCURRENCY = 4;
+    static final String HISTORY_UPDATED_AT_INDEX = "organisationIdUpdatedAt";
+    private static final List<String> HISTORY_ATTRIBUTES = List.of("organisationIdType", "idRevision", "idDate", "updatedAt", "startsWithUpdatedAt");
+    //stream and file work is kept off the sdk's response threads
+    static final Executor BACKUP_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("dynamo-backup-%d").build());
 
     private final List<String> entityTables; //is in reverse order so easy to over ride as we go through
     private final String historyTable;
     private final String entityTable;
     private final DynamoDbAsyncClient client;
     private final ObjectMapper mapper;
+    private final ObjectMapper backupMapper;
     private final Supplier<String> idGenerator;
+    private final EntityCache entityCache;
+    private final int queryConcurrency;
+    private final int writeConcurrency;
+    private final RateLimiter writeRate;
+    private final FanOutScheduler fanOut;
+    private final DynamoBatchWriter batchWriter;
+    private final Executor backupExecutor;
+    private final AtomicLong batchGetRedrives = new AtomicLong();
+    private final AtomicLong batchGetRedrivenKeys = new AtomicLong();
 
     public DynamoDb(ObjectMapper mapper, List<String> entityTables, DynamoDbAsyncClient client, Supplier<String> idGenerator) {
         this(mapper, entityTables, null, client, idGenerator);
     }
 
     public DynamoDb(ObjectMapper mapper, List<String> entityTables, String historyTable, DynamoDbAsyncClient client, Supplier<String> idGenerator) {
+        this(mapper, entityTables, historyTable, client, idGenerator, null, DEFAULT_QUERY_CONCURRENCY, DEFAULT_WRITE_CONCURRENCY, 0, null, null);
+    }
+
+    /**
+     * Everything else is set through {@link DynamoDbManager#builder()}, which documents each option.
+     */
+    DynamoDb(ObjectMapper mapper, List<String> entityTables, String historyTable, DynamoDbAsyncClient client, Supplier<String> idGenerator, EntityCache entityCache, int queryConcurrency, int writeConcurrency, double writeRate, FanOutScheduler fanOut, Executor backupExecutor) {
         this.mapper = mapper;
+        this.backupMapper = mapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
         this.entityTables = entityTables;
         this.historyTable = historyTable;
         this.entityTable = entityTables.get(entityTables.size() - 1);
         this.client = client;
         this.idGenerator = idGenerator;
+        this.entityCache = entityCache;
+        this.queryConcurrency = queryConcurrency;
+        this.writeConcurrency = writeConcurrency;
+        this.writeRate = new RateLimiter(writeRate);
+        this.fanOut = fanOut == null ? FanOutScheduler.builder().build() : fanOut;
+        this.batchWriter = new DynamoBatchWriter(client, this.fanOut);
+        this.backupExecutor = backupExecutor == null ? BACKUP_EXECUTOR : backupExecutor;
     }
 
 
+    /**
+     * The entities still have to be loaded to be returned, the deletes go out in bulk the same way as {@link #deleteAll(String, Collection, boolean)}
+     */
     public <T extends Table> CompletableFuture<List<T>> delete(String organisationId, Class<T> clazz) {
         var ofTypeKey = KeyFactory.createDatabaseQueryKey(organisationId, QueryBuilder.create(clazz).build());
         var futureItems = query(ofTypeKey);
-        return futureItems.thenCompose(items ->
-            CompletableFutureUtil.sequence(items.stream().map(x -> delete(organisationId, x))));
+        return futureItems.thenCompose(items -> deleteAll(organisationId, items, true)).thenApply(results -> {
+            var deleted = new ArrayList<T>(results.size());
+            for (var result : results) {
+                if (!result.isSuccess()) {
+                    Throwables.throwIfUnchecked(result.getFailure());
+                    throw new RuntimeException(result.getFailure());
+                }
+                deleted.add(result.getEntity());
+            }
+            return deleted;
+        });
     }
 
     public <T extends Table> CompletableFuture<T> delete(String organisationId, T entity) {
@@ -82,6 +143,8 @@ public class DynamoDb extends DatabaseDriver {
         }
 
 
+        invalidate(organisationId, entity.getClass(), entity.getId());
+
         String sourceTable = getSourceTable(entity);
         if (sourceTable.equals(entityTable)) {
 
@@ -89,7 +152,7 @@ public class DynamoDb extends DatabaseDriver {
             key.put("organisationId", organisationIdAttribute);
             key.put("id", id);
 
-            return client.deleteItem(request -> request.tableName(entityTable).key(key).applyMutation(mutator -> {
+            return fanOut.run(entityTable, FanOutScheduler.Operation.DELETE_ITEM, () -> client.deleteItem(request -> request.tableName(entityTable).key(key).applyMutation(mutator -> {
                 
               
                   String sourceOrganisationId = getSourceOrganisationId(entity);
@@ -108,7 +171,7 @@ public class DynamoDb extends DatabaseDriver {
                   
               }
               
-            )).thenApply(response -> {
+            ))).thenApply(response -> {
                 return entity;
             });
         } else {
@@ -118,13 +181,33 @@ public class DynamoDb extends DatabaseDriver {
             item.put("id", id);
             item.put("deleted", AttributeValue.builder().bool(true).build());
 
-            return client.putItem(request -> request.tableName(entityTable).item(item)).thenApply(response -> {
+            return fanOut.run(entityTable, FanOutScheduler.Operation.PUT_ITEM, () -> client.putItem(request -> request.tableName(entityTable).item(item))).thenApply(response -> {
                 return entity;
             });
         }
     }
 
     public <T extends Table> CompletableFuture<T> put(String organisationId, T entity, boolean check) {
+        var put = preparePut(organisationId, entity, check);
+        return client.putItem(request -> request.tableName(entityTable).item(put.item).applyMutation(mutator -> {
+            if (put.condition != null) {
+                mutator.conditionExpression(put.condition);
+                if (put.conditionValues != null) {
+                    mutator.expressionAttributeValues(put.conditionValues);
+                }
+            }
+        })).exceptionally(failure -> {
+            if (failure.getCause() instanceof ConditionalCheckFailedException) {
+                //what we have cached is no longer what is in the table
+                evict(organisationId, entity.getClass(), entity.getId());
+                throw new RevisionMismatchException(failure.getCause());
+            }
+            Throwables.throwIfUnchecked(failure);
+            throw new RuntimeException(failure);
+        }).thenApply(response -> written(organisationId, put));
+    }
+
+    private <T extends Table> PreparedPut<T> preparePut(String organisationId, T entity, boolean check) {
 
         if (entity.getId() == null) {
             entity.setId(idGenerator.get());
@@ -135,15 +218,17 @@ public class DynamoDb extends DatabaseDriver {
         }
         final long revision = entity.getRevision();
         setUpdatedAt(entity, Instant.now());
+        @SuppressWarnings("unchecked")
+        var codec = EntityCodec.of((Class<T>) entity.getClass());
         var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
-        var id = AttributeValue.builder().s(table(entity.getClass()) + ":" + entity.getId()).build();
+        var id = AttributeValue.builder().s(codec.getTable() + ":" + entity.getId()).build();
         Map<String, AttributeValue> item = new HashMap<>();
         item.put("organisationId", organisationIdAttribute);
         item.put("id", id);
-        var entries = TableUtil.toAttributes(mapper, entity);
+        var entries = codec.toAttributes(mapper, entity);
         entries.remove("revision"); // needs to be at the top level as a limit on dynamo to be able to perform an atomic addition
         item.put("revision", AttributeValue.builder().n(Long.toString(revision + 1)).build());
-        if (HistoryCoreUtil.hasHistory(entity)) {
+        if (codec.hasHistory()) {
             item.put("history", AttributeValue.builder().bool(true).build());
         }
         item.put("item", AttributeValue.builder().m(entries).build());
@@ -160,45 +245,176 @@ public class DynamoDb extends DatabaseDriver {
         item.put("links", AttributeValue.builder().m(links).build());
         setSource(entity, entityTable, getLinks(entity), organisationId);
 
-        String secondaryOrganisation = TableUtil.getSecondaryOrganisation(entity);
-        String secondaryGlobal = TableUtil.getSecondaryGlobal(entity);
+        String secondaryOrganisation = codec.getSecondaryOrganisation(entity);
+        String secondaryGlobal = codec.getSecondaryGlobal(entity);
 
 
         if (secondaryGlobal != null) {
-            var index = AttributeValue.builder().s(table(entity.getClass()) + ":" + secondaryGlobal).build();
+            var index = AttributeValue.builder().s(codec.getTable() + ":" + secondaryGlobal).build();
             item.put("secondaryGlobal", index);
         }
         if (secondaryOrganisation != null) {
-            var index = AttributeValue.builder().s(table(entity.getClass()) + ":" + secondaryOrganisation).build();
+            var index = AttributeValue.builder().s(codec.getTable() + ":" + secondaryOrganisation).build();
             item.put("secondaryOrganisation", index);
         }
-        return client.putItem(request -> request.tableName(entityTable).item(item).applyMutation(mutator -> {
-            if (check) {
-                String sourceOrganisationId = getSourceOrganisationId(entity);
 
-                if (sourceTable != null && !sourceTable.equals(entityTable) || !sourceOrganisationId.equals(organisationId) || revision == 0) { //we confirm row does not exist with a revision since entry might predate feature
-                    mutator.conditionExpression("attribute_not_exists(revision)");
-                } else {
-                    Map<String, AttributeValue> variables = new HashMap<>();
-                    variables.put(":revision", AttributeValue.builder().n(Long.toString(revision)).build());
-                    //check exists and matches revision
-                    mutator.expressionAttributeValues(variables);
-                    mutator.conditionExpression("revision = :revision");
-                }
-                
+        String condition = null;
+        Map<String, AttributeValue> conditionValues = null;
+        if (check) {
+            String sourceOrganisationId = getSourceOrganisationId(entity);
+
+            if (sourceTable != null && !sourceTable.equals(entityTable) || !sourceOrganisationId.equals(organisationId) || revision == 0) { //we confirm row does not exist with a revision since entry might predate feature
+                condition = "attribute_not_exists(revision)";
+            } else {
+                conditionValues = new HashMap<>();
+                conditionValues.put(":revision", AttributeValue.builder().n(Long.toString(revision)).build());
+                //check exists and matches revision
+                condition = "revision = :revision";
             }
-        })).exceptionally(failure -> {
-            if (failure.getCause() instanceof ConditionalCheckFailedException) {
-                throw new RevisionMismatchException(failure.getCause());
+        }
+        return new PreparedPut<>(entity, item, revision, condition, conditionValues);
+    }
+
+    private <T extends Table> T written(String organisationId, PreparedPut<T> put) {
+        var entity = put.entity;
+        entity.setRevision(put.revision + 1);
+        invalidate(organisationId, entity.getClass(), entity.getId(), put.revision + 1);
+        return entity;
+    }
+
+    /**
+     * Unchecked writes go out as BatchWriteItem, checked writes as TransactWriteItems so each keeps its revision condition.
+     * An entity that appears more than once is written in a later round so no request holds the same key twice.
+     */
+    @Override
+    public <T extends Table> CompletableFuture<List<WriteResult<T>>> putAll(String organisationId, Collection<T> entities, boolean check) {
+        List<T> list = new ArrayList<>(entities);
+        for (var entity : list) {
+            if (entity.getId() == null) {
+                entity.setId(idGenerator.get());
+                setCreatedAt(entity, Instant.now());
             }
-            Throwables.throwIfUnchecked(failure);
-            throw new RuntimeException(failure);
-        }).thenApply(response -> {
-            entity.setRevision(revision + 1);
-            return entity;
+        }
+        var write = new BulkPut<>(organisationId, list, check);
+        return write.run(rounds(list, IntStream.range(0, list.size()).boxed().collect(Collectors.toList())));
+    }
+
+    /**
+     * Pages through the keys of the type a page at a time rather than loading the entities. Rows that come from a lower table are hidden behind a deleted marker.
+     */
+    @Override
+    public <T extends Table> CompletableFuture<Void> deleteAll(String organisationId, Class<T> type) {
+        var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
+        var prefix = AttributeValue.builder().s(table(type) + ":").build();
+        var limiter = new ConcurrencyLimiter(writeConcurrency);
+        invalidateType(organisationId, type);
+
+        //lower tables go first so the pass over the entity table sees the markers and leaves them alone
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (var table : entityTables) {
+            future = future.thenCompose(__ -> deletePages(table, organisationIdAttribute, prefix, readKeys(table, organisationIdAttribute, prefix, null), limiter));
+        }
+        return future.whenComplete((response, failure) -> invalidateType(organisationId, type));
+    }
+
+    private CompletableFuture<QueryResponse> readKeys(String table, AttributeValue organisationId, AttributeValue prefix, Map<String, AttributeValue> startKey) {
+        return client.query(builder -> builder.tableName(table)
+            .consistentRead(true)
+            .keyConditionExpression("organisationId = :organisationId AND begins_with(id, :table)")
+            .expressionAttributeValues(Map.of(":organisationId", organisationId, ":table", prefix))
+            .projectionExpression("organisationId, id, deleted")
+            .exclusiveStartKey(startKey));
+    }
+
+    private CompletableFuture<Void> deletePages(String table, AttributeValue organisationId, AttributeValue prefix, CompletableFuture<QueryResponse> page, ConcurrencyLimiter limiter) {
+        return page.thenCompose(response -> {
+            var requests = response.items().stream()
+                .filter(item -> item.get("deleted") == null || !Boolean.TRUE.equals(item.get("deleted").bool()))
+                .map(item -> {
+                    if (table.equals(entityTable)) {
+                        return WriteRequest.builder().deleteRequest(builder -> builder.key(Map.of("organisationId", organisationId, "id", item.get("id")))).build();
+                    }
+                    return WriteRequest.builder().putRequest(builder -> builder.item(deletedMarker(organisationId, item.get("id")))).build();
+                })
+                .collect(Collectors.toList());
+            var written = CompletableFuture.allOf(Lists.partition(requests, BATCH_WRITE_SIZE).stream()
+                .map(chunk -> limitedWrite(limiter, () -> batchWriter.write(Map.of(entityTable, chunk))))
+                .toArray(CompletableFuture[]::new));
+            if (!response.hasLastEvaluatedKey() || response.lastEvaluatedKey().isEmpty()) {
+                return written;
+            }
+            //the next page is read while this one is written but waits for it, so no more than two pages are held at once
+            var next = readKeys(table, organisationId, prefix, response.lastEvaluatedKey());
+            return written.thenCompose(__ -> deletePages(table, organisationId, prefix, next, limiter));
         });
     }
 
+    /**
+     * Checked deletes go out as TransactWriteItems so each keeps its revision condition, unchecked as BatchWriteItem.
+     * Entities owned by another organisation are left alone as with a single delete.
+     */
+    @Override
+    public <T extends Table> CompletableFuture<List<WriteResult<T>>> deleteAll(String organisationId, Collection<T> entities, boolean check) {
+        List<T> list = new ArrayList<>(entities);
+        var write = new BulkDelete<>(organisationId, list, check);
+        List<Integer> toDelete = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            var entity = list.get(i);
+            if (!getSourceOrganisationId(entity).equals(organisationId)) {
+                write.results.set(i, WriteResult.success(entity));
+                continue;
+            }
+            invalidate(organisationId, entity.getClass(), entity.getId());
+            toDelete.add(i);
+        }
+        return write.run(rounds(list, toDelete));
+    }
+
+    /**
+     * Groups the entities so that a key only turns up once per round, later occurrences wait for the earlier ones.
+     */
+    private static <T extends Table> List<List<Integer>> rounds(List<T> list, List<Integer> indexes) {
+        List<List<Integer>> rounds = new ArrayList<>();
+        Map<String, Integer> seen = new HashMap<>();
+        for (int i : indexes) {
+            var entity = list.get(i);
+            int round = seen.merge(table(entity.getClass()) + ":" + entity.getId(), 0, (a, b) -> a + 1);
+            if (round == rounds.size()) {
+                rounds.add(new ArrayList<>());
+            }
+            rounds.get(round).add(i);
+        }
+        return rounds;
+    }
+
+    private <T> CompletableFuture<T> limitedWrite(ConcurrencyLimiter limiter, Supplier<CompletableFuture<T>> write) {
+        return limiter.run(() -> writeRate.acquire().thenCompose(__ -> write.get()));
+    }
+
+    private static Map<String, AttributeValue> deletedMarker(AttributeValue organisationId, AttributeValue id) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("organisationId", organisationId);
+        item.put("id", id);
+        item.put("deleted", AttributeValue.builder().bool(true).build());
+        return item;
+    }
+
+    /**
+     * Folds the operations down to a single write per item and sends them as TransactWriteItems, puts and deletes keep their revision conditions.
+     * The other side of a link change is applied to the target item, or folded into the target's own write when it is part of the transaction.
+     * A transaction too big for one request is split, entity writes go first.
+     */
+    @Override
+    public CompletableFuture<Void> transaction(String organisationId, List<Transaction.Operation> operations) {
+        var transaction = new PendingTransaction(organisationId);
+        try {
+            operations.forEach(transaction::add);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return transaction.flush();
+    }
+
     @Override
     public int maxBatchSize() {
         return 50 / entityTables.size();
@@ -207,6 +423,45 @@ public class DynamoDb extends DatabaseDriver {
 
     @Override
     public <T extends Table> CompletableFuture<List<T>> get(List<DatabaseKey<T>> keys) {
+        if (entityCache == null) {
+            return batchGet(keys).thenApply(flattener -> {
+                var toReturn = new ArrayList<T>(keys.size());
+                for (var key : keys) {
+                    var item = flattener.get(key.getType(), key.getId());
+                    toReturn.add(item == null ? null : item.convertTo(mapper, key.getType()));
+                }
+                return toReturn;
+            });
+        }
+
+        var cached = new DynamoItem[keys.size()];
+        var missing = new ArrayList<DatabaseKey<T>>(keys.size());
+        for (int i = 0; i < cached.length; i++) {
+            cached[i] = entityCache.get(keys.get(i));
+            if (cached[i] == null) {
+                missing.add(keys.get(i));
+            }
+        }
+
+        CompletableFuture<Flattener> future = missing.isEmpty() ? CompletableFuture.completedFuture(null) : batchGet(missing);
+        return future.thenApply(flattener -> {
+            var toReturn = new ArrayList<T>(keys.size());
+            for (int i = 0; i < cached.length; i++) {
+                var key = keys.get(i);
+                var item = cached[i];
+                if (item == null) {
+                    item = flattener.get(key.getType(), key.getId());
+                    if (item != null) {
+                        entityCache.populate(key, item);
+                    }
+                }
+                toReturn.add(item == null ? null : item.convertTo(mapper, key.getType()));
+            }
+            return toReturn;
+        });
+    }
+
+    private <T extends Table> CompletableFuture<Flattener> batchGet(List<DatabaseKey<T>> keys) {
         List<Map<String, AttributeValue>> entries = new ArrayList<>(keys.size() * 2);
 
         keys.forEach(key -> {
@@ -230,27 +485,48 @@ public class DynamoDb extends DatabaseDriver {
         for (String table : this.entityTables) {
             items.put(table, KeysAndAttributes.builder().keys(entries).consistentRead(true).build());
         }
-        return client.batchGetItem(builder -> builder.requestItems(items)).thenApply(response -> {
-            var responseItems = response.responses();
-
+        var found = new HashMap<String, List<Map<String, AttributeValue>>>();
+        return batchGet(items, found, 0).thenApply(__ -> {
+            //flattened once every attempt is in so later tables still override earlier ones whichever attempt returned them
             var flattener = new Flattener(false);
             entityTables.forEach(table -> {
-                flattener.add(table, responseItems.get(table));
+                flattener.add(table, found.getOrDefault(table, Collections.emptyList()));
             });
-            var toReturn = new ArrayList<T>();
-            for (var key : keys) {
+            return flattener;
+        });
+    }
 
-                var item = flattener.get(key.getType(), key.getId());
-                if (item == null) {
-                    toReturn.add(null);
-                } else {
-                    toReturn.add(item.convertTo(mapper, key.getType()));
-                }
+    /**
+     * Keys dynamo leaves unprocessed, from throttling or the response size limit, are sent again with backoff rather than read as missing
+     */
+    private CompletableFuture<Void> batchGet(Map<String, KeysAndAttributes> items, Map<String, List<Map<String, AttributeValue>>> found, int attempt) {
+        return client.batchGetItem(builder -> builder.requestItems(items)).thenCompose(response -> {
+            response.responses().forEach((table, tableItems) -> found.computeIfAbsent(table, __ -> new ArrayList<>()).addAll(tableItems));
+
+            var unprocessed = response.unprocessedKeys();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
             }
-            return toReturn;
+            if (attempt + 1 >= Backoff.MAX_ATTEMPTS) {
+                throw new RuntimeException("Batch get still had unprocessed keys after " + Backoff.MAX_ATTEMPTS + " attempts");
+            }
+            batchGetRedrives.incrementAndGet();
+            batchGetRedrivenKeys.addAndGet(unprocessed.values().stream().mapToLong(keys -> keys.keys().size()).sum());
+            return Backoff.delay(attempt).thenCompose(__ -> batchGet(unprocessed, found, attempt + 1));
         });
     }
 
+    /**
+     * @return times a batch get came back with unprocessed keys and had to be sent again
+     */
+    public long getBatchGetRedrives() {
+        return batchGetRedrives.get();
+    }
+
+    public long getBatchGetRedrivenKeys() {
+        return batchGetRedrivenKeys.get();
+    }
+
     @Override
     public <T extends Table> CompletableFuture<List<T>> getViaLinks(String organisationId, Table entry, Class<T> type, TableDataLoader<DatabaseKey<Table>> items) {
         String tableTarget = table(type);
@@ -262,24 +538,103 @@ public class DynamoDb extends DatabaseDriver {
 
     @Override
     public <T extends Table> CompletableFuture<List<T>> query(DatabaseQueryKey<T> key) {
-        var organisationId = AttributeValue.builder().s(key.getOrganisationId()).build();
-        String prefix = Optional.ofNullable(key.getQuery().getStartsWith()).orElse("");
-        var id = AttributeValue.builder().s(table(key.getQuery().getType()) + ":" + prefix).build();
+        return query(key, new ConcurrencyLimiter(queryConcurrency));
+    }
 
-        var futures = entityTables.stream()
-            .flatMap(table -> Stream.of(Map.entry(table, GLOBAL), Map.entry(table, organisationId)))
-            .map(pair -> query(pair.getKey(), pair.getValue(), id, key.getQuery()));
+    @Override
+    public <T extends Table> CompletableFuture<List<List<T>>> query(List<DatabaseQueryKey<T>> keys) {
+        return query(keys, newQueryScope());
+    }
 
-        var future = CompletableFutureUtil.sequence(futures);
+    /**
+     * Each database gets one limiter for all its query batches, so batches dispatched while others are still reading share the same slots
+     */
+    @Override
+    public Object newQueryScope() {
+        return new ConcurrencyLimiter(queryConcurrency);
+    }
 
-        return future.thenApply(results -> {
+    /**
+     * Plain prefix queries on the same organisation and type share reads, a prefix that starts with another prefix in the batch is served from the wider read.
+     * Queries that page with limit or after are run on their own.
+     */
+    @Override
+    public <T extends Table> CompletableFuture<List<List<T>>> query(List<DatabaseQueryKey<T>> keys, Object scope) {
+        var limiter = scope instanceof ConcurrencyLimiter ? (ConcurrencyLimiter) scope : new ConcurrencyLimiter(queryConcurrency);
+        List<CompletableFuture<List<T>>> toReturn = new ArrayList<>(Collections.nCopies(keys.size(), null));
+
+        Map<List<String>, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            var key = keys.get(i);
+            var query = key.getQuery();
+            if (query.getLimit() != null || query.getAfter() != null) {
+                toReturn.set(i, query(key, limiter));
+            } else {
+                groups.computeIfAbsent(List.of(key.getOrganisationId(), table(query.getType())), __ -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (var group : groups.values()) {
+            //sorted so prefixes that start with another always follow it
+            var byPrefix = new TreeMap<String, List<Integer>>();
+            for (int i : group) {
+                byPrefix.computeIfAbsent(Optional.ofNullable(keys.get(i).getQuery().getStartsWith()).orElse(""), __ -> new ArrayList<>()).add(i);
+            }
+
+            String root = null;
+            CompletableFuture<List<List<DynamoItem>>> read = null;
+            for (var entry : byPrefix.entrySet()) {
+                var prefix = entry.getKey();
+                if (root == null || !prefix.startsWith(root)) {
+                    root = prefix;
+                    read = queryItems(keys.get(entry.getValue().get(0)), limiter);
+                }
+                for (int i : entry.getValue()) {
+                    var type = keys.get(i).getQuery().getType();
+                    var idPrefix = table(type) + ":" + prefix;
+                    toReturn.set(i, read.thenApply(results -> {
+                        var flattener = new Flattener(false);
+                        results.forEach(list -> flattener.addItems(list.stream().filter(item -> item.getId().startsWith(idPrefix)).collect(Collectors.toList())));
+                        return flattener.results(mapper, type);
+                    }));
+                }
+            }
+        }
+        return CompletableFutureUtil.sequence(toReturn);
+    }
+
+    @Override
+    public <T extends Table> Flow.Publisher<T> queryStream(DatabaseQueryKey<T> key) {
+        return new DynamoQueryPublisher<>(client, mapper, entityTables, GLOBAL, key);
+    }
+
+    @Override
+    public <T extends Table> CompletableFuture<QueryPage<T>> queryPage(DatabaseQueryKey<T> key) {
+        return new DynamoQueryPager<>(client, mapper, entityTables, GLOBAL, key).read();
+    }
+
+    private <T extends Table> CompletableFuture<List<T>> query(DatabaseQueryKey<T> key, ConcurrencyLimiter limiter) {
+        var query = key.getQuery();
+        return queryItems(key, limiter).thenApply(results -> {
             var flattener = new Flattener(false);
 
             results.forEach(list -> flattener.addItems(list));
-            return flattener.results(mapper, key.getQuery().getType(), Optional.ofNullable(key.getQuery().getLimit()));
+            return flattener.results(mapper, query.getType(), Optional.ofNullable(query.getLimit()));
         });
     }
 
+    private CompletableFuture<List<List<DynamoItem>>> queryItems(DatabaseQueryKey<?> key, ConcurrencyLimiter limiter) {
+        var organisationId = AttributeValue.builder().s(key.getOrganisationId()).build();
+        String prefix = Optional.ofNullable(key.getQuery().getStartsWith()).orElse("");
+        var id = AttributeValue.builder().s(table(key.getQuery().getType()) + ":" + prefix).build();
+
+        var futures = entityTables.stream()
+            .flatMap(table -> Stream.of(Map.entry(table, GLOBAL), Map.entry(table, organisationId)))
+            .map(pair -> limiter.run(() -> query(pair.getKey(), pair.getValue(), id, key.getQuery())));
+
+        return CompletableFutureUtil.sequence(futures);
+    }
+
     @Override
     public <T extends Table> CompletableFuture<List<T>> queryHistory(DatabaseQueryHistoryKey<T> key) {
     	if (this.historyTable == null) {
@@ -300,7 +655,9 @@ public class DynamoDb extends DatabaseDriver {
         var toReturn = new ArrayList<T>();
         return client.queryPaginator(builder.build())
         .subscribe(response -> {
-            response.items().forEach(item -> toReturn.add(new DynamoItem(historyTable, item).convertTo(mapper, queryHistory.getType())));
+            response.items().stream()
+                .filter(item -> !item.containsKey("deleted")) //tombstones are only for incremental backups
+                .forEach(item -> toReturn.add(new DynamoItem(historyTable, item).convertTo(mapper, queryHistory.getType())));
         }).thenApply(__ -> {
             return toReturn;
         });
@@ -450,6 +807,16 @@ public class DynamoDb extends DatabaseDriver {
         var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
         var id = AttributeValue.builder().s(table(type) + ":" + value).build();
 
+        if (entityTables.size() == 1) {
+            //index projects everything so can hydrate straight from it. With more tables a row might be overridden in a table it does not show up in so go via get
+            var table = entityTables.get(0);
+            return querySecondaryItems(table, organisationIdAttribute, id).thenApply(items -> {
+                var flattener = new Flattener(false);
+                flattener.addItems(items);
+                return flattener.results(mapper, type);
+            });
+        }
+
         CompletableFuture<Set<String>> future = CompletableFuture.completedFuture(new HashSet<>());
         for (var table : entityTables) {
             future = future.thenCombine(querySecondary(table, organisationIdAttribute, id), (a, b) -> {
@@ -465,6 +832,24 @@ public class DynamoDb extends DatabaseDriver {
 
     }
 
+    private CompletableFuture<List<DynamoItem>> querySecondaryItems(String table, AttributeValue organisationId, AttributeValue id) {
+
+        Map<String, AttributeValue> keyConditions = new HashMap<>();
+        keyConditions.put(":organisationId", organisationId);
+        keyConditions.put(":secondaryOrganisation", id);
+
+        var toReturn = new ArrayList<DynamoItem>();
+        return client.queryPaginator(r -> r.tableName(table).indexName("secondaryOrganisation")
+            .consistentRead(true) //the local index can be read consistently like the batch get it replaced
+            .keyConditionExpression("organisationId = :organisationId AND secondaryOrganisation = :secondaryOrganisation")
+            .expressionAttributeValues(keyConditions)
+        ).subscribe(response -> {
+            response.items().forEach(item -> toReturn.add(new DynamoItem(table, item)));
+        }).thenApply(__ -> {
+            return toReturn;
+        });
+    }
+
     private CompletableFuture<List<String>> querySecondary(String table, AttributeValue organisationId, AttributeValue id) {
 
         Map<String, AttributeValue> keyConditions = new HashMap<>();
@@ -516,44 +901,31 @@ public class DynamoDb extends DatabaseDriver {
 
     @Override
     public CompletableFuture<Void> restoreBackup(List<BackupItem> entities) {
+        return restoreBackup(entities, ProgressListener.NONE);
+    }
 
-        List<CompletableFuture<BatchWriteItemResponse>> completableFutures =
-            Lists.partition(entities
-                .stream()
-                .map(
-                    item -> {
-                        return WriteRequest.builder().putRequest(builder ->
-                            builder.item(TableUtil.toAttributes(mapper, item)).build()
-                        ).build();
-                    })
-                .collect(Collectors.toList()), BATCH_WRITE_SIZE)
-                .stream()
-                .map(putRequestBatch -> {
-                    final var batchPutRequest = BatchWriteItemRequest.builder()
-                        .requestItems(Map.of(entityTable, putRequestBatch))
-                        .build();
-
-                    return client.batchWriteItem(batchPutRequest)
-                        .thenApply(
-                            items -> {
-                                do {
-                                    client.batchWriteItem(BatchWriteItemRequest
-                                        .builder()
-                                        .requestItems(items.unprocessedItems())
-                                        .build());
-                                } while (items.unprocessedItems().size() > 0);
-                                return items;
-                            }
-                        ).exceptionally(failure -> {
-                            if (failure.getCause() instanceof ConditionalCheckFailedException) {
-                                throw new RevisionMismatchException(failure.getCause());
-                            }
-                            Throwables.throwIfUnchecked(failure);
-                            throw new RuntimeException(failure);
-                        });
-                }).collect(Collectors.toList());
-
-        return CompletableFuture.allOf(completableFutures.toArray(new CompletableFuture[completableFutures.size()]));
+    /**
+     * At most the write concurrency of batches are in flight, a batch only counts as written once dynamo has processed every item in it
+     */
+    @Override
+    public CompletableFuture<Void> restoreBackup(List<BackupItem> entities, ProgressListener listener) {
+        var limiter = new ConcurrencyLimiter(writeConcurrency);
+        var written = new AtomicLong();
+        long total = entities.size();
+
+        var futures = Lists.partition(entities, BATCH_WRITE_SIZE).stream().map(chunk -> limitedWrite(limiter, () -> {
+            //converted once the batch has a slot so a large restore is not held as requests all at once
+            var requests = chunk.stream()
+                .map(item -> WriteRequest.builder().putRequest(builder -> builder.item(TableUtil.toAttributes(mapper, item))).build())
+                .collect(Collectors.toList());
+            return batchWriter.write(Map.of(entityTable, requests));
+        }).thenRun(() -> listener.progress(written.addAndGet(chunk.size()), total))).toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(futures).whenComplete((r, e) -> {
+            if (entityCache != null) {
+                entityCache.invalidateAll();
+            }
+        });
     }
 
     @Override
@@ -574,6 +946,190 @@ public class DynamoDb extends DatabaseDriver {
     }
 
 
+    /**
+     * Tables are written one after another a page at a time, the next page is read while the current one is written so only two pages are held at once.
+     * Writing happens on the backup executor so a slow stream never holds up the client.
+     */
+    @Override
+    public CompletableFuture<Long> backup(String organisationId, OutputStream out, boolean gzip) {
+        BackupWriter writer;
+        try {
+            writer = new BackupWriter(backupMapper, out, gzip);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        }
+        var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
+
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (var table : entityTables) {
+            future = future.thenCompose(__ -> backupPages(table, organisationIdAttribute, readBackupPage(table, organisationIdAttribute, null), writer));
+        }
+        return future.thenApplyAsync(__ -> {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return writer.getCount();
+        }, backupExecutor);
+    }
+
+    private CompletableFuture<QueryResponse> readBackupPage(String table, AttributeValue organisationId, Map<String, AttributeValue> startKey) {
+        return client.query(builder -> builder.tableName(table)
+            .consistentRead(true)
+            .keyConditionExpression("organisationId = :organisationId")
+            .expressionAttributeValues(Map.of(":organisationId", organisationId))
+            .exclusiveStartKey(startKey));
+    }
+
+    private CompletableFuture<Void> backupPages(String table, AttributeValue organisationId, CompletableFuture<QueryResponse> page, BackupWriter writer) {
+        return page.thenComposeAsync(response -> {
+            CompletableFuture<QueryResponse> next = null;
+            if (response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()) {
+                next = readBackupPage(table, organisationId, response.lastEvaluatedKey());
+            }
+            try {
+                for (var item : response.items()) {
+                    writer.write(new DynamoBackupItem(table, item, mapper));
+                }
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (next == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return backupPages(table, organisationId, next, writer);
+        }, backupExecutor);
+    }
+
+    /**
+     * Reads the organisation's history through the organisationIdUpdatedAt index, a global index on the history table hashed on organisationId and
+     * ranged on updatedAt, keeping the last record of each entity. Only entities changed since are held so memory goes with churn not tenant size.
+     * History is written from the table's stream so lags a little, overlapping increments is safe as applying a record twice changes nothing.
+     */
+    @Override
+    public CompletableFuture<Long> takeIncrementalBackup(String organisationId, Instant since, OutputStream out, boolean gzip) {
+        if (this.historyTable == null) {
+            return CompletableFuture.failedFuture(new RuntimeException("Cannot take an incremental backup, because the history table is null."));
+        }
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":organisationId", AttributeValue.builder().s(organisationId).build());
+        values.put(":since", AttributeValue.builder().n(Long.toString(since.toEpochMilli())).build());
+
+        var latest = new HashMap<String, Map<String, AttributeValue>>();
+        return client.queryPaginator(r -> r.tableName(historyTable)
+            .indexName(HISTORY_UPDATED_AT_INDEX)
+            .keyConditionExpression("organisationId = :organisationId AND updatedAt >= :since")
+            .expressionAttributeValues(values)
+        ).subscribe(response -> {
+            response.items().forEach(item -> latest.merge(item.get("id").s(), item, DynamoDb::laterHistory));
+        }).thenApplyAsync(__ -> {
+            try (var writer = new BackupWriter(backupMapper, out, gzip)) {
+                for (var item : latest.values()) {
+                    writer.write(incrementItem(item));
+                }
+                return writer.getCount();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, backupExecutor);
+    }
+
+    private static Map<String, AttributeValue> laterHistory(Map<String, AttributeValue> a, Map<String, AttributeValue> b) {
+        int compare = Long.compare(Long.parseLong(a.get("updatedAt").n()), Long.parseLong(b.get("updatedAt").n()));
+        if (compare == 0) {
+            compare = Long.compare(Long.parseLong(a.get("revision").n()), Long.parseLong(b.get("revision").n()));
+        }
+        return compare >= 0 ? a : b;
+    }
+
+    private DynamoBackupItem incrementItem(Map<String, AttributeValue> history) {
+        if (history.containsKey("deleted")) {
+            return DynamoBackupItem.tombstone(entityTable, history.get("organisationId").s(), history.get("id").s(), mapper);
+        }
+        var item = new HashMap<>(history);
+        HISTORY_ATTRIBUTES.forEach(item::remove);
+        return new DynamoBackupItem(entityTable, item, mapper);
+    }
+
+    /**
+     * Items are sharded across the writers by key so every key belongs to a single writer and a later item for a key always lands after an earlier one.
+     * Each writer has one batch in flight, reading only waits when the writer the next item belongs to is full and still busy.
+     * The stream is only read on the backup executor, a bad stream fails the returned future rather than throwing.
+     */
+    @Override
+    public CompletableFuture<Long> restore(InputStream in, RestoreOptions options, ProgressListener listener) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return new BackupReader<>(mapper, in, DynamoBackupItem.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, backupExecutor).thenCompose(reader -> restore(reader, options, listener));
+    }
+
+    private CompletableFuture<Long> restore(BackupReader<DynamoBackupItem> reader, RestoreOptions options, ProgressListener listener) {
+        var limiter = new ConcurrencyLimiter(writeConcurrency);
+        var written = new AtomicLong();
+        var writers = new RestoreWriter[options.getWriters() == 0 ? writeConcurrency : options.getWriters()];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new RestoreWriter(limiter, written, listener);
+        }
+        //one time for the whole restore so items written together agree
+        var restoredAt = options.isKeepTimestamps() ? null : TableUtil.toAttribute(mapper, Instant.now());
+
+        return restoreItems(reader, writers, item -> restoreRequest(item, options, restoredAt))
+            .thenCompose(__ -> CompletableFuture.allOf(Arrays.stream(writers).map(RestoreWriter::finish).toArray(CompletableFuture[]::new)))
+            .whenComplete((r, e) -> {
+                if (entityCache != null) {
+                    entityCache.invalidateAll();
+                }
+            }).thenApply(__ -> written.get());
+    }
+
+    private CompletableFuture<Void> restoreItems(BackupReader<DynamoBackupItem> reader, RestoreWriter[] writers, Function<DynamoBackupItem, WriteRequest> convert) {
+        try {
+            DynamoBackupItem item;
+            while ((item = reader.next()) != null) {
+                var request = convert.apply(item);
+                var attributes = request.putRequest() != null ? request.putRequest().item() : request.deleteRequest().key();
+                var key = attributes.get("organisationId").s() + ":" + attributes.get("id").s();
+                var wait = writers[Math.floorMod(key.hashCode(), writers.length)].add(key, request);
+                if (wait != null) {
+                    return wait.thenComposeAsync(__ -> restoreItems(reader, writers, convert), backupExecutor);
+                }
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private WriteRequest restoreRequest(DynamoBackupItem item, RestoreOptions options, AttributeValue restoredAt) {
+        if (Boolean.TRUE.equals(item.getTombstone())) {
+            var organisationId = options.getOrganisationId() != null ? options.getOrganisationId() : item.getOrganisationId();
+            var key = Map.of("organisationId", AttributeValue.builder().s(organisationId).build(), "id", AttributeValue.builder().s(item.getId()).build());
+            return WriteRequest.builder().deleteRequest(builder -> builder.key(key)).build();
+        }
+        var attributes = TableUtil.toAttributes(mapper, item);
+        if (options.getOrganisationId() != null) {
+            attributes.put("organisationId", AttributeValue.builder().s(options.getOrganisationId()).build());
+        }
+        if (!options.isKeepRevisions() && attributes.containsKey("revision")) {
+            attributes.put("revision", AttributeValue.builder().n("1").build());
+        }
+        if (restoredAt != null && attributes.containsKey("item")) {
+            var entity = new HashMap<>(attributes.get("item").m());
+            entity.put("createdAt", restoredAt);
+            entity.put("updatedAt", restoredAt);
+            attributes.put("item", AttributeValue.builder().m(entity).build());
+        }
+        return WriteRequest.builder().putRequest(builder -> builder.item(attributes)).build();
+    }
+
     private CompletableFuture<List<BackupItem>> takeBackup(String table, AttributeValue organisationId) {
         Map<String, AttributeValue> keyConditions = new HashMap<>();
         keyConditions.put(":organisationId", organisationId);
@@ -595,77 +1151,63 @@ public class DynamoDb extends DatabaseDriver {
 
 
     private CompletableFuture<?> removeLinks(AttributeValue organisationIdAttribute, String fromTable, Set<String> fromIds, String targetTable, String targetId) {
-
         var targetIdAttribute = AttributeValue.builder().ss(targetId).build();
         var futures = fromIds.stream().map(fromId -> {
-            var fromIdAttribute = AttributeValue.builder().s(fromTable + ":" + fromId).build();
-            Map<String, AttributeValue> targetKey = new HashMap<>();
-            targetKey.put("organisationId", organisationIdAttribute);
-            targetKey.put("id", fromIdAttribute);
-
-            Map<String, AttributeValue> v = new HashMap<>();
-            v.put(":val", targetIdAttribute);
-            v.put(":revisionIncrement", REVISION_INCREMENT);
-
-
-            Map<String, String> k = new HashMap<>();
-            k.put("#table", targetTable);
-
-            return client.updateItem(request -> request.tableName(entityTable).key(targetKey).updateExpression("DELETE links.#table :val ADD revision :revisionIncrement").expressionAttributeNames(k).expressionAttributeValues(v));
+            invalidate(organisationIdAttribute.s(), fromTable, fromId);
+            return updateLinkSet(organisationIdAttribute, fromTable, fromId, targetTable, targetIdAttribute, false);
         }).toArray(CompletableFuture[]::new);
-        
+
         return CompletableFuture.allOf(futures);
     }
-    
+
     private CompletableFuture<?> addLinks(AttributeValue organisationIdAttribute, String fromTable, Set<String> fromIds, String targetTable, String targetId) {
-        
         var targetIdAttribute = AttributeValue.builder().ss(targetId).build();
-
         var futures = fromIds.stream().map(fromId -> {
-            var fromIdAttribute = AttributeValue.builder().s(fromTable + ":" + fromId).build();
-            Map<String, AttributeValue> targetKey = new HashMap<>();
-            targetKey.put("organisationId", organisationIdAttribute);
-            targetKey.put("id", fromIdAttribute);
-
-            Map<String, AttributeValue> v = new HashMap<>();
-            v.put(":val", targetIdAttribute);
-            v.put(":revisionIncrement", REVISION_INCREMENT);
-            Map<String, String> k = new HashMap<>();
-            k.put("#table", targetTable);
-
-            return client.updateItem(request -> request.tableName(entityTable).key(targetKey).conditionExpression("attribute_exists(links)").updateExpression("ADD links.#table :val, revision :revisionIncrement").expressionAttributeNames(k).expressionAttributeValues(v))
-                    .handle((r, e) -> {
-                        if (e != null) {
-                            if (e.getCause() instanceof ConditionalCheckFailedException) {
-                                Map<String, AttributeValue> m = new HashMap<>();
-                                m.put(targetTable, targetIdAttribute);
-                                v.put(":val", AttributeValue.builder().m(m).build());
-                                v.put(":revisionIncrement", REVISION_INCREMENT);
-
-                                return client.updateItem(request -> request.tableName(entityTable).key(targetKey).conditionExpression("attribute_not_exists(links)").updateExpression("SET links = :val ADD revision :revisionIncrement").expressionAttributeValues(v));
-                            } else {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                        return CompletableFuture.completedFuture(r);
-                    }).thenCompose(a -> a)
-                    .handle((r, e) -> { //nasty if attribute now exists use first approach again...
-                        if (e != null) {
-                            if (e.getCause() instanceof ConditionalCheckFailedException) {
-                                return client.updateItem(request -> request.tableName(entityTable).key(targetKey).conditionExpression("attribute_exists(links)").updateExpression("ADD links.#table :val, revision :revisionIncrement").expressionAttributeNames(k).expressionAttributeValues(v));
-                            } else {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                        return CompletableFuture.completedFuture(r);
-                    }).thenCompose(a -> a);
-
-
+            invalidate(organisationIdAttribute.s(), fromTable, fromId);
+            return updateLinkSet(organisationIdAttribute, fromTable, fromId, targetTable, targetIdAttribute, true);
         }).toArray(CompletableFuture[]::new);
-        
+
         return CompletableFuture.allOf(futures);
     }
-    
+
+    /**
+     * Adds to or removes from a single link set on an item. Every put writes a links map so this is one request,
+     * an item written before that has no map to add to and is given an empty one first, there is nothing to remove from it.
+     */
+    private CompletableFuture<?> updateLinkSet(AttributeValue organisationIdAttribute, String table, String id, String linkTable, AttributeValue ids, boolean add) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("organisationId", organisationIdAttribute);
+        key.put("id", AttributeValue.builder().s(table + ":" + id).build());
+
+        Map<String, AttributeValue> v = new HashMap<>();
+        v.put(":val", ids);
+        v.put(":revisionIncrement", REVISION_INCREMENT);
+
+        Map<String, String> k = new HashMap<>();
+        k.put("#table", linkTable);
+
+        var expression = add ? "ADD links.#table :val, revision :revisionIncrement" : "DELETE links.#table :val ADD revision :revisionIncrement";
+        Supplier<CompletableFuture<UpdateItemResponse>> update = () -> fanOut.run(entityTable, FanOutScheduler.Operation.UPDATE_ITEM, () -> client.updateItem(request -> request.tableName(entityTable).key(key).conditionExpression("attribute_exists(links)").updateExpression(expression).expressionAttributeNames(k).expressionAttributeValues(v)));
+
+        return update.get().handle((response, failure) -> {
+            if (failure == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            if (!(unwrap(failure) instanceof ConditionalCheckFailedException)) {
+                throw new RuntimeException(unwrap(failure));
+            }
+            if (!add) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return fanOut.run(entityTable, FanOutScheduler.Operation.UPDATE_ITEM, () -> client.updateItem(request -> request.tableName(entityTable).key(key).updateExpression("SET links = if_not_exists(links, :links)").expressionAttributeValues(Map.of(":links", AttributeValue.builder().m(Map.of()).build()))))
+                .thenCompose(__ -> update.get());
+        }).thenCompose(a -> a);
+    }
+
+    /**
+     * When the revision can be checked the whole links map is written from the entity in one request, the check makes sure nothing it does not know about is lost.
+     * Without a check only the one link set is replaced so reverse links added by other writers in the meantime are kept.
+     */
     private <T extends Table> CompletableFuture<T> updateEntityLinks(String organisationId, T entity, String targetTable, Collection<String> targetId) {
         var id = AttributeValue.builder().s(table(entity.getClass()) + ":" + entity.getId()).build();
         var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
@@ -673,62 +1215,33 @@ public class DynamoDb extends DatabaseDriver {
         key.put("organisationId", organisationIdAttribute);
         key.put("id", id);
 
-        Map<String, String> k = new HashMap<>();
-        k.put("#table", targetTable);
+        String sourceTable = getSourceTable(entity);
+        String sourceOrganisationId = getSourceOrganisationId(entity);
+        //revision checks don't really work when reading from one env and writing to another, or read from global write to organisation.
+        //revision would only practically be empty if reading object before revision concept is present
+        boolean check = sourceTable.equals(entityTable) && sourceOrganisationId.equals(organisationId) && entity.getRevision() != 0;
 
-        Map<String, AttributeValue> values = new HashMap<>();
-        if (targetId.isEmpty()) {
-            values.put(":val", AttributeValue.builder().nul(true).build());
-            
-        } else {
-            values.put(":val", AttributeValue.builder().ss(targetId).build());
-        }
-        values.put(":revisionIncrement", REVISION_INCREMENT);
-        
+        CompletableFuture<UpdateItemResponse> destination;
+        if (check) {
+            var links = HashMultimap.create(getLinks(entity));
+            links.replaceValues(targetTable, targetId);
 
-        String extraConditions;
-        
-        String sourceTable = getSourceTable(entity);
-        String sourceOrganisationId = getSourceOrganisationId(entity);
-        //revision checks don't really work when reading from one env and writing to another, or read from global write to organisation.
-        //revision would only practically be empty if reading object before revision concept is present
-        if (sourceTable.equals(entityTable) && sourceOrganisationId.equals(organisationId) && entity.getRevision() != 0) {
+            Map<String, AttributeValue> values = new HashMap<>();
+            values.put(":links", linksAttribute(links));
+            values.put(":revisionIncrement", REVISION_INCREMENT);
             values.put(":revision", AttributeValue.builder().n(Long.toString(entity.getRevision())).build());
-            extraConditions = " AND revision = :revision";
+
+            destination = fanOut.run(entityTable, FanOutScheduler.Operation.UPDATE_ITEM, () -> client.updateItem(request -> request.tableName(entityTable).key(key).conditionExpression("revision = :revision").updateExpression("SET links = :links ADD revision :revisionIncrement").expressionAttributeValues(values).returnValues(ReturnValue.UPDATED_NEW)));
         } else {
-            extraConditions = "";
-        }
-
-        var destination = client.updateItem(request -> request.tableName(entityTable).key(key).conditionExpression("attribute_exists(links)" + extraConditions).updateExpression("SET links.#table = :val ADD revision :revisionIncrement").expressionAttributeNames(k).expressionAttributeValues(values).returnValues(ReturnValue.UPDATED_NEW))
-                .handle((r, e) -> {
-                    if (e != null) {
-                        if (e.getCause() instanceof ConditionalCheckFailedException) {
-                            Map<String, AttributeValue> m = new HashMap<>();
-                            m.put(targetTable, values.get(":val"));
-                            values.put(":val", AttributeValue.builder().m(m).build());
-                            
-                            return client.updateItem(request -> request.tableName(entityTable).key(key).conditionExpression("attribute_not_exists(links)" + extraConditions).updateExpression("SET links = :val ADD revision :revisionIncrement").expressionAttributeValues(values).returnValues(ReturnValue.UPDATED_NEW));
-                        } else {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                    return CompletableFuture.completedFuture(r);
-                }).thenCompose(a -> a)
-                .handle((r, e) -> {
-                    if (e != null) {
-                        if (e.getCause() instanceof ConditionalCheckFailedException) {
-                            return client.updateItem(request -> request.tableName(entityTable).key(key).conditionExpression("attribute_exists(links)" + extraConditions).updateExpression("SET links.#table = :val ADD revision :revisionIncrement").expressionAttributeNames(k).expressionAttributeValues(values).returnValues(ReturnValue.UPDATED_NEW));
-                        } else {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                    return CompletableFuture.completedFuture(r);
-                }).thenCompose(a -> a);
+            destination = updateEntityLinkSet(key, targetTable, targetId);
+        }
         return destination.thenApply(response -> {
             entity.setRevision(Long.parseLong(response.attributes().get("revision").n()));
+            invalidate(organisationId, entity.getClass(), entity.getId(), entity.getRevision());
             return entity;
         }).exceptionally(failure -> {
             if (failure.getCause() instanceof ConditionalCheckFailedException) {
+                evict(organisationId, entity.getClass(), entity.getId());
                 throw new RevisionMismatchException(failure.getCause());
             }
             Throwables.throwIfUnchecked(failure);
@@ -736,6 +1249,34 @@ public class DynamoDb extends DatabaseDriver {
         });
     }
 
+    /**
+     * Replaces a single link set with no revision condition. An item written before every put included a links map is given an empty one first.
+     */
+    private CompletableFuture<UpdateItemResponse> updateEntityLinkSet(Map<String, AttributeValue> key, String targetTable, Collection<String> targetId) {
+        Map<String, String> names = Map.of("#table", targetTable);
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":revisionIncrement", REVISION_INCREMENT);
+        String expression;
+        if (targetId.isEmpty()) {
+            expression = "REMOVE links.#table ADD revision :revisionIncrement";
+        } else {
+            values.put(":val", AttributeValue.builder().ss(targetId).build());
+            expression = "SET links.#table = :val ADD revision :revisionIncrement";
+        }
+
+        Supplier<CompletableFuture<UpdateItemResponse>> update = () -> fanOut.run(entityTable, FanOutScheduler.Operation.UPDATE_ITEM, () -> client.updateItem(request -> request.tableName(entityTable).key(key).conditionExpression("attribute_exists(links)").updateExpression(expression).expressionAttributeNames(names).expressionAttributeValues(values).returnValues(ReturnValue.UPDATED_NEW)));
+        return update.get().handle((response, failure) -> {
+            if (failure == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            if (!(unwrap(failure) instanceof ConditionalCheckFailedException)) {
+                throw new RuntimeException(unwrap(failure));
+            }
+            return fanOut.run(entityTable, FanOutScheduler.Operation.UPDATE_ITEM, () -> client.updateItem(request -> request.tableName(entityTable).key(key).updateExpression("SET links = if_not_exists(links, :links)").expressionAttributeValues(Map.of(":links", AttributeValue.builder().m(Map.of()).build()))))
+                .thenCompose(__ -> update.get());
+        }).thenCompose(a -> a);
+    }
+
     @Override
     public <T extends Table> CompletableFuture<T> link(String organisationId, T entity, Class<? extends Table> class1, List<String> groupIds) {
 
@@ -769,6 +1310,74 @@ public class DynamoDb extends DatabaseDriver {
         });
     }
 
+    /**
+     * Each entity gets its own revision checked update, the target is then given all of them with a few ADD requests rather than one per entity.
+     * An entity already linked to only the target is left as is.
+     */
+    @Override
+    public <T extends Table> CompletableFuture<List<WriteResult<T>>> linkAll(String organisationId, Class<? extends Table> type, String targetId, Collection<T> entities) {
+        var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
+        String target = table(type);
+        var targetIds = List.of(targetId);
+        List<T> list = new ArrayList<>(entities);
+        List<WriteResult<T>> results = new ArrayList<>(Collections.nCopies(list.size(), null));
+        List<Set<String>> previous = new ArrayList<>(Collections.nCopies(list.size(), null));
+
+        var limiter = new ConcurrencyLimiter(writeConcurrency);
+        var futures = new ArrayList<CompletableFuture<?>>();
+        for (int i = 0; i < list.size(); i++) {
+            var entity = list.get(i);
+            var existing = Set.copyOf(getLinks(entity).get(target));
+            if (existing.equals(Set.of(targetId))) {
+                results.set(i, WriteResult.success(entity));
+                continue;
+            }
+            previous.set(i, existing);
+            int index = i;
+            futures.add(limitedWrite(limiter, () -> updateEntityLinks(organisationId, entity, target, targetIds)).handle((response, failure) -> {
+                results.set(index, failure == null ? WriteResult.success(entity) : WriteResult.failure(entity, unwrap(failure)));
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenCompose(__ -> {
+            //only the entities that were written are added to the target, removed from where they were linked before
+            var added = HashMultimap.<String, String>create();
+            var removed = new HashMap<String, HashMultimap<String, String>>();
+            for (int i = 0; i < list.size(); i++) {
+                if (previous.get(i) == null || !results.get(i).isSuccess()) {
+                    continue;
+                }
+                var entity = list.get(i);
+                var source = table(entity.getClass());
+                added.put(source, entity.getId());
+                for (var old : previous.get(i)) {
+                    if (!old.equals(targetId)) {
+                        removed.computeIfAbsent(old, id -> HashMultimap.create()).put(source, entity.getId());
+                    }
+                }
+                setLinks(entity, target, targetIds);
+            }
+
+            var updates = new ArrayList<CompletableFuture<?>>();
+            invalidate(organisationId, target, targetId);
+            for (var source : added.keySet()) {
+                for (var chunk : Iterables.partition(added.get(source), LINK_SET_SIZE)) {
+                    updates.add(limitedWrite(limiter, () -> updateLinkSet(organisationIdAttribute, target, targetId, source, AttributeValue.builder().ss(chunk).build(), true)));
+                }
+            }
+            removed.forEach((old, links) -> {
+                invalidate(organisationId, target, old);
+                for (var source : links.keySet()) {
+                    for (var chunk : Iterables.partition(links.get(source), LINK_SET_SIZE)) {
+                        updates.add(limitedWrite(limiter, () -> updateLinkSet(organisationIdAttribute, target, old, source, AttributeValue.builder().ss(chunk).build(), false)));
+                    }
+                }
+            });
+            return CompletableFuture.allOf(updates.toArray(CompletableFuture[]::new)).thenApply(done -> results);
+        });
+    }
+
     @Override
     public <T extends Table> CompletableFuture<T> unlink(
             final String organisationId,
@@ -777,8 +1386,17 @@ public class DynamoDb extends DatabaseDriver {
             final String targetId
     ) {
         final var updateEntityLinksRequest = createRemoveLinkRequest(organisationId, entity, clazz, targetId);
+        final long revision = removeLinkRevision(entity);
+        invalidate(organisationId, clazz, targetId);
 
         return client.updateItem(updateEntityLinksRequest)
+                .whenComplete((response, failure) -> {
+                    if (failure == null) {
+                        invalidate(organisationId, entity.getClass(), entity.getId(), revision);
+                    } else {
+                        evict(organisationId, entity.getClass(), entity.getId());
+                    }
+                })
                 .thenCompose(ignore -> get(List.of(createDatabaseKey(organisationId, clazz, targetId))))
                 .thenCompose(targetEntities -> {
                     if (targetEntities.isEmpty()) {
@@ -796,6 +1414,8 @@ public class DynamoDb extends DatabaseDriver {
                 })
                 .thenApply(ignore -> {
                     getLinks(entity).remove(table(clazz), targetId);
+                    //keep the entity in step with what was written so it can be handed straight back out
+                    entity.setRevision(revision);
 
                     return entity;
                 });
@@ -807,20 +1427,20 @@ public class DynamoDb extends DatabaseDriver {
             final Class<? extends Table> clazz,
             final String targetId
     ) {
-        final AttributeValue linkMap = AttributeValue.builder()
-                .m(getLinks(entity).asMap()
-                        .entrySet()
-                        .stream()
-                        .filter(entry -> !entry.getValue().contains(targetId) && !entry.getKey().equals(table(clazz)))
-                        .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            entry -> AttributeValue.builder().ss(entry.getValue()).build()
-                        ))).build();
-
-        // It would be nice to pull the revision logic out
-        final var revisionNumber = entity.getRevision() != 0 ?
-            String.valueOf(entity.getRevision() + Integer.parseInt(REVISION_INCREMENT.n())) :
-            "0";
+        final String targetTable = table(clazz);
+        final Map<String, AttributeValue> remaining = new HashMap<>();
+        getLinks(entity).asMap().forEach((table, ids) -> {
+            final var kept = ids.stream()
+                    .filter(id -> !(table.equals(targetTable) && id.equals(targetId)))
+                    .collect(Collectors.toList());
+            //string sets can not be empty
+            if (!kept.isEmpty()) {
+                remaining.put(table, AttributeValue.builder().ss(kept).build());
+            }
+        });
+        final AttributeValue linkMap = AttributeValue.builder().m(remaining).build();
+
+        final var revisionNumber = String.valueOf(removeLinkRevision(entity));
 
         final var revision = AttributeValueUpdate.builder()
                 .action(AttributeAction.PUT)
@@ -848,6 +1468,10 @@ public class DynamoDb extends DatabaseDriver {
             .build();
     }
 
+    private long removeLinkRevision(final Table entity) {
+        return entity.getRevision() != 0 ? entity.getRevision() + Long.parseLong(REVISION_INCREMENT.n()) : 0;
+    }
+
     public <T extends Table> CompletableFuture<T> deleteLinks(String organisationId, T entity) {
         var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
         var id = AttributeValue.builder().s(table(entity.getClass()) + ":" + entity.getId()).build();
@@ -880,9 +1504,11 @@ public class DynamoDb extends DatabaseDriver {
             }
         }).expressionAttributeValues(values)).thenApply(response -> {
             entity.setRevision(Long.parseLong(response.attributes().get("revision").n()));
+            invalidate(organisationId, entity.getClass(), entity.getId(), entity.getRevision());
             return entity;
         }).exceptionally(failure -> {
             if (failure.getCause() instanceof ConditionalCheckFailedException) {
+                evict(organisationId, entity.getClass(), entity.getId());
                 throw new RevisionMismatchException(failure.getCause());
             }
             Throwables.throwIfUnchecked(failure);
@@ -896,19 +1522,8 @@ public class DynamoDb extends DatabaseDriver {
             var val = AttributeValue.builder().ss(entity.getId()).build();
             String source = table(entity.getClass());
             for (var link : getLinks(entity).entries()) {
-                var targetIdAttribute = AttributeValue.builder().s(link.getKey() + ":" + link.getValue()).build();
-                Map<String, AttributeValue> targetKey = new HashMap<>();
-                targetKey.put("organisationId", organisationIdAttribute);
-                targetKey.put("id", targetIdAttribute);
-
-                Map<String, AttributeValue> v = new HashMap<>();
-                v.put(":val", val);
-                v.put(":revisionIncrement", REVISION_INCREMENT);
-
-                Map<String, String> k = new HashMap<>();
-                k.put("#table", source);
-
-                var destination = client.updateItem(request -> request.tableName(entityTable).key(targetKey).updateExpression("DELETE links.#table :val ADD revision :revisionIncrement").expressionAttributeNames(k).expressionAttributeValues(v));
+                invalidate(organisationId, link.getKey(), link.getValue());
+                var destination = updateLinkSet(organisationIdAttribute, link.getKey(), link.getValue(), source, val, false);
                 future = future.thenCombine(destination, (a, b) -> b);
             }
             getLinks(entity).clear();
@@ -921,57 +1536,86 @@ public class DynamoDb extends DatabaseDriver {
 
     @Override
     public CompletableFuture<Boolean> destroyOrganisation(final String organisationId) {
-        final var organisationCondition = Condition.builder()
-                .comparisonOperator(ComparisonOperator.EQ)
-                .attributeValueList(AttributeValue.builder().s(organisationId).build())
-                .build();
+        return destroyOrganisationCounts(organisationId).thenApply(counts -> counts.values().stream().anyMatch(count -> count > 0));
+    }
 
-        final var associatedOrganisationItems = QueryRequest.builder()
-                .tableName(entityTable)
-                .keyConditions(Map.of("organisationId", organisationCondition))
-                .build();
+    /**
+     * Streams every page of the organisation from each entity table and the history table's organisationIdUpdatedAt index, deleting keys in batches as the pages arrive.
+     * Tables are worked through in parallel, sharing one write concurrency limit and the write rate.
+     * Rows with history are overwritten with just their key before they are deleted, so the stream does not turn the delete into a tombstone.
+     */
+    @Override
+    public CompletableFuture<Map<String, Long>> destroyOrganisationCounts(final String organisationId) {
+        var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
+        var limiter = new ConcurrencyLimiter(writeConcurrency);
 
-        final var deletedOrganisationFuture = new CompletableFuture<Boolean>();
+        Map<String, CompletableFuture<Long>> tables = new LinkedHashMap<>();
+        for (var table : entityTables) {
+            Function<Map<String, AttributeValue>, CompletableFuture<KeyPage>> read = startKey -> client.query(builder -> builder.tableName(table)
+                .consistentRead(true)
+                .keyConditionExpression("organisationId = :organisationId")
+                .expressionAttributeValues(Map.of(":organisationId", organisationIdAttribute))
+                .expressionAttributeNames(Map.of("#history", "history"))
+                .projectionExpression("organisationId, id, #history")
+                .exclusiveStartKey(startKey)).thenApply(response -> new KeyPage(response.items(), response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null));
+            tables.put(table, destroyPages(table, read, read.apply(null), limiter));
+        }
+        if (historyTable != null) {
+            //history is partitioned by organisation and type, the updated at index is hashed on the organisation alone so finds every partition.
+            //global indexes can't be read consistently, history written moments before the destroy may be left behind
+            Function<Map<String, AttributeValue>, CompletableFuture<KeyPage>> read = startKey -> client.query(builder -> builder.tableName(historyTable)
+                .indexName(HISTORY_UPDATED_AT_INDEX)
+                .keyConditionExpression("organisationId = :organisationId")
+                .expressionAttributeValues(Map.of(":organisationId", organisationIdAttribute))
+                .projectionExpression("organisationIdType, idRevision")
+                .exclusiveStartKey(startKey)).thenApply(response -> new KeyPage(response.items(), response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null));
+            tables.put(historyTable, destroyPages(historyTable, read, read.apply(null), limiter));
+        }
 
-        client.query(associatedOrganisationItems)
-                .thenApply(response -> {
-                    if (!response.hasItems()) {
-                        deletedOrganisationFuture.complete(false);
-                        return Stream.<CompletableFuture<BatchWriteItemResponse>>empty();
-                    }
+        return CompletableFuture.allOf(tables.values().toArray(CompletableFuture[]::new)).thenApply(__ -> {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            tables.forEach((table, count) -> counts.put(table, count.join()));
+            return counts;
+        }).whenComplete((r, e) -> {
+            if (entityCache != null) {
+                entityCache.invalidateOrganisation(organisationId);
+            }
+        });
+    }
 
-                    return Lists.partition(response.items()
-                            .stream()
-                            .map(item -> {
-                                final var deleteRequest = DeleteRequest.builder().key(Map.of(
-                                        "organisationId", item.get("organisationId"),
-                                        "id", item.get("id")
-                                )).build();
-
-                                return WriteRequest.builder().deleteRequest(deleteRequest).build();
-                            })
-                            .collect(Collectors.toList()), BATCH_WRITE_SIZE)
-                            .stream()
-                            .map(deleteRequestBatch -> {
-                                final var batchDeleteItemRequest = BatchWriteItemRequest.builder()
-                                        .requestItems(Map.of(entityTable, deleteRequestBatch))
-                                        .build();
-
-                                return client.batchWriteItem(batchDeleteItemRequest);
-                            });
-                })
-                .thenAccept(futures -> futures
-                    .map(future -> future.thenApply(response -> response.unprocessedItems().size() > 0))
-                    .reduce((a, b) -> a.thenCombine(b, (aBoolean, bBoolean) -> aBoolean || bBoolean))
-                    .ifPresentOrElse(
-                        future -> future.thenAccept(failure -> {
-                                deletedOrganisationFuture.complete(!failure);
-                            }
-                        ),
-                        () -> deletedOrganisationFuture.complete(false)
-                    ));
+    private CompletableFuture<Long> destroyPages(String table, Function<Map<String, AttributeValue>, CompletableFuture<KeyPage>> read, CompletableFuture<KeyPage> page, ConcurrencyLimiter limiter) {
+        return page.thenCompose(current -> {
+            var blanks = current.items.stream()
+                .filter(item -> item.get("history") != null && Boolean.TRUE.equals(item.get("history").bool()))
+                .map(item -> WriteRequest.builder().putRequest(builder -> builder.item(withoutHistory(item))).build())
+                .collect(Collectors.toList());
+            var requests = current.items.stream()
+                .map(item -> WriteRequest.builder().deleteRequest(builder -> builder.key(withoutHistory(item))).build())
+                .collect(Collectors.toList());
+            var written = writeBatches(table, blanks, limiter).thenCompose(__ -> writeBatches(table, requests, limiter));
+            long count = requests.size();
+            if (current.lastEvaluatedKey == null || current.lastEvaluatedKey.isEmpty()) {
+                return written.thenApply(__ -> count);
+            }
+            //as with deleteAll the next page is read while this one is written
+            var next = read.apply(current.lastEvaluatedKey);
+            return written.thenCompose(__ -> destroyPages(table, read, next, limiter)).thenApply(rest -> rest + count);
+        });
+    }
 
-        return deletedOrganisationFuture;
+    private CompletableFuture<Void> writeBatches(String table, List<WriteRequest> requests, ConcurrencyLimiter limiter) {
+        return CompletableFuture.allOf(Lists.partition(requests, BATCH_WRITE_SIZE).stream()
+            .map(chunk -> limitedWrite(limiter, () -> batchWriter.write(Map.of(table, chunk))))
+            .toArray(CompletableFuture[]::new));
+    }
+
+    private static Map<String, AttributeValue> withoutHistory(Map<String, AttributeValue> item) {
+        if (!item.containsKey("history")) {
+            return item;
+        }
+        var key = new HashMap<>(item);
+        key.remove("history");
+        return key;
     }
 
     @Override
@@ -979,4 +1623,771 @@ public class DynamoDb extends DatabaseDriver {
         return idGenerator.get();
     }
 
-}
\ No newline at end of file
+    private void invalidate(String organisationId, Class<? extends Table> type, String id, long revision) {
+        if (entityCache != null) {
+            entityCache.invalidate(organisationId, table(type), id, revision);
+        }
+    }
+
+    private void invalidate(String organisationId, Class<? extends Table> type, String id) {
+        invalidate(organisationId, table(type), id);
+    }
+
+    private void invalidate(String organisationId, String table, String id) {
+        if (entityCache != null) {
+            entityCache.invalidate(organisationId, table, id);
+        }
+    }
+
+    private void invalidateType(String organisationId, Class<? extends Table> type) {
+        if (entityCache != null) {
+            entityCache.invalidateType(organisationId, table(type));
+        }
+    }
+
+    private void evict(String organisationId, Class<? extends Table> type, String id) {
+        if (entityCache != null) {
+            entityCache.evict(organisationId, table(type), id);
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        while (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+
+    private static final class PreparedPut<T extends Table> {
+        private final T entity;
+        private final Map<String, AttributeValue> item;
+        private final long revision;
+        private final String condition;
+        private final Map<String, AttributeValue> conditionValues;
+
+        private PreparedPut(T entity, Map<String, AttributeValue> item, long revision, String condition, Map<String, AttributeValue> conditionValues) {
+            this.entity = entity;
+            this.item = item;
+            this.revision = revision;
+            this.condition = condition;
+            this.conditionValues = conditionValues;
+        }
+    }
+
+    /**
+     * A bulk write of one kind, the rounds and chunks are the same for puts and deletes only the requests differ.
+     */
+    private abstract class BulkWrite<T extends Table> {
+        final String organisationId;
+        final List<T> entities;
+        final boolean check;
+        final List<WriteResult<T>> results;
+
+        BulkWrite(String organisationId, List<T> entities, boolean check) {
+            this.organisationId = organisationId;
+            this.entities = entities;
+            this.check = check;
+            this.results = new ArrayList<>(Collections.nCopies(entities.size(), null));
+        }
+
+        void prepare(List<Integer> round) {
+        }
+
+        abstract WriteRequest batchRequest(int i);
+
+        abstract TransactWriteItem transactRequest(int i);
+
+        abstract CompletableFuture<?> writeOne(int i);
+
+        /**
+         * Called once the entity is written, returns what is handed back to the caller
+         */
+        abstract T written(int i);
+
+        CompletableFuture<List<WriteResult<T>>> run(List<List<Integer>> rounds) {
+            var limiter = new ConcurrencyLimiter(writeConcurrency);
+            CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+            for (var round : rounds) {
+                future = future.thenCompose(__ -> {
+                    prepare(round);
+                    var chunks = Lists.partition(round, check ? TRANSACT_WRITE_SIZE : BATCH_WRITE_SIZE);
+                    return CompletableFuture.allOf(chunks.stream().map(chunk -> limitedWrite(limiter, () -> {
+                        if (check) {
+                            return transact(chunk, 0);
+                        }
+                        return batch(chunk);
+                    })).toArray(CompletableFuture[]::new));
+                });
+            }
+            return future.thenApply(__ -> results);
+        }
+
+        private CompletableFuture<Void> batch(List<Integer> chunk) {
+            var requests = chunk.stream().map(this::batchRequest).collect(Collectors.toList());
+            return batchWriter.write(Map.of(entityTable, requests)).handle((response, failure) -> {
+                for (int i : chunk) {
+                    if (failure == null) {
+                        results.set(i, WriteResult.success(written(i)));
+                    } else {
+                        results.set(i, WriteResult.failure(entities.get(i), unwrap(failure)));
+                    }
+                }
+                return null;
+            });
+        }
+
+        private CompletableFuture<Void> transact(List<Integer> chunk, int attempt) {
+            if (chunk.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            var items = chunk.stream().map(this::transactRequest).collect(Collectors.toList());
+
+            return fanOut.run(entityTable, FanOutScheduler.Operation.TRANSACT_WRITE_ITEMS, () -> client.transactWriteItems(builder -> builder.transactItems(items))).handle((response, failure) -> {
+                if (failure == null) {
+                    for (int i : chunk) {
+                        results.set(i, WriteResult.success(written(i)));
+                    }
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
+                var cause = unwrap(failure);
+                if (cause instanceof TransactionCanceledException) {
+                    var canceled = (TransactionCanceledException) cause;
+                    if (!canceled.hasCancellationReasons() || canceled.cancellationReasons().size() != chunk.size()) {
+                        //can not tell which one failed, fall back to writing them one at a time
+                        return each(chunk);
+                    }
+                    var reasons = canceled.cancellationReasons();
+                    var retry = new ArrayList<Integer>();
+                    boolean mismatch = false;
+                    for (int j = 0; j < chunk.size(); j++) {
+                        int i = chunk.get(j);
+                        if ("ConditionalCheckFailed".equals(reasons.get(j).code())) {
+                            mismatched(i, cause);
+                            mismatch = true;
+                        } else {
+                            retry.add(i);
+                        }
+                    }
+                    if (mismatch) {
+                        //the others were only cancelled along with the mismatch
+                        return transact(retry, attempt);
+                    }
+                    if (attempt + 1 < Backoff.MAX_ATTEMPTS) {
+                        //conflicts and throttling
+                        return Backoff.delay(attempt).thenCompose(__ -> transact(chunk, attempt + 1));
+                    }
+                }
+                for (int i : chunk) {
+                    results.set(i, WriteResult.failure(entities.get(i), cause));
+                }
+                return CompletableFuture.<Void>completedFuture(null);
+            }).thenCompose(f -> f);
+        }
+
+        private CompletableFuture<Void> each(List<Integer> chunk) {
+            return CompletableFuture.allOf(chunk.stream().map(i -> writeOne(i).handle((response, failure) -> {
+                if (failure == null) {
+                    results.set(i, WriteResult.success(written(i)));
+                } else if (unwrap(failure) instanceof ConditionalCheckFailedException) {
+                    mismatched(i, unwrap(failure));
+                } else {
+                    results.set(i, WriteResult.failure(entities.get(i), unwrap(failure)));
+                }
+                return null;
+            })).toArray(CompletableFuture[]::new));
+        }
+
+        private void mismatched(int i, Throwable cause) {
+            var entity = entities.get(i);
+            //what we have cached is no longer what is in the table
+            evict(organisationId, entity.getClass(), entity.getId());
+            results.set(i, WriteResult.failure(entity, new RevisionMismatchException(cause)));
+        }
+    }
+
+    private final class BulkPut<T extends Table> extends BulkWrite<T> {
+        private final List<PreparedPut<T>> prepared;
+
+        private BulkPut(String organisationId, List<T> entities, boolean check) {
+            super(organisationId, entities, check);
+            this.prepared = new ArrayList<>(Collections.nCopies(entities.size(), null));
+        }
+
+        @Override
+        void prepare(List<Integer> round) {
+            //prepared as the round starts so a repeated entity picks up the revision of its earlier write
+            for (int i : round) {
+                prepared.set(i, preparePut(organisationId, entities.get(i), check));
+            }
+        }
+
+        @Override
+        WriteRequest batchRequest(int i) {
+            return WriteRequest.builder().putRequest(builder -> builder.item(prepared.get(i).item)).build();
+        }
+
+        @Override
+        TransactWriteItem transactRequest(int i) {
+            var put = prepared.get(i);
+            return TransactWriteItem.builder().put(builder -> builder.tableName(entityTable).item(put.item).applyMutation(mutator -> {
+                if (put.condition != null) {
+                    mutator.conditionExpression(put.condition);
+                    if (put.conditionValues != null) {
+                        mutator.expressionAttributeValues(put.conditionValues);
+                    }
+                }
+            })).build();
+        }
+
+        @Override
+        CompletableFuture<?> writeOne(int i) {
+            var put = prepared.get(i);
+            return fanOut.run(entityTable, FanOutScheduler.Operation.PUT_ITEM, () -> client.putItem(request -> request.tableName(entityTable).item(put.item).applyMutation(mutator -> {
+                if (put.condition != null) {
+                    mutator.conditionExpression(put.condition);
+                    if (put.conditionValues != null) {
+                        mutator.expressionAttributeValues(put.conditionValues);
+                    }
+                }
+            })));
+        }
+
+        @Override
+        T written(int i) {
+            return DynamoDb.this.written(organisationId, prepared.get(i));
+        }
+    }
+
+    private final class BulkDelete<T extends Table> extends BulkWrite<T> {
+
+        private BulkDelete(String organisationId, List<T> entities, boolean check) {
+            super(organisationId, entities, check);
+        }
+
+        private Map<String, AttributeValue> key(int i) {
+            var entity = entities.get(i);
+            return Map.of(
+                "organisationId", AttributeValue.builder().s(organisationId).build(),
+                "id", AttributeValue.builder().s(table(entity.getClass()) + ":" + entity.getId()).build());
+        }
+
+        //rows from a lower table can not be removed, they are covered by a deleted marker
+        private boolean marker(int i) {
+            return !entityTable.equals(getSourceTable(entities.get(i)));
+        }
+
+        private Map<String, AttributeValue> markerItem(int i) {
+            var key = key(i);
+            return deletedMarker(key.get("organisationId"), key.get("id"));
+        }
+
+        private String condition(int i) {
+            if (!check) {
+                return null;
+            }
+            //we confirm row does not exist with a revision since entry might predate feature
+            return entities.get(i).getRevision() == 0 ? "attribute_not_exists(revision)" : "revision = :revision";
+        }
+
+        private Map<String, AttributeValue> conditionValues(int i) {
+            var revision = entities.get(i).getRevision();
+            return Map.of(":revision", AttributeValue.builder().n(Long.toString(revision)).build());
+        }
+
+        @Override
+        WriteRequest batchRequest(int i) {
+            if (marker(i)) {
+                return WriteRequest.builder().putRequest(builder -> builder.item(markerItem(i))).build();
+            }
+            return WriteRequest.builder().deleteRequest(builder -> builder.key(key(i))).build();
+        }
+
+        @Override
+        TransactWriteItem transactRequest(int i) {
+            if (marker(i)) {
+                return TransactWriteItem.builder().put(builder -> builder.tableName(entityTable).item(markerItem(i))).build();
+            }
+            return TransactWriteItem.builder().delete(builder -> builder.tableName(entityTable).key(key(i)).applyMutation(mutator -> {
+                var condition = condition(i);
+                if (condition != null) {
+                    mutator.conditionExpression(condition);
+                    if (entities.get(i).getRevision() != 0) {
+                        mutator.expressionAttributeValues(conditionValues(i));
+                    }
+                }
+            })).build();
+        }
+
+        @Override
+        CompletableFuture<?> writeOne(int i) {
+            if (marker(i)) {
+                return fanOut.run(entityTable, FanOutScheduler.Operation.PUT_ITEM, () -> client.putItem(request -> request.tableName(entityTable).item(markerItem(i))));
+            }
+            return fanOut.run(entityTable, FanOutScheduler.Operation.DELETE_ITEM, () -> client.deleteItem(request -> request.tableName(entityTable).key(key(i)).applyMutation(mutator -> {
+                var condition = condition(i);
+                if (condition != null) {
+                    mutator.conditionExpression(condition);
+                    if (entities.get(i).getRevision() != 0) {
+                        mutator.expressionAttributeValues(conditionValues(i));
+                    }
+                }
+            })));
+        }
+
+        @Override
+        T written(int i) {
+            return entities.get(i);
+        }
+    }
+
+    private enum WriteKind {
+        PUT, DELETE, LINKS
+    }
+
+    private final class PendingTransaction {
+        private final String organisationId;
+        private final AttributeValue organisationIdAttribute;
+        private final Map<String, EntityWrite> writes = new LinkedHashMap<>();
+        private final Map<String, TargetWrite> targets = new LinkedHashMap<>();
+
+        private PendingTransaction(String organisationId) {
+            this.organisationId = organisationId;
+            this.organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
+        }
+
+        private void add(Transaction.Operation operation) {
+            var write = entityWrite(operation.getEntity());
+            if (operation instanceof Transaction.Put) {
+                write.entity = operation.getEntity();
+                write.kind = WriteKind.PUT;
+                write.check = ((Transaction.Put) operation).isCheck();
+            } else if (operation instanceof Transaction.Delete) {
+                if (!write.links.isEmpty()) {
+                    throw new RuntimeException("deleting would leave dangling links");
+                }
+                write.kind = WriteKind.DELETE;
+            } else if (operation instanceof Transaction.Link) {
+                var link = (Transaction.Link) operation;
+                links(write, table(link.getType()), link.getTargetIds());
+            } else if (operation instanceof Transaction.Unlink) {
+                var unlink = (Transaction.Unlink) operation;
+                var targetTable = table(unlink.getType());
+                var remaining = new HashSet<>(write.links.get(targetTable));
+                remaining.remove(unlink.getTargetId());
+                links(write, targetTable, remaining);
+            }
+        }
+
+        private EntityWrite entityWrite(Table entity) {
+            var key = table(entity.getClass()) + ":" + entity.getId();
+            var write = writes.get(key);
+            if (write == null) {
+                write = new EntityWrite(entity, HashMultimap.create(getLinks(entity)));
+                //link changes made to it before it joined the transaction
+                var pending = targets.remove(key);
+                if (pending != null) {
+                    write.links.putAll(pending.adds);
+                    for (var entry : pending.removes.entries()) {
+                        write.links.remove(entry.getKey(), entry.getValue());
+                    }
+                    write.touched.addAll(pending.adds.keySet());
+                    write.touched.addAll(pending.removes.keySet());
+                }
+                writes.put(key, write);
+            }
+            return write;
+        }
+
+        private void links(EntityWrite write, String targetTable, Collection<String> targetIds) {
+            if (write.kind == WriteKind.DELETE) {
+                throw new RuntimeException("can not link an entity deleted earlier in the transaction");
+            }
+            if (write.kind == null) {
+                write.kind = WriteKind.LINKS;
+            }
+            var source = table(write.entity.getClass());
+            var existing = new HashSet<>(write.links.get(targetTable));
+            for (var id : targetIds) {
+                if (!existing.contains(id)) {
+                    reverse(targetTable, id, source, write.entity.getId(), true);
+                }
+            }
+            for (var id : existing) {
+                if (!targetIds.contains(id)) {
+                    reverse(targetTable, id, source, write.entity.getId(), false);
+                }
+            }
+            write.links.replaceValues(targetTable, targetIds);
+            write.touched.add(targetTable);
+        }
+
+        private void reverse(String targetTable, String targetId, String sourceTable, String sourceId, boolean add) {
+            var key = targetTable + ":" + targetId;
+            var write = writes.get(key);
+            if (write != null) {
+                if (write.kind != WriteKind.DELETE) {
+                    if (add) {
+                        write.links.put(sourceTable, sourceId);
+                    } else {
+                        write.links.remove(sourceTable, sourceId);
+                    }
+                    write.touched.add(sourceTable);
+                } else if (add) {
+                    throw new RuntimeException("can not link to an entity deleted earlier in the transaction");
+                }
+                return;
+            }
+            var target = targets.computeIfAbsent(key, __ -> new TargetWrite(targetTable, targetId));
+            if (add) {
+                target.removes.remove(sourceTable, sourceId);
+                target.adds.put(sourceTable, sourceId);
+            } else {
+                target.adds.remove(sourceTable, sourceId);
+                target.removes.put(sourceTable, sourceId);
+            }
+        }
+
+        private CompletableFuture<Void> flush() {
+            List<TransactionItem> first = new ArrayList<>();
+            List<TransactionItem> second = new ArrayList<>();
+            for (var write : writes.values()) {
+                var item = prepare(write);
+                if (item != null) {
+                    first.add(item);
+                }
+            }
+            for (var target : targets.values()) {
+                //a set can not be added to and deleted from in the same update, the deletes follow in a second request
+                var overlap = new HashSet<>(target.adds.keySet());
+                overlap.retainAll(target.removes.keySet());
+                var removes = HashMultimap.create(target.removes);
+                var later = HashMultimap.<String, String>create();
+                for (var table : overlap) {
+                    later.putAll(table, removes.removeAll(table));
+                }
+                if (!target.adds.isEmpty() || !removes.isEmpty()) {
+                    first.add(prepare(target, target.adds, removes));
+                }
+                if (!later.isEmpty()) {
+                    second.add(prepare(target, HashMultimap.create(), later));
+                }
+            }
+
+            CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+            for (var items : List.of(first, second)) {
+                for (var chunk : Lists.partition(items, TRANSACT_WRITE_SIZE)) {
+                    future = future.thenCompose(__ -> send(chunk, 0, false));
+                }
+            }
+            return future;
+        }
+
+        private TransactionItem prepare(EntityWrite write) {
+            var entity = write.entity;
+            var key = Map.of("organisationId", organisationIdAttribute, "id", AttributeValue.builder().s(table(entity.getClass()) + ":" + entity.getId()).build());
+            switch (write.kind) {
+                case PUT: {
+                    var put = preparePut(organisationId, entity, write.check);
+                    put.item.put("links", linksAttribute(write.links));
+                    var item = TransactWriteItem.builder().put(builder -> builder.tableName(entityTable).item(put.item).applyMutation(mutator -> {
+                        if (put.condition != null) {
+                            mutator.conditionExpression(put.condition);
+                            if (put.conditionValues != null) {
+                                mutator.expressionAttributeValues(put.conditionValues);
+                            }
+                        }
+                    })).build();
+                    return new TransactionItem(item, key, entity, false, () -> {
+                        written(organisationId, put);
+                        setSource(entity, entityTable, HashMultimap.create(write.links), organisationId);
+                    });
+                }
+                case DELETE: {
+                    if (!getSourceOrganisationId(entity).equals(organisationId)) {
+                        //trying to delete a global or something, nothing to do
+                        return null;
+                    }
+                    invalidate(organisationId, entity.getClass(), entity.getId());
+                    if (!entityTable.equals(getSourceTable(entity))) {
+                        //we mark as deleted not actual delete
+                        var item = TransactWriteItem.builder().put(builder -> builder.tableName(entityTable).item(deletedMarker(organisationIdAttribute, key.get("id")))).build();
+                        return new TransactionItem(item, key, entity, false, () -> {});
+                    }
+                    var item = TransactWriteItem.builder().delete(builder -> builder.tableName(entityTable).key(key).applyMutation(mutator -> {
+                        if (entity.getRevision() == 0) { //we confirm row does not exist with a revision since entry might predate feature
+                            mutator.conditionExpression("attribute_not_exists(revision)");
+                        } else {
+                            mutator.conditionExpression("revision = :revision");
+                            mutator.expressionAttributeValues(Map.of(":revision", AttributeValue.builder().n(Long.toString(entity.getRevision())).build()));
+                        }
+                    })).build();
+                    return new TransactionItem(item, key, entity, false, () -> {});
+                }
+                default: {
+                    //revision checks don't really work when reading from one env and writing to another, or read from global write to organisation.
+                    boolean sameSource = entityTable.equals(getSourceTable(entity)) && organisationId.equals(getSourceOrganisationId(entity));
+                    boolean check = sameSource && entity.getRevision() != 0;
+                    Map<String, String> names = new HashMap<>();
+                    Map<String, AttributeValue> values = new HashMap<>();
+                    values.put(":revisionIncrement", REVISION_INCREMENT);
+                    String expression;
+                    if (check) {
+                        values.put(":links", linksAttribute(write.links));
+                        values.put(":revision", AttributeValue.builder().n(Long.toString(entity.getRevision())).build());
+                        expression = "SET links = :links ADD revision :revisionIncrement";
+                    } else {
+                        //without a check only the link sets this transaction changed are replaced, so reverse links added by other writers are kept
+                        var set = new ArrayList<String>();
+                        var remove = new ArrayList<String>();
+                        int i = 0;
+                        for (var table : write.touched) {
+                            names.put("#t" + i, table);
+                            var ids = write.links.get(table);
+                            if (ids.isEmpty()) {
+                                remove.add("links.#t" + i);
+                            } else {
+                                values.put(":t" + i, AttributeValue.builder().ss(ids).build());
+                                set.add("links.#t" + i + " = :t" + i);
+                            }
+                            i++;
+                        }
+                        expression = (set.isEmpty() ? "" : "SET " + String.join(", ", set) + " ") + (remove.isEmpty() ? "" : "REMOVE " + String.join(", ", remove) + " ") + "ADD revision :revisionIncrement";
+                    }
+                    var item = TransactWriteItem.builder().update(builder -> builder.tableName(entityTable).key(key)
+                        .conditionExpression(check ? "revision = :revision" : "attribute_exists(links)")
+                        .updateExpression(expression)
+                        .expressionAttributeValues(values)
+                        .applyMutation(mutator -> {
+                            if (!names.isEmpty()) {
+                                mutator.expressionAttributeNames(names);
+                            }
+                        })).build();
+                    return new TransactionItem(item, key, entity, !check, () -> {
+                        //a row copied up from another table or organisation starts again at one
+                        long revision = sameSource ? entity.getRevision() + 1 : 1;
+                        entity.setRevision(revision);
+                        getLinks(entity).clear();
+                        getLinks(entity).putAll(write.links);
+                        invalidate(organisationId, entity.getClass(), entity.getId(), revision);
+                    });
+                }
+            }
+        }
+
+        private TransactionItem prepare(TargetWrite target, HashMultimap<String, String> adds, HashMultimap<String, String> removes) {
+            var key = Map.of("organisationId", organisationIdAttribute, "id", AttributeValue.builder().s(target.table + ":" + target.id).build());
+            Map<String, String> names = new HashMap<>();
+            Map<String, AttributeValue> values = new HashMap<>();
+            values.put(":revisionIncrement", REVISION_INCREMENT);
+            var add = new ArrayList<String>();
+            var delete = new ArrayList<String>();
+            int i = 0;
+            for (var table : adds.keySet()) {
+                names.put("#t" + i, table);
+                values.put(":t" + i, AttributeValue.builder().ss(adds.get(table)).build());
+                add.add("links.#t" + i + " :t" + i);
+                i++;
+            }
+            for (var table : removes.keySet()) {
+                names.put("#t" + i, table);
+                values.put(":t" + i, AttributeValue.builder().ss(removes.get(table)).build());
+                delete.add("links.#t" + i + " :t" + i);
+                i++;
+            }
+            add.add("revision :revisionIncrement");
+            var expression = "ADD " + String.join(", ", add) + (delete.isEmpty() ? "" : " DELETE " + String.join(", ", delete));
+
+            //the links map has to be there to add to, a target without one is given an empty map and the request sent again
+            var item = TransactWriteItem.builder().update(builder -> builder.tableName(entityTable).key(key)
+                .conditionExpression("attribute_exists(links)")
+                .updateExpression(expression)
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values)).build();
+            return new TransactionItem(item, key, null, true, () -> invalidate(organisationId, target.table, target.id));
+        }
+
+        private CompletableFuture<Void> send(List<TransactionItem> chunk, int attempt, boolean ensured) {
+            var items = chunk.stream().map(item -> item.item).collect(Collectors.toList());
+            return fanOut.run(entityTable, FanOutScheduler.Operation.TRANSACT_WRITE_ITEMS, () -> client.transactWriteItems(builder -> builder.transactItems(items))).handle((response, failure) -> {
+                if (failure == null) {
+                    chunk.forEach(item -> item.written.run());
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
+                var cause = unwrap(failure);
+                if (!(cause instanceof TransactionCanceledException)) {
+                    return CompletableFuture.<Void>failedFuture(cause);
+                }
+                var canceled = (TransactionCanceledException) cause;
+                var targetItems = chunk.stream().filter(item -> item.needsLinks).collect(Collectors.toList());
+                var missingLinks = new ArrayList<TransactionItem>();
+                boolean mismatch = false;
+                boolean conditionFailed = false;
+                if (canceled.hasCancellationReasons() && canceled.cancellationReasons().size() == chunk.size()) {
+                    var reasons = canceled.cancellationReasons();
+                    for (int j = 0; j < chunk.size(); j++) {
+                        if ("ConditionalCheckFailed".equals(reasons.get(j).code())) {
+                            conditionFailed = true;
+                            if (chunk.get(j).needsLinks) {
+                                missingLinks.add(chunk.get(j));
+                            } else {
+                                mismatch = true;
+                            }
+                        }
+                    }
+                } else if (!ensured && !targetItems.isEmpty()) {
+                    //can not tell what failed, make sure the targets can be added to before blaming a revision
+                    missingLinks.addAll(targetItems);
+                    conditionFailed = true;
+                } else {
+                    mismatch = true;
+                    conditionFailed = true;
+                }
+
+                if (mismatch || (ensured && !missingLinks.isEmpty())) {
+                    for (var item : chunk) {
+                        if (item.entity != null) {
+                            //what we have cached is no longer what is in the table
+                            evict(organisationId, item.entity.getClass(), item.entity.getId());
+                        }
+                    }
+                    return CompletableFuture.<Void>failedFuture(new RevisionMismatchException(cause));
+                }
+                if (!missingLinks.isEmpty()) {
+                    return ensureLinks(missingLinks).thenCompose(__ -> send(chunk, attempt, true));
+                }
+                if (!conditionFailed && attempt + 1 < Backoff.MAX_ATTEMPTS) {
+                    //conflicts and throttling
+                    return Backoff.delay(attempt).thenCompose(__ -> send(chunk, attempt + 1, ensured));
+                }
+                return CompletableFuture.<Void>failedFuture(cause);
+            }).thenCompose(f -> f);
+        }
+
+        private CompletableFuture<Void> ensureLinks(List<TransactionItem> items) {
+            var empty = AttributeValue.builder().m(Map.of()).build();
+            return CompletableFuture.allOf(items.stream().map(item -> fanOut.run(entityTable, FanOutScheduler.Operation.UPDATE_ITEM, () -> client.updateItem(request -> request.tableName(entityTable)
+                .key(item.key)
+                .updateExpression("SET links = if_not_exists(links, :links)")
+                .expressionAttributeValues(Map.of(":links", empty))))).toArray(CompletableFuture[]::new));
+        }
+    }
+
+    private static Map<String, AttributeValue> toLinksMap(HashMultimap<String, String> links) {
+        Map<String, AttributeValue> toReturn = new HashMap<>();
+        links.asMap().forEach((table, ids) -> {
+            //string sets can not be empty
+            if (!ids.isEmpty()) {
+                toReturn.put(table, AttributeValue.builder().ss(ids).build());
+            }
+        });
+        return toReturn;
+    }
+
+    private static AttributeValue linksAttribute(HashMultimap<String, String> links) {
+        return AttributeValue.builder().m(toLinksMap(links)).build();
+    }
+
+    /**
+     * Collects a batch for one restore shard, only touched by the thread reading the backup
+     */
+    private final class RestoreWriter {
+        private final ConcurrencyLimiter limiter;
+        private final AtomicLong written;
+        private final ProgressListener listener;
+        private Map<String, WriteRequest> batch = new LinkedHashMap<>();
+        private CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+
+        private RestoreWriter(ConcurrencyLimiter limiter, AtomicLong written, ProgressListener listener) {
+            this.limiter = limiter;
+            this.written = written;
+            this.listener = listener;
+        }
+
+        /**
+         * A key already in the batch is replaced, a batch can not hold the same key twice. Tombstones are deletes so share the batch with puts
+         * @return null when reading can carry on, otherwise what to wait on before reading the next item
+         */
+        CompletableFuture<Void> add(String key, WriteRequest request) {
+            batch.put(key, request);
+            if (batch.size() < BATCH_WRITE_SIZE) {
+                return null;
+            }
+            if (inFlight.isDone() && !inFlight.isCompletedExceptionally()) {
+                send();
+                return null;
+            }
+            return inFlight.thenRun(this::send);
+        }
+
+        CompletableFuture<Void> finish() {
+            if (batch.isEmpty()) {
+                return inFlight;
+            }
+            return inFlight.thenCompose(__ -> {
+                send();
+                return inFlight;
+            });
+        }
+
+        private void send() {
+            var requests = new ArrayList<>(batch.values());
+            batch = new LinkedHashMap<>();
+            inFlight = limitedWrite(limiter, () -> batchWriter.write(Map.of(entityTable, requests)))
+                .thenRun(() -> listener.progress(written.addAndGet(requests.size()), -1));
+        }
+    }
+
+    private static final class EntityWrite {
+        private Table entity;
+        private final HashMultimap<String, String> links;
+        //link types changed in the transaction
+        private final Set<String> touched = new HashSet<>();
+        private WriteKind kind;
+        private boolean check;
+
+        private EntityWrite(Table entity, HashMultimap<String, String> links) {
+            this.entity = entity;
+            this.links = links;
+        }
+    }
+
+    private static final class TargetWrite {
+        private final String table;
+        private final String id;
+        private final HashMultimap<String, String> adds = HashMultimap.create();
+        private final HashMultimap<String, String> removes = HashMultimap.create();
+
+        private TargetWrite(String table, String id) {
+            this.table = table;
+            this.id = id;
+        }
+    }
+
+    private static final class KeyPage {
+        private final List<Map<String, AttributeValue>> items;
+        private final Map<String, AttributeValue> lastEvaluatedKey;
+
+        private KeyPage(List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastEvaluatedKey) {
+            this.items = items;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+        }
+    }
+
+    private static final class TransactionItem {
+        private final TransactWriteItem item;
+        private final Map<String, AttributeValue> key;
+        //null for the other side of a link
+        private final Table entity;
+        //the condition is only that the links map exists, failing it means the map has to be created
+        private final boolean needsLinks;
+        private final Runnable written;
+
+        private TransactionItem(TransactWriteItem item, Map<String, AttributeValue> key, Table entity, boolean needsLinks, Runnable written) {
+            this.item = item;
+            this.key = key;
+            this.entity = entity;
+            this.needsLinks = needsLinks;
+            this.written = written;
+        }
+    }
+}
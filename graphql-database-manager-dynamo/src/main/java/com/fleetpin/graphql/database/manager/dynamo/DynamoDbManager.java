@@ -12,11 +12,13 @@
 
 package com.fleetpin.graphql.database.manager.dynamo;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
@@ -39,8 +41,8 @@ public final class DynamoDbManager extends DatabaseManager {
 	private final Supplier<String> idGenerator;
 	private final DynamoDbAsyncClient client;
 	
-	private DynamoDbManager(ObjectMapper mapper, Supplier<String> idGenerator, DynamoDbAsyncClient client, DatabaseDriver dynamoDb) {
-		super(dynamoDb);
+	private DynamoDbManager(ObjectMapper mapper, Supplier<String> idGenerator, DynamoDbAsyncClient client, DatabaseDriver dynamoDb, Duration batchWindow) {
+		super(dynamoDb, batchWindow);
 		this.mapper = mapper;
 		this.idGenerator = idGenerator;
 		this.client = client;
@@ -58,6 +60,14 @@ public final class DynamoDbManager extends DatabaseManager {
 		private Supplier<String> idGenerator;
 		private DatabaseDriver database;
 		private String historyTable;
+		private EntityCache entityCache;
+		private Duration batchWindow = Duration.ofMillis(1);
+		private int queryConcurrency = DynamoDb.DEFAULT_QUERY_CONCURRENCY;
+		private int writeConcurrency = DynamoDb.DEFAULT_WRITE_CONCURRENCY;
+		private double writeRate;
+		private FanOutScheduler fanOutScheduler;
+		private AdaptiveDynamoDbAsyncClient.Builder throttling;
+		private Executor backupExecutor;
 		
 		
 		public DyanmoDbManagerBuilder dynamoDbAsyncClient(DynamoDbAsyncClient client) {
@@ -66,6 +76,9 @@ public final class DynamoDbManager extends DatabaseManager {
 		}
 
 
+		/**
+		 * Entities are always converted with a mapper given here, generated codecs only convert fields themselves for the default mapper
+		 */
 		public DyanmoDbManagerBuilder objectMapper(ObjectMapper mapper) {
 			this.mapper = mapper;
 			return this;
@@ -87,6 +100,71 @@ public final class DynamoDbManager extends DatabaseManager {
 			return this;
 		}
 
+		/**
+		 * Shares entities between every database created by the manager, off by default
+		 */
+		public DyanmoDbManagerBuilder entityCache(EntityCache entityCache) {
+			this.entityCache = entityCache;
+			return this;
+		}
+
+		/**
+		 * How long a database waits for more keys once one is queued before dispatching, defaults to 1ms. Zero dispatches as soon as possible
+		 */
+		public DyanmoDbManagerBuilder batchWindow(Duration batchWindow) {
+			this.batchWindow = batchWindow;
+			return this;
+		}
+
+		/**
+		 * Most dynamo queries a single batch of database queries will have in flight at once, defaults to 16
+		 */
+		public DyanmoDbManagerBuilder queryConcurrency(int queryConcurrency) {
+			this.queryConcurrency = queryConcurrency;
+			return this;
+		}
+
+		/**
+		 * Most write requests a single bulk put or delete will have in flight at once, defaults to 4
+		 */
+		public DyanmoDbManagerBuilder writeConcurrency(int writeConcurrency) {
+			this.writeConcurrency = writeConcurrency;
+			return this;
+		}
+
+		/**
+		 * Most bulk put and delete requests a second across the manager, unlimited by default
+		 */
+		public DyanmoDbManagerBuilder writeRate(double writeRate) {
+			this.writeRate = writeRate;
+			return this;
+		}
+
+		/**
+		 * Bounds in flight fan-out writes per table and operation, share one between managers to bound them together. Each manager gets its own with default limits when not set
+		 */
+		public DyanmoDbManagerBuilder fanOutScheduler(FanOutScheduler fanOutScheduler) {
+			this.fanOutScheduler = fanOutScheduler;
+			return this;
+		}
+
+		/**
+		 * Sends the database's requests through an {@link AdaptiveDynamoDbAsyncClient} built from these settings, off by default.
+		 * {@link DynamoDbManager#getDynamoDbAsyncClient()} still returns the client as given
+		 */
+		public DyanmoDbManagerBuilder adaptiveThrottling(AdaptiveDynamoDbAsyncClient.Builder throttling) {
+			this.throttling = throttling;
+			return this;
+		}
+
+		/**
+		 * Where backups and restores read and write their streams, so blocking io never runs on the client's threads. Defaults to a shared pool of daemon threads
+		 */
+		public DyanmoDbManagerBuilder backupExecutor(Executor backupExecutor) {
+			this.backupExecutor = backupExecutor;
+			return this;
+		}
+
 		public DyanmoDbManagerBuilder idGenerator(Supplier<String> idGenerator) {
 			this.idGenerator = idGenerator;
 			return this;
@@ -100,6 +178,10 @@ public final class DynamoDbManager extends DatabaseManager {
 		public DynamoDbManager build() {
 			Preconditions.checkNotNull(tables, "Tables must be set");
 			Preconditions.checkArgument(!tables.isEmpty(), "Empty table array");
+			Preconditions.checkArgument(batchWindow != null && !batchWindow.isNegative(), "Batch window can not be negative");
+			Preconditions.checkArgument(queryConcurrency > 0, "Query concurrency must be positive");
+			Preconditions.checkArgument(writeConcurrency > 0, "Write concurrency must be positive");
+			Preconditions.checkArgument(writeRate >= 0, "Write rate can not be negative");
 
 			
 			if(mapper == null) {
@@ -108,6 +190,8 @@ public final class DynamoDbManager extends DatabaseManager {
 						   .registerModule(new JavaTimeModule())
 						   .disable(DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).disable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS).disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS)
 						   .setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
+				//generated codecs know how this mapper writes entities so may skip it
+				EntityAttributes.convertFields(mapper);
 			}
 			if(client == null) {
 				client = DynamoDbAsyncClient.create();
@@ -116,9 +200,11 @@ public final class DynamoDbManager extends DatabaseManager {
 				idGenerator = () -> UUID.randomUUID().toString();
 			}
 
-			database = Objects.requireNonNullElse(database, new DynamoDb(mapper, tables, historyTable, client, idGenerator));
+			DynamoDbAsyncClient databaseClient = throttling == null ? client : throttling.build(client);
+
+			database = Objects.requireNonNullElse(database, new DynamoDb(mapper, tables, historyTable, databaseClient, idGenerator, entityCache, queryConcurrency, writeConcurrency, writeRate, fanOutScheduler, backupExecutor));
 
-			return new DynamoDbManager(mapper, idGenerator, client, database);
+			return new DynamoDbManager(mapper, idGenerator, client, database, batchWindow);
 		}
 		
 	}
@@ -61,14 +61,20 @@ public class DynamoItem implements Comparable<DynamoItem>{
 		if(isDeleted()) {
 			return null;
 		}
-		var table = TableUtil.convertTo(mapper, item.get("item"), type);
+		T table;
+		var entity = item.get("item");
+		if(entity != null && Table.class.isAssignableFrom(type)) {
+			table = type.cast(EntityCodec.of(type.asSubclass(Table.class)).fromAttributes(mapper, entity.m()));
+		} else {
+			table = TableUtil.convertTo(mapper, entity, type);
+		}
 		if(table instanceof Table) {
 			Table t = (Table) table;
 			var revision = item.get("revision");
 			if(revision != null) {
 				t.setRevision(Long.parseLong(revision.n()));
 			}
-			TableAccess.setTableSource(t, this.table, links, item.get("organisationId").s());
+			TableAccess.setTableSource(t, this.table, HashMultimap.create(links), item.get("organisationId").s());
 		}
 		return table;
 	}
@@ -89,6 +95,14 @@ public class DynamoItem implements Comparable<DynamoItem>{
 		return id;
 	}
 
+	long getRevision() {
+		var revision = item.get("revision");
+		if(revision == null) {
+			return 0;
+		}
+		return Long.parseLong(revision.n());
+	}
+
 	@Override
 	public int compareTo(DynamoItem o) {
 		return getId().compareTo(o.getId());
@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fleetpin.graphql.database.manager.DatabaseQueryKey;
+import com.fleetpin.graphql.database.manager.QueryPage;
+import com.fleetpin.graphql.database.manager.Table;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import static com.fleetpin.graphql.database.manager.util.TableCoreUtil.table;
+
+/**
+ * Reads one page of a query. The cursor records where each table and partition got to so the next page carries on from exactly there.
+ */
+final class DynamoQueryPager<T extends Table> {
+
+	private static final ObjectMapper CURSOR_MAPPER = new ObjectMapper();
+
+	private final DynamoDbAsyncClient client;
+	private final ObjectMapper mapper;
+	private final DatabaseQueryKey<T> key;
+	private final Integer limit;
+	private final AttributeValue prefix;
+	private final List<QueryPartition> partitions = new ArrayList<>();
+	private final List<T> items = new ArrayList<>();
+	private String cursor;
+
+	DynamoQueryPager(DynamoDbAsyncClient client, ObjectMapper mapper, List<String> entityTables, AttributeValue global, DatabaseQueryKey<T> key) {
+		this.client = client;
+		this.mapper = mapper;
+		this.key = key;
+		var query = key.getQuery();
+		this.limit = query.getLimit();
+		if (limit != null && limit < 1) {
+			throw new RuntimeException("page size must be at least one");
+		}
+		String startsWith = Optional.ofNullable(query.getStartsWith()).orElse("");
+		this.prefix = AttributeValue.builder().s(table(query.getType()) + ":" + startsWith).build();
+
+		var organisationId = AttributeValue.builder().s(key.getOrganisationId()).build();
+		var after = query.getAfter() == null ? null : table(query.getType()) + ":" + query.getAfter();
+		var positions = decode(query.getCursor(), entityTables.size() * 2);
+		int i = 0;
+		//same order as a query so later tables and the organisation override
+		for (var table : entityTables) {
+			for (var partition : List.of(global, organisationId)) {
+				if (positions == null) {
+					partitions.add(new QueryPartition(table, partition, after, false));
+				} else {
+					var position = positions.get(i);
+					partitions.add(new QueryPartition(table, partition, position.getPosition(), position.isDone()));
+				}
+				i++;
+			}
+		}
+	}
+
+	CompletableFuture<QueryPage<T>> read() {
+		while (true) {
+			var needsRead = partitions.stream().filter(QueryPartition::needsRead).collect(Collectors.toList());
+			if (!needsRead.isEmpty()) {
+				//only read what could end up on this page, plus one to tell if there is more
+				Integer readLimit = limit == null ? null : Math.max(0, limit - items.size()) + 1;
+				var reads = needsRead.stream()
+					.map(partition -> partition.read(client, prefix, readLimit).thenAccept(partition::accept))
+					.toArray(CompletableFuture[]::new);
+				return CompletableFuture.allOf(reads).thenCompose(__ -> read());
+			}
+
+			var next = QueryPartition.nextId(partitions);
+			if (next == null) {
+				return CompletableFuture.completedFuture(new QueryPage<>(items, false, null));
+			}
+			if (limit != null && items.size() >= limit) {
+				//taken before the next entity is read so the next page starts with it
+				cursor = encode();
+			}
+
+			var flattener = new Flattener(false);
+			flattener.addItems(QueryPartition.poll(partitions, next));
+			var results = flattener.results(mapper, key.getQuery().getType());
+			if (!results.isEmpty()) {
+				if (cursor != null) {
+					return CompletableFuture.completedFuture(new QueryPage<>(items, true, cursor));
+				}
+				items.add(results.get(0));
+			}
+		}
+	}
+
+	private String encode() {
+		var positions = partitions.stream()
+			.map(partition -> new Position(partition.exhausted() ? null : partition.getPosition(), partition.exhausted()))
+			.collect(Collectors.toList());
+		try {
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(CURSOR_MAPPER.writeValueAsBytes(positions));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static List<Position> decode(String cursor, int partitions) {
+		if (cursor == null) {
+			return null;
+		}
+		try {
+			List<Position> positions = CURSOR_MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), new TypeReference<List<Position>>() {});
+			if (positions.size() != partitions) {
+				throw new RuntimeException("Cursor does not match the configured tables");
+			}
+			return positions;
+		} catch (IOException | IllegalArgumentException e) {
+			throw new RuntimeException("Invalid cursor", e);
+		}
+	}
+
+	static class Position {
+		private String position;
+		private boolean done;
+
+		Position() {
+		}
+
+		Position(String position, boolean done) {
+			this.position = position;
+			this.done = done;
+		}
+
+		public String getPosition() {
+			return position;
+		}
+
+		public void setPosition(String position) {
+			this.position = position;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		public void setDone(boolean done) {
+			this.done = done;
+		}
+	}
+}
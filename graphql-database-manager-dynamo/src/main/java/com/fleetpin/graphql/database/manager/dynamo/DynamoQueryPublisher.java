@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fleetpin.graphql.database.manager.DatabaseQueryKey;
+import com.fleetpin.graphql.database.manager.Table;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import static com.fleetpin.graphql.database.manager.util.TableCoreUtil.table;
+
+/**
+ * Streams a query by reading a page from each table and partition only when the subscriber wants more.
+ *
+ * Every partition comes back sorted by id so the heads are merged in id order, rows with the same id are flattened the same way {@link Flattener} does before being converted.
+ */
+final class DynamoQueryPublisher<T extends Table> implements Flow.Publisher<T> {
+
+	private final DynamoDbAsyncClient client;
+	private final ObjectMapper mapper;
+	private final List<String> entityTables;
+	private final AttributeValue global;
+	private final DatabaseQueryKey<T> key;
+
+	DynamoQueryPublisher(DynamoDbAsyncClient client, ObjectMapper mapper, List<String> entityTables, AttributeValue global, DatabaseQueryKey<T> key) {
+		this.client = client;
+		this.mapper = mapper;
+		this.entityTables = entityTables;
+		this.global = global;
+		this.key = key;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		var organisationId = AttributeValue.builder().s(key.getOrganisationId()).build();
+		var after = key.getQuery().getAfter() == null ? null : table(key.getQuery().getType()) + ":" + key.getQuery().getAfter();
+		var partitions = new ArrayList<QueryPartition>();
+		//same order as a query so later tables and the organisation override
+		for (var table : entityTables) {
+			partitions.add(new QueryPartition(table, global, after, false));
+			partitions.add(new QueryPartition(table, organisationId, after, false));
+		}
+		var subscription = new MergeSubscription(subscriber, partitions);
+		subscriber.onSubscribe(subscription);
+	}
+
+	private final class MergeSubscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super T> subscriber;
+		private final List<QueryPartition> partitions;
+		private final AtomicReferenceArray<QueryResponse> arrived;
+		private final boolean[] reading;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private final Integer limit;
+		private final AttributeValue prefix;
+		private long emitted;
+		private volatile boolean cancelled;
+		private volatile Throwable failure;
+		private boolean terminated;
+
+		private MergeSubscription(Flow.Subscriber<? super T> subscriber, List<QueryPartition> partitions) {
+			this.subscriber = subscriber;
+			this.partitions = partitions;
+			this.arrived = new AtomicReferenceArray<>(partitions.size());
+			this.reading = new boolean[partitions.size()];
+			this.limit = key.getQuery().getLimit();
+			String startsWith = Optional.ofNullable(key.getQuery().getStartsWith()).orElse("");
+			this.prefix = AttributeValue.builder().s(table(key.getQuery().getType()) + ":" + startsWith).build();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				failure = new IllegalArgumentException("request must be positive");
+			} else {
+				demand.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		private void read(int index) {
+			reading[index] = true;
+			partitions.get(index).read(client, prefix, limit).whenComplete((response, error) -> {
+				if (error != null) {
+					failure = error;
+				} else {
+					arrived.set(index, response);
+				}
+				drain();
+			});
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			do {
+				if (!terminated) {
+					step();
+				}
+			} while (wip.decrementAndGet() != 0);
+		}
+
+		private void step() {
+			if (cancelled) {
+				terminated = true;
+				return;
+			}
+			if (failure != null) {
+				terminated = true;
+				subscriber.onError(failure);
+				return;
+			}
+			for (int i = 0; i < partitions.size(); i++) {
+				var response = arrived.getAndSet(i, null);
+				if (response != null) {
+					reading[i] = false;
+					partitions.get(i).accept(response);
+				}
+			}
+
+			while (demand.get() > 0 && !cancelled) {
+				if (limit != null && emitted >= limit) {
+					complete();
+					return;
+				}
+				boolean ready = true;
+				for (int i = 0; i < partitions.size(); i++) {
+					if (partitions.get(i).needsRead()) {
+						ready = false;
+						if (!reading[i]) {
+							read(i);
+						}
+					}
+				}
+				if (!ready) {
+					//picked up again when the page arrives
+					return;
+				}
+
+				var next = QueryPartition.nextId(partitions);
+				if (next == null) {
+					complete();
+					return;
+				}
+
+				var flattener = new Flattener(false);
+				flattener.addItems(QueryPartition.poll(partitions, next));
+				var results = flattener.results(mapper, key.getQuery().getType());
+				if (!results.isEmpty()) {
+					emitted++;
+					demand.decrementAndGet();
+					subscriber.onNext(results.get(0));
+				}
+			}
+			if (!cancelled && ((limit != null && emitted >= limit) || partitions.stream().allMatch(QueryPartition::exhausted))) {
+				complete();
+			}
+		}
+
+		private void complete() {
+			terminated = true;
+			subscriber.onComplete();
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fleetpin.graphql.database.manager.util.BackupWriter;
+import com.google.common.base.Preconditions;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+/**
+ * Exports a whole entity table, every organisation, with a parallel scan. Each segment is written to its own file in the same newline delimited
+ * format as {@link com.fleetpin.graphql.database.manager.Database#backup}, so a segment file can be handed straight to restore.
+ *
+ * After every page the segment's file length and last evaluated key are saved next to it. Running the export again into the same directory
+ * cuts each file back to its last checkpoint and carries on from there, finished segments are skipped. When gzipped each page is its own gzip member
+ * so a file cut at a checkpoint is still valid.
+ *
+ * Files are only opened, written and forced on the export's executor, never on the client's response threads.
+ */
+public final class DynamoTableExport {
+
+	private final DynamoDbAsyncClient client;
+	private final ObjectMapper mapper;
+	private final ObjectMapper exportMapper;
+	private final String table;
+	private final Path directory;
+	private final int segments;
+	private final int parallelism;
+	private final boolean gzip;
+	private final Executor executor;
+
+	private DynamoTableExport(DynamoDbAsyncClient client, ObjectMapper mapper, String table, Path directory, int segments, int parallelism, boolean gzip, Executor executor) {
+		this.client = client;
+		this.mapper = mapper;
+		this.exportMapper = mapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+		this.table = table;
+		this.directory = directory;
+		this.segments = segments;
+		this.parallelism = parallelism;
+		this.gzip = gzip;
+		this.executor = executor;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return number of items in the export, including those written by an earlier run that was resumed
+	 */
+	public CompletableFuture<Long> run() {
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(new UncheckedIOException(e));
+		}
+		var limiter = new ConcurrencyLimiter(parallelism);
+		var futures = IntStream.range(0, segments).mapToObj(segment -> limiter.run(() -> CompletableFuture.supplyAsync(() -> segment(segment), executor).thenCompose(f -> f))).collect(Collectors.toList());
+		return TableUtil.all(futures).thenApply(counts -> counts.stream().mapToLong(Long::longValue).sum());
+	}
+
+	public Path segmentFile(int segment) {
+		return directory.resolve(table + "-" + segment + (gzip ? ".ndjson.gz" : ".ndjson"));
+	}
+
+	private Path checkpointFile(int segment) {
+		return directory.resolve(table + "-" + segment + ".checkpoint");
+	}
+
+	private CompletableFuture<Long> segment(int segment) {
+		Checkpoint checkpoint;
+		FileChannel channel;
+		try {
+			checkpoint = readCheckpoint(segment);
+			if (checkpoint.isComplete()) {
+				return CompletableFuture.completedFuture(checkpoint.getCount());
+			}
+			channel = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			//anything past the checkpoint was written by a run that did not get to save it
+			channel.truncate(checkpoint.getOffset());
+			channel.position(checkpoint.getOffset());
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(new UncheckedIOException(e));
+		}
+		var startKey = checkpoint.getLastEvaluatedKey() == null ? null : toKey(checkpoint.getLastEvaluatedKey());
+		return pages(segment, channel, checkpoint.getCount(), scan(segment, startKey)).handleAsync((count, failure) -> {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					return CompletableFuture.<Long>failedFuture(new UncheckedIOException(e));
+				}
+				failure.addSuppressed(e);
+			}
+			return failure == null ? CompletableFuture.completedFuture(count) : CompletableFuture.<Long>failedFuture(failure);
+		}, executor).thenCompose(f -> f);
+	}
+
+	private CompletableFuture<ScanResponse> scan(int segment, Map<String, AttributeValue> startKey) {
+		return client.scan(builder -> builder.tableName(table)
+			.consistentRead(true)
+			.segment(segment)
+			.totalSegments(segments)
+			.exclusiveStartKey(startKey));
+	}
+
+	/**
+	 * Like backup the next page is read while the current one is written
+	 */
+	private CompletableFuture<Long> pages(int segment, FileChannel channel, long count, CompletableFuture<ScanResponse> page) {
+		return page.thenComposeAsync(response -> {
+			boolean more = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty();
+			var next = more ? scan(segment, response.lastEvaluatedKey()) : null;
+			long total = count + response.items().size();
+			try {
+				if (!response.items().isEmpty()) {
+					try (var writer = new BackupWriter(exportMapper, Channels.newOutputStream(channel), gzip)) {
+						for (var item : response.items()) {
+							writer.write(new DynamoBackupItem(table, item, mapper));
+						}
+					}
+					channel.force(false);
+				}
+				writeCheckpoint(segment, new Checkpoint(channel.position(), total, segments, more ? fromKey(response.lastEvaluatedKey()) : null, !more));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (next == null) {
+				return CompletableFuture.completedFuture(total);
+			}
+			return pages(segment, channel, total, next);
+		}, executor);
+	}
+
+	private Checkpoint readCheckpoint(int segment) throws IOException {
+		var file = checkpointFile(segment);
+		if (!Files.exists(file)) {
+			return new Checkpoint(0, 0, segments, null, false);
+		}
+		var checkpoint = mapper.readValue(file.toFile(), Checkpoint.class);
+		if (checkpoint.getSegments() != segments) {
+			throw new IllegalStateException("Export of " + table + " was started with " + checkpoint.getSegments() + " segments, can not resume with " + segments);
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Written beside and moved into place so a crash leaves either the old checkpoint or the new one
+	 */
+	private void writeCheckpoint(int segment, Checkpoint checkpoint) throws IOException {
+		var file = checkpointFile(segment);
+		var temp = file.resolveSibling(file.getFileName() + ".tmp");
+		mapper.writeValue(temp.toFile(), checkpoint);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Entity table keys are both strings
+	 */
+	private static Map<String, String> fromKey(Map<String, AttributeValue> key) {
+		var toReturn = new HashMap<String, String>();
+		key.forEach((name, value) -> toReturn.put(name, value.s()));
+		return toReturn;
+	}
+
+	private static Map<String, AttributeValue> toKey(Map<String, String> key) {
+		var toReturn = new HashMap<String, AttributeValue>();
+		key.forEach((name, value) -> toReturn.put(name, AttributeValue.builder().s(value).build()));
+		return toReturn;
+	}
+
+	private static final class Checkpoint {
+		private long offset;
+		private long count;
+		private int segments;
+		private Map<String, String> lastEvaluatedKey;
+		private boolean complete;
+
+		@SuppressWarnings("unused")
+		private Checkpoint() {
+		}
+
+		private Checkpoint(long offset, long count, int segments, Map<String, String> lastEvaluatedKey, boolean complete) {
+			this.offset = offset;
+			this.count = count;
+			this.segments = segments;
+			this.lastEvaluatedKey = lastEvaluatedKey;
+			this.complete = complete;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public int getSegments() {
+			return segments;
+		}
+
+		public Map<String, String> getLastEvaluatedKey() {
+			return lastEvaluatedKey;
+		}
+
+		public boolean isComplete() {
+			return complete;
+		}
+	}
+
+	public static class Builder {
+		private DynamoDbAsyncClient client;
+		private ObjectMapper mapper;
+		private String table;
+		private Path directory;
+		private int segments = Runtime.getRuntime().availableProcessors();
+		private int parallelism;
+		private boolean gzip;
+		private Executor executor;
+
+		public Builder client(DynamoDbAsyncClient client) {
+			this.client = client;
+			return this;
+		}
+
+		public Builder objectMapper(ObjectMapper mapper) {
+			this.mapper = mapper;
+			return this;
+		}
+
+		public Builder table(String table) {
+			this.table = table;
+			return this;
+		}
+
+		/**
+		 * Where segment files and their checkpoints go, reuse it to resume an export
+		 */
+		public Builder directory(Path directory) {
+			this.directory = directory;
+			return this;
+		}
+
+		/**
+		 * Total segments of the scan, defaults to the number of processors. Can not be changed when resuming
+		 */
+		public Builder segments(int segments) {
+			this.segments = segments;
+			return this;
+		}
+
+		/**
+		 * Segments scanned at once, defaults to all of them
+		 */
+		public Builder parallelism(int parallelism) {
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		public Builder gzip(boolean gzip) {
+			this.gzip = gzip;
+			return this;
+		}
+
+		/**
+		 * Runs the file work, defaults to the pool backups use
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		public DynamoTableExport build() {
+			Preconditions.checkNotNull(client, "Client must be set");
+			Preconditions.checkNotNull(mapper, "Object mapper must be set");
+			Preconditions.checkNotNull(table, "Table must be set");
+			Preconditions.checkNotNull(directory, "Directory must be set");
+			Preconditions.checkArgument(segments > 0 && segments <= 1000000, "Segments must be between 1 and 1000000");
+			Preconditions.checkArgument(parallelism >= 0, "Parallelism can not be negative");
+			return new DynamoTableExport(client, mapper, table, directory, segments, parallelism == 0 ? segments : parallelism, gzip, executor == null ? DynamoDb.BACKUP_EXECUTOR : executor);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.TableAccess;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * What generated codecs call to convert an entity's fields without the object mapper. Values are written the way {@link AttributeValueGenerator}
+ * writes them for the default mapper: numbers as their text, instants as iso strings, nulls as null and empty strings left out.
+ *
+ * Reads throw {@link IllegalArgumentException} when a value is not stored in the shape it would be written in, the codec then hands the item to
+ * the mapper which knows how to coerce it.
+ */
+public final class EntityAttributes {
+
+	private static final AttributeValue NULL = AttributeValue.builder().nul(true).build();
+
+	//a mapper given to the manager may be configured in ways the generated code can not see, only the managers own are converted by field
+	private static final Set<ObjectMapper> FIELD_MAPPERS = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+	private EntityAttributes() {
+	}
+
+	static void convertFields(ObjectMapper mapper) {
+		FIELD_MAPPERS.add(mapper);
+	}
+
+	/**
+	 * @return if the generated field conversion gives the same attributes as the mapper would
+	 */
+	public static boolean convertsFields(ObjectMapper mapper) {
+		return FIELD_MAPPERS.contains(mapper);
+	}
+
+	/**
+	 * For fields the codec can not reach directly, private ones or ones declared in another package
+	 */
+	public static VarHandle field(MethodHandles.Lookup lookup, Class<?> type, String name, Class<?> fieldType) {
+		try {
+			return MethodHandles.privateLookupIn(type, lookup).findVarHandle(type, name, fieldType);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Can not access " + type.getName() + "." + name, e);
+		}
+	}
+
+	/**
+	 * @return new attributes holding the properties every entity has, as the mapper finds them on {@link Table}
+	 */
+	public static Map<String, AttributeValue> table(Table entity) {
+		Map<String, AttributeValue> item = new HashMap<>();
+		put(item, "id", entity.getId());
+		put(item, "revision", entity.getRevision());
+		put(item, "createdAt", entity.getCreatedAt());
+		put(item, "updatedAt", entity.getUpdatedAt());
+		//the field name does not match its ignored getter so the mapper has always written it
+		put(item, "sourceOrganistaionId", TableAccess.getTableSourceOrganisation(entity));
+		return item;
+	}
+
+	/**
+	 * Sets the properties every entity has. The source is left alone as it is set from the item once the entity is read
+	 */
+	public static void readTable(Table entity, Map<String, AttributeValue> item) {
+		var value = item.get("id");
+		if (value != null) {
+			entity.setId(readString(value));
+		}
+		value = item.get("revision");
+		if (value != null) {
+			var revision = readLong(value);
+			entity.setRevision(revision == null ? 0 : revision);
+		}
+		value = item.get("createdAt");
+		if (value != null) {
+			TableAccess.setTableCreatedAt(entity, readInstant(value));
+		}
+		value = item.get("updatedAt");
+		if (value != null) {
+			TableAccess.setTableUpdatedAt(entity, readInstant(value));
+		}
+	}
+
+	public static void put(Map<String, AttributeValue> item, String name, String value) {
+		if (value == null) {
+			item.put(name, NULL);
+		} else if (!value.isEmpty()) {
+			item.put(name, AttributeValue.builder().s(value).build());
+		}
+	}
+
+	public static void put(Map<String, AttributeValue> item, String name, Number value) {
+		item.put(name, value == null ? NULL : AttributeValue.builder().n(value.toString()).build());
+	}
+
+	public static void put(Map<String, AttributeValue> item, String name, Boolean value) {
+		item.put(name, value == null ? NULL : AttributeValue.builder().bool(value).build());
+	}
+
+	public static void put(Map<String, AttributeValue> item, String name, Instant value) {
+		item.put(name, value == null ? NULL : AttributeValue.builder().s(value.toString()).build());
+	}
+
+	public static String readString(AttributeValue value) {
+		if (isNull(value)) {
+			return null;
+		}
+		if (value.s() == null) {
+			throw new IllegalArgumentException("Not a string");
+		}
+		return value.s();
+	}
+
+	public static Instant readInstant(AttributeValue value) {
+		var text = readString(value);
+		if (text == null) {
+			return null;
+		}
+		try {
+			return Instant.parse(text);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	public static Boolean readBoolean(AttributeValue value) {
+		if (isNull(value)) {
+			return null;
+		}
+		if (value.bool() == null) {
+			throw new IllegalArgumentException("Not a boolean");
+		}
+		return value.bool();
+	}
+
+	public static Byte readByte(AttributeValue value) {
+		var number = readNumber(value);
+		return number == null ? null : Byte.valueOf(number);
+	}
+
+	public static Short readShort(AttributeValue value) {
+		var number = readNumber(value);
+		return number == null ? null : Short.valueOf(number);
+	}
+
+	public static Integer readInteger(AttributeValue value) {
+		var number = readNumber(value);
+		return number == null ? null : Integer.valueOf(number);
+	}
+
+	public static Long readLong(AttributeValue value) {
+		var number = readNumber(value);
+		return number == null ? null : Long.valueOf(number);
+	}
+
+	public static Float readFloat(AttributeValue value) {
+		var number = readNumber(value);
+		return number == null ? null : Float.valueOf(number);
+	}
+
+	public static Double readDouble(AttributeValue value) {
+		var number = readNumber(value);
+		return number == null ? null : Double.valueOf(number);
+	}
+
+	private static String readNumber(AttributeValue value) {
+		if (isNull(value)) {
+			return null;
+		}
+		if (value.n() == null) {
+			throw new IllegalArgumentException("Not a number");
+		}
+		return value.n();
+	}
+
+	private static boolean isNull(AttributeValue value) {
+		return Boolean.TRUE.equals(value.nul());
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fleetpin.graphql.database.manager.DatabaseKey;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.util.TableCoreUtil;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Node wide cache of entities shared by every database handed out by a {@link DynamoDbManager}.
+ *
+ * Items are held in their raw dynamo form so each hit is converted into a fresh entity, callers are free to mutate what they get back.
+ * Writes through the driver leave a revision floor behind so a slow read that started before the write can not put an older revision back into the cache.
+ */
+public final class EntityCache {
+
+	private static final String GLOBAL = "global";
+
+	private final Settings defaults;
+	private final Map<String, Settings> typeSettings;
+	private final ConcurrentHashMap<String, Region> regions = new ConcurrentHashMap<>();
+
+	private EntityCache(Settings defaults, Map<String, Settings> typeSettings) {
+		this.defaults = defaults;
+		this.typeSettings = typeSettings;
+	}
+
+	public static EntityCacheBuilder builder() {
+		return new EntityCacheBuilder();
+	}
+
+	DynamoItem get(DatabaseKey<?> key) {
+		var region = region(TableCoreUtil.table(key.getType()));
+		var entry = region.cache.getIfPresent(new CacheKey(key.getOrganisationId(), key.getId()));
+		if (entry == null || entry.item == null) {
+			region.misses.incrementAndGet();
+			return null;
+		}
+		region.hits.incrementAndGet();
+		return entry.item;
+	}
+
+	void populate(DatabaseKey<?> key, DynamoItem item) {
+		var region = region(TableCoreUtil.table(key.getType()));
+		long revision = item.getRevision();
+		region.cache.asMap().compute(new CacheKey(key.getOrganisationId(), key.getId()), (__, existing) -> {
+			if (existing != null && existing.revision > revision) {
+				return existing;
+			}
+			return new Entry(item, revision);
+		});
+	}
+
+	/**
+	 * Entity was written and now sits at the given revision, anything older is stale.
+	 */
+	void invalidate(String organisationId, String table, String id, long revision) {
+		var region = region(table);
+		if (GLOBAL.equals(organisationId)) {
+			//global entries are merged into every organisation
+			region.cache.asMap().keySet().removeIf(key -> key.id.equals(id));
+			return;
+		}
+		region.cache.asMap().compute(new CacheKey(organisationId, id), (__, existing) -> {
+			if (existing != null && existing.revision > revision) {
+				return existing;
+			}
+			return new Entry(null, revision);
+		});
+	}
+
+	/**
+	 * Entity was modified but the resulting revision is not known, nothing can be cached until the entry expires.
+	 */
+	void invalidate(String organisationId, String table, String id) {
+		invalidate(organisationId, table, id, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Drops the entry without leaving a floor behind, used when the cached copy is known to be wrong.
+	 */
+	void evict(String organisationId, String table, String id) {
+		var region = regions.get(table);
+		if (region != null) {
+			region.cache.invalidate(new CacheKey(organisationId, id));
+		}
+	}
+
+	void invalidateType(String organisationId, String table) {
+		var region = regions.get(table);
+		if (region != null) {
+			region.cache.asMap().keySet().removeIf(key -> GLOBAL.equals(organisationId) || Objects.equals(key.organisationId, organisationId));
+		}
+	}
+
+	void invalidateOrganisation(String organisationId) {
+		regions.values().forEach(region -> region.cache.asMap().keySet().removeIf(key -> Objects.equals(key.organisationId, organisationId)));
+	}
+
+	void invalidateAll() {
+		regions.values().forEach(region -> region.cache.invalidateAll());
+	}
+
+	public long getHitCount() {
+		return regions.values().stream().mapToLong(region -> region.hits.get()).sum();
+	}
+
+	public long getMissCount() {
+		return regions.values().stream().mapToLong(region -> region.misses.get()).sum();
+	}
+
+	public long getHitCount(Class<? extends Table> type) {
+		var region = regions.get(TableCoreUtil.table(type));
+		return region == null ? 0 : region.hits.get();
+	}
+
+	public long getMissCount(Class<? extends Table> type) {
+		var region = regions.get(TableCoreUtil.table(type));
+		return region == null ? 0 : region.misses.get();
+	}
+
+	public long size() {
+		return regions.values().stream().mapToLong(region -> region.cache.size()).sum();
+	}
+
+	private Region region(String table) {
+		return regions.computeIfAbsent(table, t -> new Region(typeSettings.getOrDefault(t, defaults)));
+	}
+
+	public static class EntityCacheBuilder {
+		private long maximumSize = 10_000;
+		private Duration expireAfterWrite = Duration.ofMinutes(1);
+		private final Map<String, Settings> typeSettings = new HashMap<>();
+
+		/**
+		 * @param maximumSize number of entities kept for each type that does not have its own settings
+		 */
+		public EntityCacheBuilder maximumSize(long maximumSize) {
+			this.maximumSize = maximumSize;
+			return this;
+		}
+
+		/**
+		 * @param expireAfterWrite how long an entity is served from memory for types that do not have their own settings
+		 */
+		public EntityCacheBuilder expireAfterWrite(Duration expireAfterWrite) {
+			this.expireAfterWrite = expireAfterWrite;
+			return this;
+		}
+
+		/**
+		 * Overrides the size and ttl for a single type, a zero size disables caching for the type
+		 */
+		public EntityCacheBuilder type(Class<? extends Table> type, long maximumSize, Duration expireAfterWrite) {
+			typeSettings.put(TableCoreUtil.table(type), new Settings(maximumSize, expireAfterWrite));
+			return this;
+		}
+
+		public EntityCache build() {
+			Preconditions.checkArgument(maximumSize >= 0, "maximum size can not be negative");
+			Preconditions.checkNotNull(expireAfterWrite, "expire after write must be set");
+			return new EntityCache(new Settings(maximumSize, expireAfterWrite), Map.copyOf(typeSettings));
+		}
+	}
+
+	private static class Settings {
+		private final long maximumSize;
+		private final Duration expireAfterWrite;
+
+		private Settings(long maximumSize, Duration expireAfterWrite) {
+			this.maximumSize = maximumSize;
+			this.expireAfterWrite = expireAfterWrite;
+		}
+	}
+
+	private static class Region {
+		private final Cache<CacheKey, Entry> cache;
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+
+		private Region(Settings settings) {
+			this.cache = CacheBuilder.newBuilder()
+					.maximumSize(settings.maximumSize)
+					.expireAfterWrite(settings.expireAfterWrite.toNanos(), TimeUnit.NANOSECONDS)
+					.build();
+		}
+	}
+
+	private static class Entry {
+		//null when only the revision floor is known
+		private final DynamoItem item;
+		private final long revision;
+
+		private Entry(DynamoItem item, long revision) {
+			this.item = item;
+			this.revision = revision;
+		}
+	}
+
+	private static class CacheKey {
+		private final String organisationId;
+		private final String id;
+
+		private CacheKey(String organisationId, String id) {
+			this.organisationId = organisationId;
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(id, organisationId);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			return Objects.equals(id, other.id) && Objects.equals(organisationId, other.organisationId);
+		}
+	}
+}
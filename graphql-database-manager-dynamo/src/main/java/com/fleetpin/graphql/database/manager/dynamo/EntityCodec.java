@@ -0,0 +1,71 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fleetpin.graphql.database.manager.Table;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * What dynamo needs to know about an entity type to store it: its table name, if it keeps history, its index values and how it converts to and
+ * from attributes. Codecs are generated at compile time by graphql-database-manager-processor as {@code <Entity>_EntityCodec} beside the entity,
+ * types without one are read with reflection once and cached.
+ *
+ * Generated codecs convert plain entities field by field, see {@link EntityAttributes}. Entities the processor can not be sure the mapper would
+ * write the same way, such as ones with jackson annotations or fields of other types, are still converted by the object mapper.
+ */
+public interface EntityCodec<T extends Table> {
+
+	/**
+	 * @return the generated codec for the type or one built with reflection when there is none
+	 */
+	static <T extends Table> EntityCodec<T> of(Class<T> type) {
+		return EntityCodecs.of(type);
+	}
+
+	Class<T> getType();
+
+	/**
+	 * @return the name from {@link com.fleetpin.graphql.database.manager.annotations.TableName} or the default plural of the class name
+	 */
+	String getTable();
+
+	/**
+	 * @return if {@link com.fleetpin.graphql.database.manager.annotations.History} is on the type
+	 */
+	boolean hasHistory();
+
+	/**
+	 * @return value of the {@link com.fleetpin.graphql.database.manager.annotations.GlobalIndex} getter, null when there is none
+	 */
+	String getSecondaryGlobal(T entity);
+
+	/**
+	 * @return value of the {@link com.fleetpin.graphql.database.manager.annotations.SecondaryIndex} getter, null when there is none
+	 */
+	String getSecondaryOrganisation(T entity);
+
+	/**
+	 * Converts with the object mapper, generated codecs of plain entities override this and the read below
+	 */
+	default Map<String, AttributeValue> toAttributes(ObjectMapper mapper, T entity) {
+		return TableUtil.toAttributes(mapper, entity);
+	}
+
+	default T fromAttributes(ObjectMapper mapper, Map<String, AttributeValue> item) {
+		return TableUtil.convertTo(mapper, item, getType());
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.annotations.GlobalIndex;
+import com.fleetpin.graphql.database.manager.annotations.SecondaryIndex;
+import com.fleetpin.graphql.database.manager.util.HistoryCoreUtil;
+import com.fleetpin.graphql.database.manager.util.TableCoreUtil;
+
+/**
+ * Finds the codec for each type the first time it is stored so the generated class is only looked up once
+ */
+final class EntityCodecs {
+
+	static final String SUFFIX = "_EntityCodec";
+
+	private static final ClassValue<EntityCodec<?>> CODECS = new ClassValue<>() {
+		@Override
+		protected EntityCodec<?> computeValue(Class<?> type) {
+			return load(type.asSubclass(Table.class));
+		}
+	};
+
+	private EntityCodecs() {
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T extends Table> EntityCodec<T> of(Class<T> type) {
+		return (EntityCodec<T>) CODECS.get(type);
+	}
+
+	/**
+	 * Nested types are flattened the same way the processor names them, Outer$Inner becomes Outer_Inner_EntityCodec
+	 */
+	static String codecName(Class<?> type) {
+		return type.getName().replace('$', '_') + SUFFIX;
+	}
+
+	private static <T extends Table> EntityCodec<T> load(Class<T> type) {
+		try {
+			var codec = Class.forName(codecName(type), true, type.getClassLoader());
+			@SuppressWarnings("unchecked")
+			var generated = (EntityCodec<T>) codec.getDeclaredConstructor().newInstance();
+			if (generated.getType() == type) {
+				return generated;
+			}
+		} catch (ClassNotFoundException e) {
+			//not generated, fall back to reflection
+		} catch (ExceptionInInitializerError e) {
+			//the generated codec could not reach the entity's fields, reflection and the mapper still can
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+		return new ReflectiveCodec<>(type);
+	}
+
+	/**
+	 * Does what the generated codec would, with the annotated getters found once rather than on every put
+	 */
+	private static final class ReflectiveCodec<T extends Table> implements EntityCodec<T> {
+		private final Class<T> type;
+		private final String table;
+		private final boolean history;
+		private final Method secondaryGlobal;
+		private final Method secondaryOrganisation;
+
+		private ReflectiveCodec(Class<T> type) {
+			this.type = type;
+			this.table = TableCoreUtil.table(type);
+			this.history = HistoryCoreUtil.hasHistory(type);
+			Method global = null;
+			Method organisation = null;
+			for (var method : type.getMethods()) {
+				if (global == null && method.isAnnotationPresent(GlobalIndex.class)) {
+					global = method;
+				}
+				if (organisation == null && method.isAnnotationPresent(SecondaryIndex.class)) {
+					organisation = method;
+				}
+			}
+			this.secondaryGlobal = global;
+			this.secondaryOrganisation = organisation;
+		}
+
+		@Override
+		public Class<T> getType() {
+			return type;
+		}
+
+		@Override
+		public String getTable() {
+			return table;
+		}
+
+		@Override
+		public boolean hasHistory() {
+			return history;
+		}
+
+		@Override
+		public String getSecondaryGlobal(T entity) {
+			return invoke(secondaryGlobal, entity);
+		}
+
+		@Override
+		public String getSecondaryOrganisation(T entity) {
+			return invoke(secondaryOrganisation, entity);
+		}
+
+		private static String invoke(Method method, Table entity) {
+			if (method == null) {
+				return null;
+			}
+			try {
+				var secondary = method.invoke(entity);
+				if (secondary instanceof Optional) {
+					secondary = ((Optional<?>) secondary).orElse(null);
+				}
+				return (String) secondary;
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
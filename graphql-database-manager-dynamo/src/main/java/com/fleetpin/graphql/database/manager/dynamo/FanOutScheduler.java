@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounds how many fan-out write requests are in flight against each table for each kind of operation. Requests over the limit are queued until a slot frees up.
+ *
+ * Share one scheduler between managers to bound them together.
+ */
+public final class FanOutScheduler {
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+	public enum Operation {
+		PUT_ITEM,
+		UPDATE_ITEM,
+		DELETE_ITEM,
+		BATCH_WRITE_ITEM,
+		TRANSACT_WRITE_ITEMS
+	}
+
+	private final int defaultLimit;
+	private final Map<Operation, Integer> operationLimits;
+	private final Map<Key, Integer> tableLimits;
+	private final ConcurrentHashMap<Key, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+	private FanOutScheduler(int defaultLimit, Map<Operation, Integer> operationLimits, Map<Key, Integer> tableLimits) {
+		this.defaultLimit = defaultLimit;
+		this.operationLimits = operationLimits;
+		this.tableLimits = tableLimits;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	<T> CompletableFuture<T> run(String table, Operation operation, Supplier<CompletableFuture<T>> task) {
+		return limiter(table, operation).run(task);
+	}
+
+	private ConcurrencyLimiter limiter(String table, Operation operation) {
+		return limiters.computeIfAbsent(new Key(table, operation), key -> new ConcurrencyLimiter(limit(key)));
+	}
+
+	private int limit(Key key) {
+		var limit = tableLimits.get(key);
+		if (limit != null) {
+			return limit;
+		}
+		return operationLimits.getOrDefault(key.operation, defaultLimit);
+	}
+
+	/**
+	 * @return requests waiting for a slot across every table and operation
+	 */
+	public int getQueueDepth() {
+		return limiters.values().stream().mapToInt(ConcurrencyLimiter::queued).sum();
+	}
+
+	public int getQueueDepth(String table, Operation operation) {
+		return limiter(table, operation).queued();
+	}
+
+	public int getInFlight(String table, Operation operation) {
+		return limiter(table, operation).running();
+	}
+
+	/**
+	 * @return requests that have been given a slot since the scheduler was created
+	 */
+	public long getStarted(String table, Operation operation) {
+		return limiter(table, operation).started();
+	}
+
+	/**
+	 * @return time requests spent queued before they were sent, summed over every started request
+	 */
+	public Duration getTotalWait(String table, Operation operation) {
+		return Duration.ofNanos(limiter(table, operation).totalWaitNanos());
+	}
+
+	public Duration getMaxWait(String table, Operation operation) {
+		return Duration.ofNanos(limiter(table, operation).maxWaitNanos());
+	}
+
+	public static class Builder {
+		private int defaultLimit = DEFAULT_MAX_IN_FLIGHT;
+		private final Map<Operation, Integer> operationLimits = new EnumMap<>(Operation.class);
+		private final Map<Key, Integer> tableLimits = new HashMap<>();
+
+		/**
+		 * Most requests in flight for any table and operation without a more specific limit, defaults to 16
+		 */
+		public Builder maxInFlight(int maxInFlight) {
+			Preconditions.checkArgument(maxInFlight > 0, "Max in flight must be positive");
+			this.defaultLimit = maxInFlight;
+			return this;
+		}
+
+		public Builder maxInFlight(Operation operation, int maxInFlight) {
+			Preconditions.checkArgument(maxInFlight > 0, "Max in flight must be positive");
+			operationLimits.put(operation, maxInFlight);
+			return this;
+		}
+
+		public Builder maxInFlight(String table, Operation operation, int maxInFlight) {
+			Preconditions.checkArgument(maxInFlight > 0, "Max in flight must be positive");
+			tableLimits.put(new Key(table, operation), maxInFlight);
+			return this;
+		}
+
+		public FanOutScheduler build() {
+			return new FanOutScheduler(defaultLimit, new EnumMap<>(operationLimits), new HashMap<>(tableLimits));
+		}
+	}
+
+	private static final class Key {
+		private final String table;
+		private final Operation operation;
+
+		private Key(String table, Operation operation) {
+			this.table = table;
+			this.operation = operation;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(table, operation);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			var other = (Key) obj;
+			return table.equals(other.table) && operation == other.operation;
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Stream;
 
@@ -15,38 +16,62 @@ import software.amazon.awssdk.services.dynamodb.model.Record;
 
 public class HistoryUtil {
 
+	/**
+	 * Turns stream records into history items. When the stream has old images a removed entity with history gets a tombstone, a copy of
+	 * its last image marked deleted one revision on and dated when it was removed, never before its last update.
+	 */
 	public static Stream<HashMap<String, AttributeValue>> toHistoryValue(Stream<Record> records) {
 		
 		return records
-				.map(record -> record.dynamodb().newImage())
-				.filter(Objects::nonNull)
-				.filter(newImage -> {
-					var hasHistory = newImage.get("history");
-					return (hasHistory != null && hasHistory.bool()== Boolean.TRUE );
+				.map(record -> {
+					var newImage = record.dynamodb().newImage();
+					if (hasHistory(newImage)) {
+						var updatedAt = Instant.parse(newImage.get("item").m().get("updatedAt").s()).toEpochMilli();
+						return toHistoryValue(newImage, Long.parseLong(newImage.get("revision").n()), updatedAt);
+					}
+					var oldImage = record.dynamodb().oldImage();
+					if ("REMOVE".equals(record.eventNameAsString()) && hasHistory(oldImage)) {
+						var removedAt = record.dynamodb().approximateCreationDateTime();
+						//the stream time is only to the second, a delete straight after a put must still sort after it
+						var lastUpdatedAt = Instant.parse(oldImage.get("item").m().get("updatedAt").s()).toEpochMilli();
+						var deletedAt = Math.max((removedAt == null ? Instant.now() : removedAt).toEpochMilli(), lastUpdatedAt + 1);
+						var tombstone = toHistoryValue(oldImage, Long.parseLong(oldImage.get("revision").n()) + 1, deletedAt);
+						tombstone.put("deleted", AttributeValue.builder().bool(true).build());
+						return tombstone;
+					}
+					return null;
 				})
-				.map(newImage -> {
-
-				var item = new HashMap<>(newImage);
-				var id = newImage.get("id").s().split(":",2);
-				var idRevision = toRevisionId(id[1], Long.parseLong(newImage.get("revision").n()));
-				
-				item.put("id", newImage.get("id"));
-				item.put("idRevision", idRevision);
-				item.put("organisationId", newImage.get("organisationId"));
-				item.put("organisationIdType", AttributeValue.builder().s(newImage.get("organisationId").s()+":"+id[0]).build());
-				
-				var updatedAtTime = Instant.parse(newImage.get("item").m().get("updatedAt").s()).toEpochMilli();
-				var idDate =  toRevisionId(id[1], updatedAtTime);
-				item.put("idDate", idDate);
-				item.put("updatedAt", AttributeValue.builder().n(Long.toString(updatedAtTime)).build());
-				
-				var startsUpdatedAt = toUpdatedAtId(id[1], Instant.parse(newImage.get("item").m().get("updatedAt").s()).toEpochMilli(), true);
-				item.put("startsWithUpdatedAt", startsUpdatedAt);
+				.filter(Objects::nonNull);
+		
+	}
 
-				return item;
+	private static boolean hasHistory(Map<String, AttributeValue> image) {
+		if (image == null) {
+			return false;
+		}
+		var hasHistory = image.get("history");
+		return (hasHistory != null && hasHistory.bool()== Boolean.TRUE );
+	}
 
-		});
+	private static HashMap<String, AttributeValue> toHistoryValue(Map<String, AttributeValue> image, long revision, long updatedAtTime) {
+		var item = new HashMap<>(image);
+		var id = image.get("id").s().split(":",2);
+		var idRevision = toRevisionId(id[1], revision);
+		
+		item.put("id", image.get("id"));
+		item.put("revision", AttributeValue.builder().n(Long.toString(revision)).build());
+		item.put("idRevision", idRevision);
+		item.put("organisationId", image.get("organisationId"));
+		item.put("organisationIdType", AttributeValue.builder().s(image.get("organisationId").s()+":"+id[0]).build());
 		
+		var idDate =  toRevisionId(id[1], updatedAtTime);
+		item.put("idDate", idDate);
+		item.put("updatedAt", AttributeValue.builder().n(Long.toString(updatedAtTime)).build());
+		
+		var startsUpdatedAt = toUpdatedAtId(id[1], updatedAtTime, true);
+		item.put("startsWithUpdatedAt", startsUpdatedAt);
+
+		return item;
 	}
 
 	public static AttributeValue toId(String id) {
@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+/**
+ * Pages through one organisation partition of one table in id order, used to merge a query across tables and partitions as it is read.
+ */
+final class QueryPartition {
+
+	private final String table;
+	private final AttributeValue organisationId;
+	private final ArrayDeque<DynamoItem> buffer = new ArrayDeque<>();
+	//where the next read starts from, null for the start of the range
+	private String startId;
+	//last id handed out, a resumed read starts after it
+	private String position;
+	private boolean done;
+
+	QueryPartition(String table, AttributeValue organisationId, String startId, boolean done) {
+		this.table = table;
+		this.organisationId = organisationId;
+		this.startId = startId;
+		this.position = startId;
+		this.done = done;
+	}
+
+	String getTable() {
+		return table;
+	}
+
+	AttributeValue getOrganisationId() {
+		return organisationId;
+	}
+
+	CompletableFuture<QueryResponse> read(DynamoDbAsyncClient client, AttributeValue prefix, Integer limit) {
+		return client.query(QueryRequest.builder()
+			.tableName(table)
+			.consistentRead(true)
+			.keyConditionExpression("organisationId = :organisationId AND begins_with(id, :table)")
+			.expressionAttributeValues(Map.of(":organisationId", organisationId, ":table", prefix))
+			.applyMutation(b -> {
+				if (limit != null) {
+					b.limit(limit);
+				}
+				if (startId != null) {
+					b.exclusiveStartKey(Map.of("id", AttributeValue.builder().s(startId).build(), "organisationId", organisationId));
+				}
+			})
+			.build());
+	}
+
+	void accept(QueryResponse response) {
+		response.items().forEach(item -> buffer.add(new DynamoItem(table, item)));
+		if (response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()) {
+			startId = response.lastEvaluatedKey().get("id").s();
+		} else {
+			done = true;
+		}
+	}
+
+	/**
+	 * Needs another read before the merge can go on
+	 */
+	boolean needsRead() {
+		return buffer.isEmpty() && !done;
+	}
+
+	boolean exhausted() {
+		return buffer.isEmpty() && done;
+	}
+
+	String getPosition() {
+		return position;
+	}
+
+	/**
+	 * Smallest id at the head of the partitions, null once they are all exhausted. Every partition must have been read.
+	 */
+	static String nextId(List<QueryPartition> partitions) {
+		String next = null;
+		for (var partition : partitions) {
+			if (!partition.buffer.isEmpty()) {
+				var id = partition.buffer.peek().getId();
+				if (next == null || compareIds(id, next) < 0) {
+					next = id;
+				}
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Takes the rows with the id from the head of each partition, in partition order so later ones override
+	 */
+	static List<DynamoItem> poll(List<QueryPartition> partitions, String id) {
+		var toReturn = new ArrayList<DynamoItem>(partitions.size());
+		for (var partition : partitions) {
+			if (!partition.buffer.isEmpty() && partition.buffer.peek().getId().equals(id)) {
+				toReturn.add(partition.buffer.poll());
+				partition.position = id;
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Orders the same way dynamo orders string keys, by utf-8 bytes which matches code point order
+	 */
+	static int compareIds(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			int ca = a.codePointAt(i);
+			int cb = b.codePointAt(j);
+			if (ca != cb) {
+				return Integer.compare(ca, cb);
+			}
+			i += Character.charCount(ca);
+			j += Character.charCount(cb);
+		}
+		return Integer.compare(a.length() - i, b.length() - j);
+	}
+}
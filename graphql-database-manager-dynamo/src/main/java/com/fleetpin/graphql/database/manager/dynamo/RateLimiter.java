@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.dynamo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Spaces requests out to a steady rate without blocking a thread, a caller gets a future that completes once its slot comes up.
+ * With a burst it acts as a token bucket of that size, permits saved up while idle can be spent at once.
+ */
+final class RateLimiter {
+
+	private final double nanosPerPermit;
+	private final long burstNanos;
+	private long nextFree;
+
+	/**
+	 * @param permitsPerSecond zero for no limit
+	 */
+	RateLimiter(double permitsPerSecond) {
+		this(permitsPerSecond, 0);
+	}
+
+	/**
+	 * @param burst most permits that can be saved up while idle
+	 */
+	RateLimiter(double permitsPerSecond, double burst) {
+		Preconditions.checkArgument(permitsPerSecond >= 0, "rate can not be negative");
+		Preconditions.checkArgument(burst >= 0, "burst can not be negative");
+		this.nanosPerPermit = permitsPerSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+		this.burstNanos = (long) (burst * nanosPerPermit);
+		this.nextFree = System.nanoTime() - burstNanos;
+	}
+
+	CompletableFuture<Void> acquire() {
+		return acquire(1);
+	}
+
+	/**
+	 * Takes the permits straight away and delays the caller until they would have been available, so a large request pushes back those after it rather than waiting for a gap
+	 */
+	CompletableFuture<Void> acquire(double permits) {
+		if (nanosPerPermit == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			//idle time is only banked up to the burst
+			if (nextFree - (now - burstNanos) < 0) {
+				nextFree = now - burstNanos;
+			}
+			wait = Math.max(0, nextFree - now);
+			nextFree += (long) (permits * nanosPerPermit);
+		}
+		if (wait == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+	}
+
+	/**
+	 * Corrects an earlier estimate once the real cost is known, negative gives permits back
+	 */
+	synchronized void adjust(double permits) {
+		nextFree += (long) (permits * nanosPerPermit);
+	}
+}
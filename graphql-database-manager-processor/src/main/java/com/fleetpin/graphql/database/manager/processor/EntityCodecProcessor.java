@@ -0,0 +1,578 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates an EntityCodec for every concrete Table subclass so dynamo does not have to look up table names, history and index getters with
+ * reflection. The codec sits in the entity's package named after it, Outer.Inner gets Outer_Inner_EntityCodec.
+ *
+ * Plain entities also get their fields converted to and from attributes without jackson. An entity is plain when its fields are all strings,
+ * numbers, booleans or instants, nothing on it carries a jackson annotation, every getter and setter is named for one of its fields and it has a
+ * constructor without arguments, so the default mapper would find exactly those fields. Anything else is still converted by the mapper.
+ *
+ * Types the codec could not reach, private or generic ones, are left alone and dynamo falls back to reflection for them.
+ */
+@SupportedAnnotationTypes("*")
+public final class EntityCodecProcessor extends AbstractProcessor {
+
+	private static final String TABLE = "com.fleetpin.graphql.database.manager.Table";
+	private static final String CODEC = "com.fleetpin.graphql.database.manager.dynamo.EntityCodec";
+	private static final String TABLE_NAME = "com.fleetpin.graphql.database.manager.annotations.TableName";
+	private static final String HISTORY = "com.fleetpin.graphql.database.manager.annotations.History";
+	private static final String GLOBAL_INDEX = "com.fleetpin.graphql.database.manager.annotations.GlobalIndex";
+	private static final String SECONDARY_INDEX = "com.fleetpin.graphql.database.manager.annotations.SecondaryIndex";
+	private static final String GENERATED = "javax.annotation.processing.Generated";
+	private static final String ATTRIBUTES = "com.fleetpin.graphql.database.manager.dynamo.EntityAttributes";
+	private static final String ATTRIBUTE_MAP = "java.util.Map<java.lang.String, software.amazon.awssdk.services.dynamodb.model.AttributeValue>";
+	private static final String MAPPER = "com.fasterxml.jackson.databind.ObjectMapper";
+	private static final String JACKSON = "com.fasterxml.jackson.";
+	private static final String JACKSON_BUNDLE = "com.fasterxml.jackson.annotation.JacksonAnnotationsInside";
+	//java.beans annotations the mapper also reads
+	private static final Set<String> BEANS = Set.of("java.beans.Transient", "java.beans.ConstructorProperties");
+	private static final String SUFFIX = "_EntityCodec";
+
+	//what the mapper finds on Table, including the properties its ignored getters hide
+	private static final Set<String> TABLE_PROPERTIES = Set.of("id", "revision", "createdAt", "updatedAt", "sourceTable", "sourceOrganistaionId", "sourceOrganisationId", "links");
+	private static final Map<String, String> READERS = Map.of(
+			"java.lang.String", "readString",
+			"java.time.Instant", "readInstant",
+			"java.lang.Boolean", "readBoolean",
+			"java.lang.Byte", "readByte",
+			"java.lang.Short", "readShort",
+			"java.lang.Integer", "readInteger",
+			"java.lang.Long", "readLong",
+			"java.lang.Float", "readFloat",
+			"java.lang.Double", "readDouble");
+	private static final Map<TypeKind, String> PRIMITIVE_READERS = Map.of(
+			TypeKind.BOOLEAN, "readBoolean",
+			TypeKind.BYTE, "readByte",
+			TypeKind.SHORT, "readShort",
+			TypeKind.INT, "readInteger",
+			TypeKind.LONG, "readLong",
+			TypeKind.FLOAT, "readFloat",
+			TypeKind.DOUBLE, "readDouble");
+	//the mapper sets a primitive to its default when the stored value is null
+	private static final Map<TypeKind, String> ZEROS = Map.of(
+			TypeKind.BOOLEAN, "false",
+			TypeKind.BYTE, "(byte) 0",
+			TypeKind.SHORT, "(short) 0",
+			TypeKind.INT, "0",
+			TypeKind.LONG, "0L",
+			TypeKind.FLOAT, "0f",
+			TypeKind.DOUBLE, "0d");
+
+	private final Set<String> generated = new HashSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		var table = processingEnv.getElementUtils().getTypeElement(TABLE);
+		if (table == null) {
+			return false;
+		}
+		for (var type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			visit(type, table);
+		}
+		//every annotation is looked at so none are claimed
+		return false;
+	}
+
+	private void visit(TypeElement type, TypeElement table) {
+		for (var member : ElementFilter.typesIn(type.getEnclosedElements())) {
+			visit(member, table);
+		}
+		if (isCodecable(type, table)) {
+			generate(type, table);
+		}
+	}
+
+	private boolean isCodecable(TypeElement type, TypeElement table) {
+		if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+			return false;
+		}
+		var types = processingEnv.getTypeUtils();
+		if (!types.isSubtype(types.erasure(type.asType()), types.erasure(table.asType()))) {
+			return false;
+		}
+		for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+			var nesting = ((TypeElement) element).getNestingKind();
+			if (element.getModifiers().contains(Modifier.PRIVATE) || (nesting != NestingKind.TOP_LEVEL && nesting != NestingKind.MEMBER)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void generate(TypeElement type, TypeElement table) {
+		var elements = processingEnv.getElementUtils();
+		var packageName = elements.getPackageOf(type).getQualifiedName().toString();
+		var codecName = codecName(type);
+		var qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+		if (!generated.add(qualifiedCodecName)) {
+			return;
+		}
+
+		String global;
+		String organisation;
+		try {
+			global = indexGetter(type, GLOBAL_INDEX);
+			organisation = indexGetter(type, SECONDARY_INDEX);
+		} catch (IllegalArgumentException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, e.getMessage() + ", no codec generated", type);
+			return;
+		}
+
+		var entity = type.getQualifiedName().toString();
+		try (var out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter())) {
+			if (!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			if (elements.getTypeElement(GENERATED) != null) {
+				out.println("@" + GENERATED + "(\"" + EntityCodecProcessor.class.getName() + "\")");
+			}
+			out.println("public final class " + codecName + " implements " + CODEC + "<" + entity + "> {");
+			out.println();
+			out.println("\tprivate static final String TABLE = " + tableName(type) + ";");
+			var properties = properties(type, table);
+			if (properties != null) {
+				generateHandles(out, properties);
+			}
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic Class<" + entity + "> getType() {");
+			out.println("\t\treturn " + entity + ".class;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic String getTable() {");
+			out.println("\t\treturn TABLE;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic boolean hasHistory() {");
+			out.println("\t\treturn " + (annotation(type, HISTORY) != null) + ";");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic String getSecondaryGlobal(" + entity + " entity) {");
+			out.println("\t\treturn " + global + ";");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic String getSecondaryOrganisation(" + entity + " entity) {");
+			out.println("\t\treturn " + organisation + ";");
+			out.println("\t}");
+			if (properties != null) {
+				generateFields(out, entity, properties);
+			}
+			out.println("}");
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + qualifiedCodecName + ": " + e.getMessage(), type);
+		}
+	}
+
+	private void generateHandles(PrintWriter out, List<Property> properties) {
+		if (properties.stream().anyMatch(Property::needsHandle)) {
+			out.println();
+		}
+		for (var property : properties) {
+			if (property.needsHandle()) {
+				out.println("\tprivate static final java.lang.invoke.VarHandle " + property.handleName() + " = " + ATTRIBUTES + ".field(java.lang.invoke.MethodHandles.lookup(), "
+						+ declaringType(property.field) + ".class, \"" + property.name + "\", " + property.type + ".class);");
+			}
+		}
+	}
+
+	private void generateFields(PrintWriter out, String entity, List<Property> properties) {
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic " + ATTRIBUTE_MAP + " toAttributes(" + MAPPER + " mapper, " + entity + " entity) {");
+		out.println("\t\tif (!" + ATTRIBUTES + ".convertsFields(mapper)) {");
+		out.println("\t\t\treturn " + CODEC + ".super.toAttributes(mapper, entity);");
+		out.println("\t\t}");
+		out.println("\t\t" + ATTRIBUTE_MAP + " item = " + ATTRIBUTES + ".table(entity);");
+		for (var property : properties) {
+			out.println("\t\t" + ATTRIBUTES + ".put(item, \"" + property.name + "\", " + property.read() + ");");
+		}
+		out.println("\t\treturn item;");
+		out.println("\t}");
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic " + entity + " fromAttributes(" + MAPPER + " mapper, " + ATTRIBUTE_MAP + " item) {");
+		out.println("\t\tif (!" + ATTRIBUTES + ".convertsFields(mapper)) {");
+		out.println("\t\t\treturn " + CODEC + ".super.fromAttributes(mapper, item);");
+		out.println("\t\t}");
+		out.println("\t\ttry {");
+		out.println("\t\t\t" + entity + " entity = new " + entity + "();");
+		out.println("\t\t\t" + ATTRIBUTES + ".readTable(entity, item);");
+		out.println("\t\t\tsoftware.amazon.awssdk.services.dynamodb.model.AttributeValue value;");
+		for (var property : properties) {
+			out.println("\t\t\tvalue = item.get(\"" + property.name + "\");");
+			out.println("\t\t\tif (value != null) {");
+			out.println("\t\t\t\t" + property.write(readValue(property.field.asType())) + ";");
+			out.println("\t\t\t}");
+		}
+		out.println("\t\t\treturn entity;");
+		out.println("\t\t} catch (IllegalArgumentException e) {");
+		out.println("\t\t\t//stored in a shape only the mapper knows how to coerce");
+		out.println("\t\t\treturn " + CODEC + ".super.fromAttributes(mapper, item);");
+		out.println("\t\t}");
+		out.println("\t}");
+	}
+
+	private String readValue(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return "java.util.Objects.requireNonNullElse(" + ATTRIBUTES + "." + PRIMITIVE_READERS.get(type.getKind()) + "(value), " + ZEROS.get(type.getKind()) + ")";
+		}
+		return ATTRIBUTES + "." + READERS.get(qualifiedName(type)) + "(value)";
+	}
+
+	/**
+	 * The properties the default mapper finds on a plain entity below Table, null when it is not plain and has to be left to the mapper
+	 */
+	private List<Property> properties(TypeElement type, TypeElement table) {
+		var elements = processingEnv.getElementUtils();
+		var types = processingEnv.getTypeUtils();
+		var entityPackage = elements.getPackageOf(type);
+
+		if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+			return null;
+		}
+		boolean constructor = false;
+		for (var method : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.PRIVATE)) {
+				constructor = true;
+			}
+		}
+		if (!constructor) {
+			return null;
+		}
+
+		var classes = new ArrayList<TypeElement>();
+		for (var current = type; current != null && !current.equals(table); current = superclass(current)) {
+			classes.add(current);
+		}
+		var hierarchy = new ArrayList<TypeElement>(classes);
+		for (var current : classes) {
+			interfaces(current, hierarchy);
+		}
+		for (var current : hierarchy) {
+			if (hasJackson(current)) {
+				return null;
+			}
+			for (var member : current.getEnclosedElements()) {
+				if (hasJackson(member)) {
+					return null;
+				}
+				if (member instanceof ExecutableElement) {
+					for (var parameter : ((ExecutableElement) member).getParameters()) {
+						if (hasJackson(parameter)) {
+							return null;
+						}
+					}
+				}
+			}
+		}
+
+		Map<String, Property> properties = new LinkedHashMap<>();
+		for (var current : classes) {
+			for (var field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+				var modifiers = field.getModifiers();
+				if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+					continue;
+				}
+				var name = field.getSimpleName().toString();
+				if (modifiers.contains(Modifier.FINAL) || TABLE_PROPERTIES.contains(name) || properties.containsKey(name) || !isSupported(field.asType())) {
+					return null;
+				}
+				var direct = !modifiers.contains(Modifier.PRIVATE) && elements.getPackageOf(current).equals(entityPackage);
+				properties.put(name, new Property(name, field, typeName(field.asType()), !direct));
+			}
+		}
+
+		//every class and interface declares its own, private setters included as the mapper uses them too. Overrides are seen first and win
+		var seen = new HashSet<String>();
+		for (var current : hierarchy) {
+			for (var method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+				if (method.getModifiers().contains(Modifier.STATIC)) {
+					continue;
+				}
+				var parameters = method.getParameters();
+				var signature = method.getSimpleName() + parameters.stream().map(parameter -> ":" + types.erasure(parameter.asType())).reduce("", String::concat);
+				if (!seen.add(signature)) {
+					continue;
+				}
+				var name = method.getSimpleName().toString();
+				if (parameters.isEmpty() && method.getReturnType().getKind() != TypeKind.VOID && method.getModifiers().contains(Modifier.PUBLIC)) {
+					String property = null;
+					if (name.startsWith("get") && name.length() > 3) {
+						property = mangle(name, 3);
+					} else if (name.startsWith("is") && name.length() > 2) {
+						if (isType(method.getReturnType(), Boolean.class.getName())) {
+							//whether the mapper treats this as a getter depends on its version
+							return null;
+						}
+						if (method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+							property = mangle(name, 2);
+						}
+					}
+					if (property != null) {
+						var match = properties.get(property);
+						if (match == null || match.getter != null || !types.isSameType(method.getReturnType(), match.field.asType()) || !isCallable(method, entityPackage)) {
+							return null;
+						}
+						match.getter = method;
+					}
+				} else if (parameters.size() == 1 && name.startsWith("set") && name.length() > 3) {
+					var match = properties.get(mangle(name, 3));
+					if (match == null || match.setter != null || !types.isSameType(parameters.get(0).asType(), match.field.asType()) || !isCallable(method, entityPackage)) {
+						return null;
+					}
+					match.setter = method;
+				}
+			}
+		}
+		return new ArrayList<>(properties.values());
+	}
+
+	private void interfaces(TypeElement type, List<TypeElement> found) {
+		for (var mirror : type.getInterfaces()) {
+			var element = (TypeElement) ((DeclaredType) mirror).asElement();
+			if (!found.contains(element)) {
+				found.add(element);
+				interfaces(element, found);
+			}
+		}
+	}
+
+	private boolean isSupported(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return PRIMITIVE_READERS.containsKey(type.getKind());
+		}
+		return type.getKind() == TypeKind.DECLARED && READERS.containsKey(qualifiedName(type));
+	}
+
+	private boolean isCallable(ExecutableElement method, PackageElement entityPackage) {
+		var declaring = (TypeElement) method.getEnclosingElement();
+		if (method.getModifiers().contains(Modifier.PUBLIC) && declaring.getModifiers().contains(Modifier.PUBLIC)) {
+			return true;
+		}
+		return !method.getModifiers().contains(Modifier.PRIVATE) && processingEnv.getElementUtils().getPackageOf(declaring).equals(entityPackage);
+	}
+
+	private static boolean hasJackson(Element element) {
+		for (var mirror : element.getAnnotationMirrors()) {
+			var annotation = (TypeElement) mirror.getAnnotationType().asElement();
+			var name = annotation.getQualifiedName().toString();
+			if (name.startsWith(JACKSON) || BEANS.contains(name) || annotation(annotation, JACKSON_BUNDLE) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Same as the mapper's default naming, leading capitals are all lower cased so getURL is url
+	 */
+	private static String mangle(String name, int offset) {
+		var property = new StringBuilder(name.length() - offset);
+		int i = offset;
+		for (; i < name.length(); i++) {
+			var c = name.charAt(i);
+			var lower = Character.toLowerCase(c);
+			if (c == lower) {
+				break;
+			}
+			property.append(lower);
+		}
+		return property.append(name, i, name.length()).toString();
+	}
+
+	private static String declaringType(VariableElement field) {
+		return ((TypeElement) field.getEnclosingElement()).getQualifiedName().toString();
+	}
+
+	/**
+	 * The name to write in the codec, toString would include any type annotations
+	 */
+	private static String typeName(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return type.getKind().name().toLowerCase(Locale.ROOT);
+		}
+		return qualifiedName(type);
+	}
+
+	private static String qualifiedName(TypeMirror type) {
+		return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+	}
+
+	/**
+	 * A field as the mapper sees it, read through its public getter and written through its setter when it has them
+	 */
+	private static final class Property {
+		private final String name;
+		private final VariableElement field;
+		private final String type;
+		private final boolean handle;
+		private ExecutableElement getter;
+		private ExecutableElement setter;
+
+		private Property(String name, VariableElement field, String type, boolean handle) {
+			this.name = name;
+			this.field = field;
+			this.type = type;
+			this.handle = handle;
+		}
+
+		private boolean needsHandle() {
+			return handle && (getter == null || setter == null);
+		}
+
+		private String handleName() {
+			return "FIELD_" + name;
+		}
+
+		private String read() {
+			if (getter != null) {
+				return "entity." + getter.getSimpleName() + "()";
+			}
+			if (needsHandle()) {
+				return "(" + type + ") " + handleName() + ".get(entity)";
+			}
+			return "entity." + name;
+		}
+
+		private String write(String value) {
+			if (setter != null) {
+				return "entity." + setter.getSimpleName() + "(" + value + ")";
+			}
+			if (needsHandle()) {
+				return handleName() + ".set(entity, (" + type + ") " + value + ")";
+			}
+			return "entity." + name + " = " + value;
+		}
+	}
+
+	/**
+	 * Must match how dynamo flattens the binary name when looking the codec up
+	 */
+	private static String codecName(TypeElement type) {
+		var name = new StringBuilder(type.getSimpleName());
+		for (var element = type.getEnclosingElement(); element instanceof TypeElement; element = element.getEnclosingElement()) {
+			name.insert(0, element.getSimpleName() + "_");
+		}
+		return name.append(SUFFIX).toString();
+	}
+
+	/**
+	 * Same lookup as TableCoreUtil, the closest TableName up the hierarchy or the lower case plural of the class name
+	 */
+	private String tableName(TypeElement type) {
+		var elements = processingEnv.getElementUtils();
+		for (var current = type; current != null; current = superclass(current)) {
+			var name = annotation(current, TABLE_NAME);
+			if (name != null) {
+				for (var value : name.getElementValues().entrySet()) {
+					if (value.getKey().getSimpleName().contentEquals("value")) {
+						return elements.getConstantExpression(value.getValue().getValue());
+					}
+				}
+			}
+		}
+		return elements.getConstantExpression(type.getSimpleName().toString()) + ".toLowerCase() + \"s\"";
+	}
+
+	/**
+	 * Like Class.getMethods the first public getter carrying the annotation, unwrapping an optional
+	 */
+	private String indexGetter(TypeElement type, String annotation) {
+		var elements = processingEnv.getElementUtils();
+		var types = processingEnv.getTypeUtils();
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+			if (!method.getModifiers().contains(Modifier.PUBLIC) || !method.getParameters().isEmpty() || annotation(method, annotation) == null) {
+				continue;
+			}
+			var call = "entity." + method.getSimpleName() + "()";
+			var returnType = method.getReturnType();
+			if (isType(returnType, String.class.getName())) {
+				return call;
+			}
+			if (isType(returnType, "java.util.Optional")) {
+				var arguments = ((DeclaredType) returnType).getTypeArguments();
+				if (arguments.size() == 1 && isType(arguments.get(0), String.class.getName())) {
+					return call + ".orElse(null)";
+				}
+			}
+			throw new IllegalArgumentException(method.getSimpleName() + " must return String or Optional<String> to be an index, found " + types.erasure(returnType));
+		}
+		return "null";
+	}
+
+	private boolean isType(TypeMirror type, String name) {
+		if (type.getKind() != TypeKind.DECLARED) {
+			return false;
+		}
+		return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(name);
+	}
+
+	private TypeElement superclass(TypeElement type) {
+		var superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		return (TypeElement) ((DeclaredType) superclass).asElement();
+	}
+
+	private static AnnotationMirror annotation(Element element, String name) {
+		for (var mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+				return mirror;
+			}
+		}
+		return null;
+	}
+}
@@ -53,7 +53,7 @@ final class DynamoDbInitializer {
                         .keyType(KeyType.RANGE)
                         .build()
                 )
-        		.streamSpecification(streamSpecification -> streamSpecification.streamEnabled(true).streamViewType(StreamViewType.NEW_IMAGE))
+        		.streamSpecification(streamSpecification -> streamSpecification.streamEnabled(true).streamViewType(StreamViewType.NEW_AND_OLD_IMAGES))
         		.globalSecondaryIndexes(builder -> builder.indexName("secondaryGlobal").provisionedThroughput(p -> p.readCapacityUnits(10L).writeCapacityUnits(10L)).projection(b -> b.projectionType(ProjectionType.ALL)).keySchema(KeySchemaElement.builder()
                         .attributeName("secondaryGlobal")
                         .keyType(KeyType.HASH)
@@ -108,8 +108,19 @@ final class DynamoDbInitializer {
         				.attributeName("idDate")
         				.keyType(KeyType.RANGE)
         				.build()))
+        		.globalSecondaryIndexes(builder -> builder.indexName("organisationIdUpdatedAt").provisionedThroughput(p -> p.readCapacityUnits(10L).writeCapacityUnits(10L)).projection(b -> b.projectionType(ProjectionType.ALL)).keySchema(
+        				KeySchemaElement.builder()
+        				.attributeName("organisationId")
+        				.keyType(KeyType.HASH)
+        				.build(),
+        				KeySchemaElement.builder()
+        				.attributeName("updatedAt")
+        				.keyType(KeyType.RANGE)
+        				.build()))
         		.attributeDefinitions(
                                 AttributeDefinition.builder().attributeName("organisationIdType").attributeType(ScalarAttributeType.S).build(),
+                                AttributeDefinition.builder().attributeName("organisationId").attributeType(ScalarAttributeType.S).build(),
+                                AttributeDefinition.builder().attributeName("updatedAt").attributeType(ScalarAttributeType.N).build(),
                                 AttributeDefinition.builder().attributeName("idRevision").attributeType(ScalarAttributeType.B).build(),
                                 AttributeDefinition.builder().attributeName("idDate").attributeType(ScalarAttributeType.B).build(),
                                 AttributeDefinition.builder().attributeName("startsWithUpdatedAt").attributeType(ScalarAttributeType.B).build()
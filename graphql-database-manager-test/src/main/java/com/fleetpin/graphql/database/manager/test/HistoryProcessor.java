@@ -1,6 +1,8 @@
 package com.fleetpin.graphql.database.manager.test;
 
 import java.lang.reflect.Parameter;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.fleetpin.graphql.database.dynamo.history.lambda.HistoryLambda;
 import com.fleetpin.graphql.database.manager.test.annotations.DatabaseNames;
@@ -14,6 +16,8 @@ public class HistoryProcessor {
 	private String[] tables;
 	private DynamoDbAsyncClient client;
 	private DynamoDbStreamsAsyncClient streamClient;
+	//like the lambda, records are only handed over once
+	private final Map<String, String> sequenceNumbers = new HashMap<>();
 
 	public HistoryProcessor(DynamoDbAsyncClient client, DynamoDbStreamsAsyncClient streamClient, Parameter parameter,
 			String organisationId) {
@@ -57,10 +61,20 @@ public class HistoryProcessor {
 				var shards = streamClient.describeStream(builder -> builder.streamArn(streamArn).build()).get()
 						.streamDescription().shards();
 		        for (final var shard : shards) {
-		        	var shardIterator = streamClient.getShardIterator(builder -> builder.shardIteratorType(ShardIteratorType.TRIM_HORIZON).streamArn(streamArn).shardId(shard.shardId())).get().shardIterator();
+		        	var sequenceNumber = sequenceNumbers.get(streamArn + shard.shardId());
+		        	var shardIterator = streamClient.getShardIterator(builder -> builder.streamArn(streamArn).shardId(shard.shardId()).applyMutation(mutator -> {
+		        		if (sequenceNumber == null) {
+		        			mutator.shardIteratorType(ShardIteratorType.TRIM_HORIZON);
+		        		} else {
+		        			mutator.shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER).sequenceNumber(sequenceNumber);
+		        		}
+		        	})).get().shardIterator();
 		        	var response = streamClient.getRecords(builder -> builder.shardIterator(shardIterator)).get();
 		        	var processor = new Processor(client, table+"_history");
 		        	processor.process(response.records().stream());
+		        	if (!response.records().isEmpty()) {
+		        		sequenceNumbers.put(streamArn + shard.shardId(), response.records().get(response.records().size() - 1).dynamodb().sequenceNumber());
+		        	}
 		        }				
 			}
 		} catch (Exception e) {
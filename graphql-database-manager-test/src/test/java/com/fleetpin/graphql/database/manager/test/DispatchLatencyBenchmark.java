@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Time to resolve a chain of nested gets, dispatching on demand against a 10ms window which waits as long at every level as the old polling loop did.
+ * Not picked up by {@code mvn test}, run it with {@code mvn test -Dtest=DispatchLatencyBenchmark}.
+ */
+final class DispatchLatencyBenchmark {
+
+	private static final int DEPTH = 20;
+	private static final int ROUNDS = 20;
+
+	@TestDatabase
+	void nestedChainLatency(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException, TimeoutException {
+		final var setup = dynamoDbManager.getDatabase("organisation");
+		final var setupRoot = new CompletableFuture<>();
+		setup.start(setupRoot);
+		final var headId = buildChain(setup);
+		setupRoot.complete(null);
+
+		final var immediate = averageLatency(dynamoDbManager, headId, Duration.ZERO);
+		final var polled = averageLatency(dynamoDbManager, headId, Duration.ofMillis(10));
+
+		System.out.println("depth " + DEPTH + " on demand: " + TimeUnit.NANOSECONDS.toMicros(immediate) + "us");
+		System.out.println("depth " + DEPTH + " 10ms window: " + TimeUnit.NANOSECONDS.toMicros(polled) + "us");
+	}
+
+	private long averageLatency(final DynamoDbManager dynamoDbManager, final String headId, final Duration window) throws InterruptedException, ExecutionException, TimeoutException {
+		final var manager = DynamoDbManager.builder()
+				.dynamoDbAsyncClient(dynamoDbManager.getDynamoDbAsyncClient())
+				.tables("table")
+				.batchWindow(window)
+				.build();
+
+		//warm up
+		resolve(manager, headId);
+
+		long total = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			total += resolve(manager, headId);
+		}
+		return total / ROUNDS;
+	}
+
+	private long resolve(final DynamoDbManager manager, final String headId) throws InterruptedException, ExecutionException, TimeoutException {
+		final var db = manager.getDatabase("organisation");
+		final var root = new CompletableFuture<>();
+		db.start(root);
+		final long start = System.nanoTime();
+		final var tail = followChain(db, headId).get(10, TimeUnit.SECONDS);
+		final long took = System.nanoTime() - start;
+		root.complete(null);
+		Assertions.assertEquals(DEPTH - 1, tail.getDepth());
+		return took;
+	}
+
+	private String buildChain(final Database db) throws InterruptedException, ExecutionException {
+		String next = null;
+		for (int i = DEPTH - 1; i >= 0; i--) {
+			next = db.put(new Node(i, next)).get().getId();
+		}
+		return next;
+	}
+
+	private CompletableFuture<Node> followChain(final Database db, final String id) {
+		return db.get(Node.class, id).thenCompose(node -> {
+			if (node.getNext() == null) {
+				return CompletableFuture.completedFuture(node);
+			}
+			return followChain(db, node.getNext());
+		});
+	}
+
+	static class Node extends Table {
+		private int depth;
+		private String next;
+
+		public Node() {
+		}
+
+		public Node(int depth, String next) {
+			this.depth = depth;
+			this.next = next;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public String getNext() {
+			return next;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.AdaptiveDynamoDbAsyncClient;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class DynamoDbAdaptiveThrottlingTest {
+
+	@TestDatabase
+	void testThrottledPutRetried(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var throttles = new AtomicInteger(3);
+		final var client = AdaptiveDynamoDbAsyncClient.builder().maxInFlight(8).build(new ThrottlingClient(dynamoDbManager.getDynamoDbAsyncClient(), throttles));
+		final var db = database(DynamoDbManager.builder().dynamoDbAsyncClient(client).tables("table").build());
+
+		final var entry = db.put(new SimpleTable("garry")).get();
+
+		Assertions.assertEquals(0, throttles.get());
+		Assertions.assertEquals(3, client.getThrottledCount());
+		Assertions.assertTrue(client.getLimit("table", null) < 8);
+		Assertions.assertEquals("garry", db.get(SimpleTable.class, entry.getId()).get().getName());
+	}
+
+	@TestDatabase
+	void testWriteCapacity(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = database(DynamoDbManager.builder()
+				.dynamoDbAsyncClient(dynamoDbManager.getDynamoDbAsyncClient())
+				.tables("table")
+				.adaptiveThrottling(AdaptiveDynamoDbAsyncClient.builder().writeCapacity("table", 10))
+				.build());
+
+		//a second of capacity is free up front, the rest comes at ten a second
+		final long start = System.nanoTime();
+		for (int i = 0; i < 25; i++) {
+			db.put(new SimpleTable("entry" + i)).get();
+		}
+		final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+		Assertions.assertTrue(elapsedMillis >= 1000, "took " + elapsedMillis + "ms");
+		Assertions.assertEquals(25, db.query(SimpleTable.class).get().size());
+	}
+
+	private Database database(final DynamoDbManager manager) {
+		final var db = manager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		return db;
+	}
+
+	/**
+	 * Throttles the first few puts then passes everything through
+	 */
+	private static final class ThrottlingClient implements DynamoDbAsyncClient {
+		private final DynamoDbAsyncClient client;
+		private final AtomicInteger throttles;
+
+		private ThrottlingClient(DynamoDbAsyncClient client, AtomicInteger throttles) {
+			this.client = client;
+			this.throttles = throttles;
+		}
+
+		@Override
+		public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+			if (throttles.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+				return CompletableFuture.failedFuture(ProvisionedThroughputExceededException.builder().message("throttled").build());
+			}
+			return client.putItem(request);
+		}
+
+		@Override
+		public CompletableFuture<BatchGetItemResponse> batchGetItem(BatchGetItemRequest request) {
+			return client.batchGetItem(request);
+		}
+
+		@Override
+		public String serviceName() {
+			return client.serviceName();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -16,6 +16,7 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.RestoreOptionsBuilder;
 import com.fleetpin.graphql.database.manager.Table;
 import com.fleetpin.graphql.database.manager.annotations.GlobalIndex;
 import com.fleetpin.graphql.database.manager.annotations.SecondaryIndex;
@@ -28,11 +29,21 @@ import com.fleetpin.graphql.database.manager.util.BackupItem;
 import org.junit.jupiter.api.Assertions;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
 
 final class DynamoDbBackupTest {
 
@@ -70,6 +81,125 @@ final class DynamoDbBackupTest {
 	}
 
 
+	@TestDatabase
+	void testStreamBackup(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException, IOException {
+		final var db0 = dynamoDbManager.getDatabase("organisation-0");
+		db0.start(new CompletableFuture<>());
+
+		final var drinks = new ArrayList<Drink>();
+		for (int i = 0; i < 40; i++) {
+			drinks.add(new Drink("drink" + i, i % 2 == 0));
+		}
+		db0.putAll(drinks, false).get();
+		db0.put(new SimpleTable("avocado", "fruit")).get();
+
+		final var out = new ByteArrayOutputStream();
+		Assertions.assertEquals(41L, (long) db0.backup("organisation-0", out).get());
+		final var lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+		Assertions.assertEquals(41, lines.length);
+
+		final var items = new ArrayList<BackupItem>();
+		for (final var line : lines) {
+			final var item = dynamoDbManager.getMapper().readValue(line, DynamoBackupItem.class);
+			Assertions.assertEquals("organisation-0", item.getOrganisationId());
+			items.add(item);
+		}
+
+		final var zipped = new ByteArrayOutputStream();
+		Assertions.assertEquals(41L, (long) db0.backup("organisation-0", zipped, true).get());
+		try (final var reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(zipped.toByteArray())), StandardCharsets.UTF_8))) {
+			Assertions.assertEquals(41, reader.lines().count());
+		}
+
+		db0.destroyOrganisation("organisation-0").get();
+		Assertions.assertEquals(0, db0.query(Drink.class).get().size());
+
+		db0.restoreBackup(items).get();
+		Assertions.assertEquals(40, db0.query(Drink.class).get().size());
+		Assertions.assertEquals("avocado", db0.query(SimpleTable.class).get().get(0).getName());
+	}
+
+	@TestDatabase
+	void testBackupWritesOnBackupThreads(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
+		final var db0 = dynamoDbManager.getDatabase("organisation-0");
+		db0.start(new CompletableFuture<>());
+		db0.put(new Drink("beer", true)).get();
+
+		final var threads = Collections.synchronizedSet(new HashSet<String>());
+		final var out = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				threads.add(Thread.currentThread().getName());
+				super.write(b, off, len);
+			}
+
+			@Override
+			public synchronized void write(int b) {
+				threads.add(Thread.currentThread().getName());
+				super.write(b);
+			}
+		};
+		Assertions.assertEquals(1L, (long) db0.backup("organisation-0", out).get());
+		Assertions.assertFalse(threads.isEmpty());
+		for (final var thread : threads) {
+			Assertions.assertTrue(thread.startsWith("dynamo-backup-"), thread);
+		}
+	}
+
+	@TestDatabase
+	void testStreamRestore(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
+		final var db0 = dynamoDbManager.getDatabase("organisation-0");
+		final var db1 = dynamoDbManager.getDatabase("organisation-1");
+		db0.start(new CompletableFuture<>());
+		db1.start(new CompletableFuture<>());
+
+		final var drinks = new ArrayList<Drink>();
+		for (int i = 0; i < 60; i++) {
+			drinks.add(new Drink("drink" + i, i % 2 == 0));
+		}
+		db0.putAll(drinks, false).get();
+		final var beer = db0.put(db0.put(new Drink("beer", true)).get()).get();
+
+		final var out = new ByteArrayOutputStream();
+		Assertions.assertEquals(61L, (long) db0.backup("organisation-0", out, true).get());
+
+		final var progress = new ArrayList<Long>();
+		final var options = RestoreOptionsBuilder.create().organisationId("organisation-1").writers(3).build();
+		Assertions.assertEquals(61L, (long) db1.restore(new ByteArrayInputStream(out.toByteArray()), options, (completed, total) -> {
+			synchronized (progress) {
+				progress.add(completed);
+			}
+		}).get());
+		Assertions.assertEquals(61L, (long) Collections.max(progress));
+
+		Assertions.assertEquals(61, db1.query(Drink.class).get().size());
+		final var restored = db1.get(Drink.class, beer.getId()).get();
+		Assertions.assertEquals("beer", restored.getName());
+		Assertions.assertEquals(2, restored.getRevision());
+		Assertions.assertEquals(beer.getCreatedAt(), restored.getCreatedAt());
+		Assertions.assertEquals(61, db0.query(Drink.class).get().size());
+
+		final var fresh = RestoreOptionsBuilder.create().organisationId("organisation-2").keepRevisions(false).keepTimestamps(false).build();
+		final var db2 = dynamoDbManager.getDatabase("organisation-2");
+		db2.start(new CompletableFuture<>());
+		Assertions.assertEquals(61L, (long) db2.restore(new ByteArrayInputStream(out.toByteArray()), fresh).get());
+		final var reset = db2.get(Drink.class, beer.getId()).get();
+		Assertions.assertEquals(1, reset.getRevision());
+		Assertions.assertTrue(reset.getCreatedAt().isAfter(beer.getCreatedAt()));
+	}
+
+	@TestDatabase
+	void testRestoreBadStreamFails(final DynamoDbManager dynamoDbManager) {
+		final var db0 = dynamoDbManager.getDatabase("organisation-0");
+		db0.start(new CompletableFuture<>());
+
+		//a truncated gzip header and a line that is not an item both fail the future rather than throwing
+		final var truncated = db0.restore(new ByteArrayInputStream(new byte[] {0x1f, (byte) 0x8b}));
+		Assertions.assertThrows(ExecutionException.class, truncated::get);
+		final var invalid = db0.restore(new ByteArrayInputStream("not an item\n".getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertThrows(ExecutionException.class, invalid::get);
+	}
+
 	@TestDatabase
 	void testRestoreBackup(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
 		final String DRINK_ID = "1234";
@@ -121,6 +251,35 @@ final class DynamoDbBackupTest {
 
 	}
 
+	@TestDatabase
+	void testRestoreBackupProgress(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
+		final var db0 = dynamoDbManager.getDatabase("organisation-0");
+		db0.start(new CompletableFuture<>());
+
+		final var backup = new ArrayList<BackupItem>();
+		for (int i = 0; i < 60; i++) {
+			Map<String, AttributeValue> attributes = new HashMap<>();
+			attributes.put("organisationId", AttributeValue.builder().s("organisation-0").build());
+			attributes.put("id", AttributeValue.builder().s("drinks:" + i).build());
+			Map<String, AttributeValue> items = new HashMap<>();
+			items.put("name", AttributeValue.builder().s("drink" + i).build());
+			items.put("alcoholic", AttributeValue.builder().bool(false).build());
+			items.put("id", AttributeValue.builder().s("drinks:" + i).build());
+			attributes.put("item", AttributeValue.builder().m(items).build());
+			backup.add(new DynamoBackupItem("table", attributes, mapper));
+		}
+
+		final var progress = Collections.synchronizedList(new ArrayList<Long>());
+		db0.restoreBackup(backup, (completed, total) -> {
+			Assertions.assertEquals(60, total);
+			progress.add(completed);
+		}).get();
+
+		Assertions.assertEquals(3, progress.size());
+		Assertions.assertEquals(60L, (long) Collections.max(progress));
+		Assertions.assertEquals(60, db0.query(Drink.class).get().size());
+	}
+
 	@TestDatabase
 	void testDestroyOrganisation(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
 		final var db0 = dynamoDbManager.getDatabase("organisation-0");
@@ -142,6 +301,28 @@ final class DynamoDbBackupTest {
 
 	}
 
+	@TestDatabase
+	void testDestroyOrganisationCounts(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
+		final var db0 = dynamoDbManager.getDatabase("organisation-0");
+		final var db1 = dynamoDbManager.getDatabase("organisation-1");
+		db0.start(new CompletableFuture<>());
+		db1.start(new CompletableFuture<>());
+
+		final var drinks = new ArrayList<Drink>();
+		for (int i = 0; i < 120; i++) {
+			drinks.add(new Drink("drink" + i, false));
+		}
+		db0.putAll(drinks, false).get();
+		db1.put(new Drink("Water", false)).get();
+
+		var counts = db0.destroyOrganisationCounts("organisation-0").get();
+		Assertions.assertEquals(Map.of("table", 120L), counts);
+		Assertions.assertEquals(0, db0.query(Drink.class).get().size());
+		Assertions.assertEquals(1, db1.query(Drink.class).get().size());
+
+		Assertions.assertEquals(false, db0.destroyOrganisation("organisation-0").get());
+	}
+
 	@TestDatabase
 	void testDeleteItems(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
 		final var db0 = dynamoDbManager.getDatabase("organisation-0");
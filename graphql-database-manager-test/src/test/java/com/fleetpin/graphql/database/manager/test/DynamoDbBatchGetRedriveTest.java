@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDb;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class DynamoDbBatchGetRedriveTest {
+
+	@TestDatabase
+	void testUnprocessedKeysRedriven(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var client = new PartialClient(dynamoDbManager.getDynamoDbAsyncClient(), new AtomicInteger(2));
+		final var driver = new DynamoDb(dynamoDbManager.getMapper(), List.of("table"), null, client, () -> UUID.randomUUID().toString());
+		final var manager = DynamoDbManager.builder().dynamoDbAsyncClient(client).tables("table").dynamoDb(driver).build();
+
+		final var db = database(manager);
+		final var entries = new ArrayList<SimpleTable>();
+		for (int i = 0; i < 6; i++) {
+			entries.add(db.put(new SimpleTable("entry" + i)).get());
+		}
+
+		final var fresh = database(manager);
+		final var futures = entries.stream().map(entry -> fresh.get(SimpleTable.class, entry.getId())).toArray(CompletableFuture[]::new);
+		for (int i = 0; i < futures.length; i++) {
+			final var found = (SimpleTable) futures[i].get();
+			Assertions.assertNotNull(found);
+			Assertions.assertEquals("entry" + i, found.getName());
+		}
+
+		Assertions.assertTrue(driver.getBatchGetRedrives() >= 1);
+		Assertions.assertTrue(driver.getBatchGetRedrivenKeys() > 0);
+	}
+
+	private Database database(final DynamoDbManager manager) {
+		final var db = manager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		return db;
+	}
+
+	/**
+	 * Sends only the first key of the first few batch gets, leaving the rest unprocessed like a throttled table would
+	 */
+	private static final class PartialClient implements DynamoDbAsyncClient {
+		private final DynamoDbAsyncClient client;
+		private final AtomicInteger partial;
+
+		private PartialClient(DynamoDbAsyncClient client, AtomicInteger partial) {
+			this.client = client;
+			this.partial = partial;
+		}
+
+		@Override
+		public CompletableFuture<BatchGetItemResponse> batchGetItem(BatchGetItemRequest request) {
+			if (partial.getAndDecrement() <= 0) {
+				return client.batchGetItem(request);
+			}
+			final var send = new HashMap<String, KeysAndAttributes>();
+			final var unprocessed = new HashMap<String, KeysAndAttributes>();
+			request.requestItems().forEach((table, keys) -> {
+				final List<Map<String, AttributeValue>> all = keys.keys();
+				send.put(table, keys.toBuilder().keys(all.subList(0, 1)).build());
+				if (all.size() > 1) {
+					unprocessed.put(table, keys.toBuilder().keys(all.subList(1, all.size())).build());
+				}
+			});
+			return client.batchGetItem(request.toBuilder().requestItems(send).build()).thenApply(response -> response.toBuilder().unprocessedKeys(unprocessed).build());
+		}
+
+		@Override
+		public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+			return client.putItem(request);
+		}
+
+		@Override
+		public String serviceName() {
+			return client.serviceName();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.dynamo.EntityAttributes;
+import com.fleetpin.graphql.database.manager.dynamo.EntityCodec;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+final class DynamoDbConvertTest {
+
+	@TestDatabase
+	void testLongsAreExact(final DynamoDbManager dynamoDbManager) {
+		final var item = Map.of(
+			"big", AttributeValue.builder().n("9007199254740993").build(),
+			"amount", AttributeValue.builder().n("12345678901234567890.123456789").build(),
+			"ratio", AttributeValue.builder().n("0.25").build(),
+			"count", AttributeValue.builder().n("7").build());
+		final var converted = dynamoDbManager.convertTo(item, Numbers.class);
+		Assertions.assertEquals(9007199254740993L, converted.big);
+		Assertions.assertEquals(new BigDecimal("12345678901234567890.123456789"), converted.amount);
+		Assertions.assertEquals(0.25, converted.ratio);
+		Assertions.assertEquals(7, converted.count);
+
+		final var tree = dynamoDbManager.convertTo(item, JsonNode.class);
+		Assertions.assertTrue(tree.get("big").isIntegralNumber());
+		Assertions.assertEquals("7", tree.get("count").asText());
+	}
+
+	@TestDatabase
+	void testShapes(final DynamoDbManager dynamoDbManager) {
+		final var item = Map.of(
+			"bytes", AttributeValue.builder().b(SdkBytes.fromByteArray(new byte[] {1, 2, 3})).build(),
+			"tags", AttributeValue.builder().ss("a", "b").build(),
+			"nested", AttributeValue.builder().l(AttributeValue.builder().m(Map.of("name", AttributeValue.builder().s("inner").build())).build()).build(),
+			"empty", AttributeValue.builder().m(Map.of()).build(),
+			"missing", AttributeValue.builder().nul(true).build(),
+			"flag", AttributeValue.builder().bool(true).build());
+		final var converted = dynamoDbManager.convertTo(item, Shapes.class);
+		Assertions.assertArrayEquals(new byte[] {1, 2, 3}, converted.bytes);
+		Assertions.assertEquals(Set.of("a", "b"), converted.tags);
+		Assertions.assertEquals("inner", converted.nested.get(0).get("name"));
+		Assertions.assertNull(converted.empty);
+		Assertions.assertTrue(converted.missing.isEmpty());
+		Assertions.assertTrue(converted.flag);
+	}
+
+	@TestDatabase
+	void testEntityRoundTrip(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+
+		final var entity = new Entity("name", Long.MAX_VALUE - 1, List.of(Instant.ofEpochMilli(1234)));
+		final var id = db.put(entity).get().getId();
+
+		final var fresh = dynamoDbManager.getDatabase("organisation");
+		fresh.start(new CompletableFuture<>());
+		final var loaded = fresh.get(Entity.class, id).get();
+		Assertions.assertEquals("name", loaded.name);
+		Assertions.assertEquals(Long.MAX_VALUE - 1, loaded.large);
+		Assertions.assertEquals(List.of(Instant.ofEpochMilli(1234)), loaded.times);
+		Assertions.assertEquals(1, loaded.getRevision());
+	}
+
+	@TestDatabase
+	void testWriteAttributes(final DynamoDbManager dynamoDbManager) {
+		final var shapes = new Shapes();
+		shapes.bytes = new byte[] {4, 5};
+		shapes.tags = Set.of("a");
+		shapes.nested = List.of(Map.of("name", "inner", "blank", ""));
+		shapes.missing = Optional.empty();
+		shapes.flag = true;
+		final var item = dynamoDbManager.toAttributes(shapes).m();
+
+		Assertions.assertArrayEquals(new byte[] {4, 5}, item.get("bytes").b().asByteArray());
+		Assertions.assertEquals(List.of(AttributeValue.builder().s("a").build()), item.get("tags").l());
+		final var nested = item.get("nested").l().get(0).m();
+		Assertions.assertEquals("inner", nested.get("name").s());
+		Assertions.assertFalse(nested.containsKey("blank"));
+		Assertions.assertTrue(item.get("missing").nul());
+		Assertions.assertTrue(item.get("empty").nul());
+		Assertions.assertTrue(item.get("flag").bool());
+
+		final var numbers = new Numbers();
+		numbers.big = 9007199254740993L;
+		numbers.amount = new BigDecimal("12345678901234567890.123456789");
+		numbers.ratio = 0.25;
+		final var written = dynamoDbManager.toAttributes(numbers).m();
+		Assertions.assertEquals("9007199254740993", written.get("big").n());
+		Assertions.assertEquals("12345678901234567890.123456789", written.get("amount").n());
+		Assertions.assertEquals("0.25", written.get("ratio").n());
+		Assertions.assertEquals("0", written.get("count").n());
+
+		final var entity = new Entity("", 1, List.of());
+		final var entityItem = dynamoDbManager.toAttributes(entity).m();
+		Assertions.assertFalse(entityItem.containsKey("name"));
+		Assertions.assertEquals(List.of(), entityItem.get("times").l());
+	}
+
+	@TestDatabase
+	void testGeneratedFieldsMatchMapper(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException {
+		final var codec = EntityCodec.of(Plain.class);
+		Assertions.assertEquals("DynamoDbConvertTest_Plain_EntityCodec", codec.getClass().getSimpleName());
+		Assertions.assertTrue(EntityAttributes.convertsFields(dynamoDbManager.getMapper()));
+
+		final var plain = new Plain("name", 3, null, Instant.ofEpochMilli(1234));
+		plain.blank = "";
+		final var item = codec.toAttributes(dynamoDbManager.getMapper(), plain);
+		Assertions.assertEquals(dynamoDbManager.toAttributes(plain).m(), item);
+
+		final var read = codec.fromAttributes(dynamoDbManager.getMapper(), item);
+		Assertions.assertEquals("name", read.getName());
+		Assertions.assertEquals(3, read.count);
+		Assertions.assertNull(read.active);
+		Assertions.assertEquals(Instant.ofEpochMilli(1234), read.seen);
+
+		//a shape the generated code does not read is left to the mapper to coerce
+		final var coerced = new HashMap<>(item);
+		coerced.put("count", AttributeValue.builder().s("5").build());
+		Assertions.assertEquals(5, codec.fromAttributes(dynamoDbManager.getMapper(), coerced).count);
+
+		final var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		final var id = db.put(plain).get().getId();
+		final var fresh = dynamoDbManager.getDatabase("organisation");
+		fresh.start(new CompletableFuture<>());
+		final var loaded = fresh.get(Plain.class, id).get();
+		Assertions.assertEquals("name", loaded.getName());
+		Assertions.assertEquals(Instant.ofEpochMilli(1234), loaded.seen);
+		Assertions.assertEquals(1, loaded.getRevision());
+	}
+
+	static class Numbers {
+		long big;
+		BigDecimal amount;
+		double ratio;
+		int count;
+	}
+
+	static class Shapes {
+		byte[] bytes;
+		Set<String> tags;
+		List<Map<String, String>> nested;
+		Map<String, String> empty;
+		Optional<String> missing;
+		boolean flag;
+	}
+
+	static class Entity extends Table {
+		private String name;
+		private long large;
+		private List<Instant> times;
+
+		public Entity() {
+		}
+
+		public Entity(String name, long large, List<Instant> times) {
+			this.name = name;
+			this.large = large;
+			this.times = times;
+		}
+	}
+
+	static class Plain extends Table {
+		private String name;
+		private int count;
+		private Boolean active;
+		private Instant seen;
+		private String blank;
+
+		public Plain() {
+		}
+
+		public Plain(String name, int count, Boolean active, Instant seen) {
+			this.name = name;
+			this.count = count;
+			this.active = active;
+			this.seen = seen;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.RevisionMismatchException;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.WriteResult;
+import com.fleetpin.graphql.database.manager.test.annotations.DatabaseNames;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+final class DynamoDbDeleteAllTest {
+
+	@TestDatabase
+	void testDeleteType(final Database db) throws InterruptedException, ExecutionException {
+		var entities = new ArrayList<SimpleTable>();
+		for (int i = 0; i < 60; i++) {
+			entities.add(new SimpleTable("name" + i));
+		}
+		db.putAll(entities, false).get();
+		var other = db.put(new AnotherTable("other")).get();
+
+		Assertions.assertEquals(60, db.query(SimpleTable.class).get().size());
+		db.deleteAll(SimpleTable.class).get();
+
+		Assertions.assertTrue(db.query(SimpleTable.class).get().isEmpty());
+		Assertions.assertNull(db.get(SimpleTable.class, entities.get(0).getId()).get());
+		Assertions.assertEquals("other", db.get(AnotherTable.class, other.getId()).get().getName());
+	}
+
+	@TestDatabase
+	void testDeleteTypeClimbing(@DatabaseNames({"prod", "stage"}) final Database db, @DatabaseNames("prod") final Database dbProd) throws InterruptedException, ExecutionException {
+		var fromProd = dbProd.put(new SimpleTable("prod")).get();
+		var fromStage = db.put(new SimpleTable("stage")).get();
+
+		var overridden = db.get(SimpleTable.class, fromProd.getId()).get();
+		overridden.name = "overridden";
+		db.put(overridden).get();
+
+		Assertions.assertEquals(2, db.query(SimpleTable.class).get().size());
+		db.deleteAll(SimpleTable.class).get();
+
+		Assertions.assertTrue(db.query(SimpleTable.class).get().isEmpty());
+		Assertions.assertNull(db.get(SimpleTable.class, fromStage.getId()).get());
+		Assertions.assertNull(db.get(SimpleTable.class, fromProd.getId()).get());
+		Assertions.assertEquals("prod", dbProd.get(SimpleTable.class, fromProd.getId()).get().getName());
+	}
+
+	@TestDatabase
+	void testDeleteCollectionChecked(final Database db) throws InterruptedException, ExecutionException {
+		var entities = new ArrayList<SimpleTable>();
+		for (int i = 0; i < 20; i++) {
+			entities.add(new SimpleTable("name" + i));
+		}
+		db.putAll(entities, true).get();
+
+		var stale = new SimpleTable("stale");
+		stale.setId(entities.get(5).getId());
+		stale.setRevision(0);
+		var toDelete = new ArrayList<SimpleTable>(entities);
+		toDelete.set(5, stale);
+
+		var results = db.deleteAll(toDelete).get();
+		Assertions.assertEquals(20, results.size());
+		Assertions.assertTrue(results.get(5).isRevisionMismatch());
+		Assertions.assertTrue(results.get(5).getFailure() instanceof RevisionMismatchException);
+		Assertions.assertEquals(19, results.stream().filter(WriteResult::isSuccess).count());
+
+		var remaining = db.query(SimpleTable.class).get();
+		Assertions.assertEquals(1, remaining.size());
+		Assertions.assertEquals("name5", remaining.get(0).getName());
+	}
+
+	@TestDatabase
+	void testDeleteCollectionUnchecked(final Database db) throws InterruptedException, ExecutionException {
+		var entities = new ArrayList<SimpleTable>();
+		for (int i = 0; i < 30; i++) {
+			entities.add(new SimpleTable("name" + i));
+		}
+		db.putAll(entities, false).get();
+
+		var linked = db.put(new AnotherTable("linked")).get();
+		db.link(linked, SimpleTable.class, entities.get(0).getId()).get();
+		linked = db.get(AnotherTable.class, linked.getId()).get();
+
+		var stale = new SimpleTable("stale");
+		stale.setId(entities.get(1).getId());
+		var toDelete = new ArrayList<SimpleTable>(entities.subList(1, 30));
+		toDelete.set(0, stale);
+
+		var results = db.deleteAll(toDelete, false).get();
+		Assertions.assertTrue(results.stream().allMatch(WriteResult::isSuccess));
+
+		var remaining = db.query(SimpleTable.class).get();
+		Assertions.assertEquals(1, remaining.size());
+		Assertions.assertEquals(entities.get(0).getId(), remaining.get(0).getId());
+
+		List<WriteResult<AnotherTable>> linkedResults = db.deleteAll(List.of(linked), false).get();
+		Assertions.assertFalse(linkedResults.get(0).isSuccess());
+		Assertions.assertNotNull(db.get(AnotherTable.class, linked.getId()).get());
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class AnotherTable extends Table {
+		private String name;
+
+		public AnotherTable() {
+		}
+
+		public AnotherTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
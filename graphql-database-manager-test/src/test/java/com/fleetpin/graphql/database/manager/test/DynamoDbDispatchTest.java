@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+final class DynamoDbDispatchTest {
+
+	private static final int DEPTH = 20;
+
+	@TestDatabase
+	void testNestedChain(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException, TimeoutException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		final var root = new CompletableFuture<>();
+		db.start(root);
+
+		final var headId = buildChain(db);
+
+		final var tail = followChain(db, headId, 0).get(10, TimeUnit.SECONDS);
+		Assertions.assertEquals(DEPTH - 1, tail.getDepth());
+		root.complete(null);
+	}
+
+	@TestDatabase
+	void testStopsWithRoot(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException, TimeoutException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		final var root = new CompletableFuture<>();
+		db.start(root);
+		final var entry = db.put(new Node(0, null)).get();
+		root.complete(null);
+
+		//nothing dispatches once the request is complete
+		final var pending = db.get(Node.class, entry.getId());
+		Thread.sleep(50);
+		Assertions.assertFalse(pending.isDone());
+	}
+
+	private String buildChain(final Database db) throws InterruptedException, ExecutionException {
+		String next = null;
+		for (int i = DEPTH - 1; i >= 0; i--) {
+			next = db.put(new Node(i, next)).get().getId();
+		}
+		return next;
+	}
+
+	private CompletableFuture<Node> followChain(final Database db, final String id, final int depth) {
+		return db.get(Node.class, id).thenCompose(node -> {
+			Assertions.assertEquals(depth, node.getDepth());
+			if (node.getNext() == null) {
+				return CompletableFuture.completedFuture(node);
+			}
+			return followChain(db, node.getNext(), depth + 1);
+		});
+	}
+
+	static class Node extends Table {
+		private int depth;
+		private String next;
+
+		public Node() {
+		}
+
+		public Node(int depth, String next) {
+			this.depth = depth;
+			this.next = next;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public String getNext() {
+			return next;
+		}
+	}
+}
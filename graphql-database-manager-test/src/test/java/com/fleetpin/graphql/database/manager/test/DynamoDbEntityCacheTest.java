@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.dynamo.EntityCache;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+final class DynamoDbEntityCacheTest {
+
+	@TestDatabase
+	void testSharedBetweenDatabases(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var cache = EntityCache.builder().build();
+		final var manager = cachedManager(dynamoDbManager, cache);
+
+		final var db = database(manager);
+		final var entry = db.put(new SimpleTable("garry")).get();
+
+		Assertions.assertEquals("garry", db.get(SimpleTable.class, entry.getId()).get().getName());
+		Assertions.assertEquals(0, cache.getHitCount());
+		Assertions.assertEquals(1, cache.getMissCount());
+
+		final var db2 = database(manager);
+		final var fromCache = db2.get(SimpleTable.class, entry.getId()).get();
+		Assertions.assertEquals("garry", fromCache.getName());
+		Assertions.assertEquals(1, fromCache.getRevision());
+		Assertions.assertEquals(1, cache.getHitCount(SimpleTable.class));
+
+		//hits are converted each time so changes do not leak between requests
+		fromCache.name = "changed";
+		Assertions.assertEquals("garry", database(manager).get(SimpleTable.class, entry.getId()).get().getName());
+	}
+
+	@TestDatabase
+	void testWritesInvalidate(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var cache = EntityCache.builder().build();
+		final var manager = cachedManager(dynamoDbManager, cache);
+
+		var entry = database(manager).put(new SimpleTable("garry")).get();
+		database(manager).get(SimpleTable.class, entry.getId()).get();
+
+		entry = database(manager).get(SimpleTable.class, entry.getId()).get();
+		entry.name = "bob";
+		database(manager).put(entry).get();
+
+		entry = database(manager).get(SimpleTable.class, entry.getId()).get();
+		Assertions.assertEquals("bob", entry.getName());
+		Assertions.assertEquals(2, entry.getRevision());
+
+		database(manager).delete(entry, false).get();
+		Assertions.assertNull(database(manager).get(SimpleTable.class, entry.getId()).get());
+	}
+
+	@TestDatabase
+	void testLinkInvalidatesTarget(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var cache = EntityCache.builder().build();
+		final var manager = cachedManager(dynamoDbManager, cache);
+
+		final var garry = database(manager).put(new SimpleTable("garry")).get();
+		var john = database(manager).put(new AnotherTable("john")).get();
+		database(manager).get(AnotherTable.class, john.getId()).get();
+
+		database(manager).link(garry, AnotherTable.class, john.getId()).get();
+
+		john = database(manager).get(AnotherTable.class, john.getId()).get();
+		final var db = database(manager);
+		Assertions.assertEquals("garry", db.getLink(john, SimpleTable.class).get().getName());
+	}
+
+	@TestDatabase
+	void testTypeDisabled(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var cache = EntityCache.builder().type(SimpleTable.class, 0, Duration.ofMinutes(1)).build();
+		final var manager = cachedManager(dynamoDbManager, cache);
+
+		final var entry = database(manager).put(new SimpleTable("garry")).get();
+		database(manager).get(SimpleTable.class, entry.getId()).get();
+		database(manager).get(SimpleTable.class, entry.getId()).get();
+
+		Assertions.assertEquals(0, cache.getHitCount());
+		Assertions.assertEquals(2, cache.getMissCount());
+	}
+
+	private DynamoDbManager cachedManager(final DynamoDbManager dynamoDbManager, final EntityCache cache) {
+		return DynamoDbManager.builder()
+				.dynamoDbAsyncClient(dynamoDbManager.getDynamoDbAsyncClient())
+				.tables("table")
+				.entityCache(cache)
+				.build();
+	}
+
+	private Database database(final DynamoDbManager manager) {
+		final var db = manager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		return db;
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class AnotherTable extends Table {
+		private String name;
+
+		public AnotherTable() {
+		}
+
+		public AnotherTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.dynamo.FanOutScheduler;
+import com.fleetpin.graphql.database.manager.dynamo.FanOutScheduler.Operation;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+final class DynamoDbFanOutTest {
+
+	@TestDatabase
+	void testDeleteLinksBounded(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var scheduler = FanOutScheduler.builder().maxInFlight(Operation.UPDATE_ITEM, 2).build();
+		final var db = database(manager(dynamoDbManager, scheduler));
+
+		var group = db.put(new Group("group")).get();
+		var devices = new ArrayList<Device>();
+		for (int i = 0; i < 30; i++) {
+			devices.add(db.put(new Device("device" + i)).get());
+		}
+		List<String> ids = devices.stream().map(Device::getId).collect(Collectors.toList());
+		group = db.links(group, Device.class, ids).get();
+		Assertions.assertEquals(30, scheduler.getStarted("table", Operation.UPDATE_ITEM));
+
+		db.deleteLinks(group).get();
+
+		Assertions.assertEquals(0, scheduler.getQueueDepth());
+		Assertions.assertEquals(0, scheduler.getInFlight("table", Operation.UPDATE_ITEM));
+		Assertions.assertEquals(60, scheduler.getStarted("table", Operation.UPDATE_ITEM));
+		Assertions.assertTrue(scheduler.getMaxWait("table", Operation.UPDATE_ITEM).compareTo(scheduler.getTotalWait("table", Operation.UPDATE_ITEM)) <= 0);
+
+		for (var device : devices) {
+			Assertions.assertTrue(db.getLinkIds(db.get(Device.class, device.getId()).get(), Group.class).isEmpty());
+		}
+	}
+
+	@TestDatabase
+	void testSharedBetweenManagers(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var scheduler = FanOutScheduler.builder().maxInFlight(1).build();
+		final var first = database(manager(dynamoDbManager, scheduler));
+		final var second = database(manager(dynamoDbManager, scheduler));
+
+		var entry = first.put(new Device("first")).get();
+		first.delete(entry, false).get();
+		entry = second.put(new Device("second")).get();
+		second.delete(entry, false).get();
+
+		Assertions.assertEquals(2, scheduler.getStarted("table", Operation.DELETE_ITEM));
+		Assertions.assertEquals(0, scheduler.getQueueDepth("table", Operation.DELETE_ITEM));
+	}
+
+	@TestDatabase
+	void testQueueOfCompletedWritesDoesNotRecurse(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException, TimeoutException {
+		final var group = database(dynamoDbManager).put(new Group("group")).get();
+
+		//the second update is held so the rest queue behind it, once let go every queued update completes as soon as it is sent
+		final var calls = new AtomicInteger();
+		final var held = new CompletableFuture<UpdateItemResponse>();
+		final var response = UpdateItemResponse.builder().attributes(Map.of("revision", AttributeValue.builder().n("2").build())).build();
+		final var real = dynamoDbManager.getDynamoDbAsyncClient();
+		final var client = (DynamoDbAsyncClient) Proxy.newProxyInstance(DynamoDbAsyncClient.class.getClassLoader(), new Class<?>[] {DynamoDbAsyncClient.class}, (proxy, method, args) -> {
+			if (method.getName().equals("updateItem")) {
+				return calls.incrementAndGet() == 2 ? held : CompletableFuture.completedFuture(response);
+			}
+			try {
+				return method.invoke(real, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		});
+
+		final var scheduler = FanOutScheduler.builder().maxInFlight(Operation.UPDATE_ITEM, 1).build();
+		final var db = database(manager(client, scheduler));
+		final var ids = IntStream.range(0, 20000).mapToObj(i -> "device" + i).collect(Collectors.toList());
+		final var linked = db.links(group, Device.class, ids);
+		Assertions.assertEquals(20000 - 1, scheduler.getQueueDepth("table", Operation.UPDATE_ITEM));
+
+		held.complete(response);
+		linked.get(1, TimeUnit.MINUTES);
+		Assertions.assertEquals(20000 + 1, calls.get());
+		Assertions.assertEquals(0, scheduler.getInFlight("table", Operation.UPDATE_ITEM));
+	}
+
+	private DynamoDbManager manager(final DynamoDbManager dynamoDbManager, final FanOutScheduler scheduler) {
+		return manager(dynamoDbManager.getDynamoDbAsyncClient(), scheduler);
+	}
+
+	private DynamoDbManager manager(final DynamoDbAsyncClient client, final FanOutScheduler scheduler) {
+		return DynamoDbManager.builder()
+				.dynamoDbAsyncClient(client)
+				.tables("table")
+				.fanOutScheduler(scheduler)
+				.build();
+	}
+
+	private Database database(final DynamoDbManager manager) {
+		final var db = manager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		return db;
+	}
+
+	static class Group extends Table {
+		private String name;
+
+		public Group() {
+		}
+
+		public Group(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class Device extends Table {
+		private String name;
+
+		public Device() {
+		}
+
+		public Device(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -18,11 +18,17 @@ import com.fleetpin.graphql.database.manager.Table;
 import com.fleetpin.graphql.database.manager.annotations.History;
 import com.fleetpin.graphql.database.manager.annotations.TableName;
 import com.fleetpin.graphql.database.manager.test.annotations.DatabaseNames;
+import com.fleetpin.graphql.database.manager.test.annotations.DatabaseOrganisation;
 import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
 import org.junit.jupiter.api.Assertions;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.time.Instant;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.concurrent.ExecutionException;
 
 final class DynamoDbHistoryTest {
@@ -539,6 +545,102 @@ final class DynamoDbHistoryTest {
 	    }, "StartsWith can only be used with updatedAt.");
 	}
 	
+	@TestDatabase
+	void testDestroyOrganisationRemovesHistory(@DatabaseOrganisation("destroyed") final Database db, final HistoryProcessor historyProcessor) throws InterruptedException, ExecutionException {
+		var table1 = new SimpleTable("revision1");
+		table1.setId("testTable1");
+		db.put(table1).get();
+		table1 = new SimpleTable("revision2");
+		table1.setId("testTable1");
+		table1.setRevision(1);
+		db.put(table1).get();
+		historyProcessor.process();
+
+		var counts = db.destroyOrganisationCounts("destroyed").get();
+		Assertions.assertEquals(Map.of("table", 1L, "table_history", 2L), counts);
+
+		var history = db.queryHistory(QueryHistoryBuilder.create(SimpleTable.class).id("testTable1").build()).get();
+		Assertions.assertEquals(0, history.size());
+	}
+
+	@TestDatabase
+	void testDestroyOrganisationLeavesNoTombstones(@DatabaseOrganisation("destroyed") final Database db, final HistoryProcessor historyProcessor) throws InterruptedException, ExecutionException {
+		var table1 = new SimpleTable("revision1");
+		table1.setId("testTable1");
+		db.put(table1).get();
+		historyProcessor.process();
+
+		db.destroyOrganisation("destroyed").get();
+		//the stream sees the destroy after the history has gone
+		historyProcessor.process();
+
+		var history = db.queryHistory(QueryHistoryBuilder.create(SimpleTable.class).id("testTable1").build()).get();
+		Assertions.assertEquals(0, history.size());
+		Assertions.assertEquals(0L, (long) db.takeIncrementalBackup("destroyed", Instant.EPOCH, new ByteArrayOutputStream()).get());
+	}
+
+	@TestDatabase
+	void testIncrementalBackup(final Database db, final HistoryProcessor historyProcessor) throws InterruptedException, ExecutionException {
+		var kept = db.put(new SimpleTable("kept")).get();
+		var changed = db.put(new SimpleTable("changed")).get();
+		var removed = db.put(new SimpleTable("removed")).get();
+		historyProcessor.process();
+
+		var base = new ByteArrayOutputStream();
+		Assertions.assertEquals(3L, (long) db.backup("organisation", base).get());
+		var since = Instant.now();
+		Thread.sleep(5);
+
+		changed = db.put(changed).get();
+		db.delete(removed, false).get();
+		var added = db.put(new SimpleTable("added")).get();
+		historyProcessor.process();
+
+		//the tombstone is kept out of the entity's history
+		var removedHistory = db.queryHistory(QueryHistoryBuilder.create(SimpleTable.class).id(removed.getId()).build()).get();
+		Assertions.assertEquals(1, removedHistory.size());
+
+		var increment = new ByteArrayOutputStream();
+		Assertions.assertEquals(3L, (long) db.takeIncrementalBackup("organisation", since, increment, true).get());
+
+		db.destroyOrganisation("organisation").get();
+		db.restoreIncremental(new ByteArrayInputStream(base.toByteArray()), List.of(new ByteArrayInputStream(increment.toByteArray()))).get();
+
+		var restored = db.query(SimpleTable.class).get().stream().collect(Collectors.toMap(Table::getId, table -> table));
+		Assertions.assertEquals(3, restored.size());
+		Assertions.assertEquals("kept", restored.get(kept.getId()).getName());
+		Assertions.assertEquals(2L, restored.get(changed.getId()).getRevision());
+		Assertions.assertEquals("added", restored.get(added.getId()).getName());
+		Assertions.assertFalse(restored.containsKey(removed.getId()));
+	}
+
+	@TestDatabase
+	void testIncrementalBackupDeleteStraightAfterPut(final Database db, final HistoryProcessor historyProcessor) throws InterruptedException, ExecutionException {
+		var kept = db.put(new SimpleTable("kept")).get();
+		historyProcessor.process();
+
+		var base = new ByteArrayOutputStream();
+		Assertions.assertEquals(1L, (long) db.backup("organisation", base).get());
+		var since = Instant.now();
+		Thread.sleep(5);
+
+		//the stream only dates the delete to the second, the tombstone must still sort after the put
+		var flash = db.put(new SimpleTable("flash")).get();
+		db.delete(flash, false).get();
+		historyProcessor.process();
+
+		var increment = new ByteArrayOutputStream();
+		db.takeIncrementalBackup("organisation", since, increment, true).get();
+
+		db.destroyOrganisation("organisation").get();
+		db.restoreIncremental(new ByteArrayInputStream(base.toByteArray()), List.of(new ByteArrayInputStream(increment.toByteArray()))).get();
+
+		var restored = db.query(SimpleTable.class).get().stream().collect(Collectors.toMap(Table::getId, table -> table));
+		Assertions.assertEquals(1, restored.size());
+		Assertions.assertEquals("kept", restored.get(kept.getId()).getName());
+		Assertions.assertFalse(restored.containsKey(flash.getId()));
+	}
+
 	@History
 	static class SimpleTable extends Table {
 		private String name;
@@ -20,6 +20,7 @@ import com.fleetpin.graphql.database.manager.annotations.GlobalIndex;
 import com.fleetpin.graphql.database.manager.annotations.SecondaryIndex;
 import com.fleetpin.graphql.database.manager.dynamo.DynamoBackupItem;
 import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.dynamo.EntityCodec;
 import com.fleetpin.graphql.database.manager.test.annotations.DatabaseNames;
 import com.fleetpin.graphql.database.manager.test.annotations.DatabaseOrganisation;
 import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
@@ -187,6 +188,21 @@ final class DynamoDbIndexesTest {
 		Assertions.assertNull(nonExistent);
 	}
 
+	@TestDatabase
+	void testGeneratedCodec(final Database db) throws ExecutionException, InterruptedException {
+		final var codec = EntityCodec.of(SimpleTable.class);
+		Assertions.assertEquals("DynamoDbIndexesTest_SimpleTable_EntityCodec", codec.getClass().getSimpleName());
+		Assertions.assertEquals("simpletables", codec.getTable());
+		Assertions.assertFalse(codec.hasHistory());
+
+		final var entry = new SimpleTable("garry", "john");
+		Assertions.assertEquals("john", codec.getSecondaryGlobal(entry));
+		Assertions.assertEquals("garry", codec.getSecondaryOrganisation(entry));
+
+		db.put(entry).get();
+		Assertions.assertEquals("garry", db.queryGlobalUnique(SimpleTable.class, "john").get().getName());
+	}
+
 	private void checkResponseNameField(List<BackupItem> queryResult, Integer rank, List<String> names) {
 		var jsonMap = queryResult.get(rank).getItem();
 		ObjectMapper om = new ObjectMapper();
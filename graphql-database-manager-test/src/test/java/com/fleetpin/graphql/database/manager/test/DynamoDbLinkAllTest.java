@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.WriteResult;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+final class DynamoDbLinkAllTest {
+
+	@TestDatabase
+	void testLinkAll(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("group")).get();
+		var devices = new ArrayList<Device>();
+		for (int i = 0; i < 60; i++) {
+			devices.add(new Device("device" + i));
+		}
+		db.putAll(devices, true).get();
+
+		var results = db.linkAll(Group.class, group.getId(), devices).get();
+		Assertions.assertTrue(results.stream().allMatch(WriteResult::isSuccess));
+		for (var device : devices) {
+			Assertions.assertEquals(2, device.getRevision());
+			Assertions.assertEquals(Set.of(group.getId()), db.getLinkIds(device, Group.class));
+		}
+
+		group = db.get(Group.class, group.getId()).get();
+		var linked = db.getLinks(group, Device.class).get().stream().map(Device::getId).collect(Collectors.toSet());
+		Assertions.assertEquals(devices.stream().map(Device::getId).collect(Collectors.toSet()), linked);
+		Assertions.assertEquals("group", db.getLink(db.get(Device.class, devices.get(0).getId()).get(), Group.class).get().getName());
+	}
+
+	@TestDatabase
+	void testMoveBetweenGroups(final Database db) throws InterruptedException, ExecutionException {
+		var from = db.put(new Group("from")).get();
+		var to = db.put(new Group("to")).get();
+		var devices = new ArrayList<Device>();
+		for (int i = 0; i < 10; i++) {
+			devices.add(new Device("device" + i));
+		}
+		db.putAll(devices, true).get();
+		db.linkAll(Group.class, from.getId(), devices).get();
+
+		var results = db.linkAll(Group.class, to.getId(), devices).get();
+		Assertions.assertTrue(results.stream().allMatch(WriteResult::isSuccess));
+
+		Assertions.assertTrue(db.getLinkIds(db.get(Group.class, from.getId()).get(), Device.class).isEmpty());
+		Assertions.assertEquals(10, db.getLinkIds(db.get(Group.class, to.getId()).get(), Device.class).size());
+		Assertions.assertEquals(Set.of(to.getId()), db.getLinkIds(db.get(Device.class, devices.get(3).getId()).get(), Group.class));
+	}
+
+	@TestDatabase
+	void testStaleEntity(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("group")).get();
+		var devices = new ArrayList<Device>();
+		for (int i = 0; i < 5; i++) {
+			devices.add(new Device("device" + i));
+		}
+		db.putAll(devices, true).get();
+
+		var stale = new Device("stale");
+		stale.setId(devices.get(2).getId());
+		stale.setRevision(7);
+		var toLink = new ArrayList<>(devices);
+		toLink.set(2, stale);
+
+		List<WriteResult<Device>> results = db.linkAll(Group.class, group.getId(), toLink).get();
+		Assertions.assertTrue(results.get(2).isRevisionMismatch());
+		Assertions.assertEquals(4, results.stream().filter(WriteResult::isSuccess).count());
+
+		var linked = new HashSet<>(db.getLinkIds(db.get(Group.class, group.getId()).get(), Device.class));
+		Assertions.assertEquals(4, linked.size());
+		Assertions.assertFalse(linked.contains(stale.getId()));
+	}
+
+	static class Group extends Table {
+		private String name;
+
+		public Group() {
+		}
+
+		public Group(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class Device extends Table {
+		private String name;
+
+		public Device() {
+		}
+
+		public Device(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
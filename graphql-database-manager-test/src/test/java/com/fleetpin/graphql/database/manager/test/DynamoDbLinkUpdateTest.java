@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import com.fleetpin.graphql.database.manager.util.TableCoreUtil;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+final class DynamoDbLinkUpdateTest {
+
+	@TestDatabase
+	void testLinkToItemWithoutLinks(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = database(dynamoDbManager);
+		final var group = db.put(new Group("group")).get();
+		removeLinks(dynamoDbManager, group);
+
+		var device = db.put(new Device("device")).get();
+		device = db.link(device, Group.class, group.getId()).get();
+		Assertions.assertEquals(2, device.getRevision());
+
+		final var fresh = database(dynamoDbManager);
+		final var storedGroup = fresh.get(Group.class, group.getId()).get();
+		Assertions.assertEquals("device", fresh.getLink(storedGroup, Device.class).get().getName());
+		Assertions.assertEquals("group", fresh.getLink(fresh.get(Device.class, device.getId()).get(), Group.class).get().getName());
+	}
+
+	@TestDatabase
+	void testUnlinkFromItemWithoutLinks(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = database(dynamoDbManager);
+		final var group = db.put(new Group("group")).get();
+		var device = db.put(new Device("device")).get();
+		device = db.link(device, Group.class, group.getId()).get();
+		removeLinks(dynamoDbManager, group);
+
+		device = db.link(device, Group.class, null).get();
+		Assertions.assertTrue(db.getLinkIds(device, Group.class).isEmpty());
+		//nothing to remove so the group is left alone
+		final var fresh = database(dynamoDbManager);
+		final var storedGroup = fresh.get(Group.class, group.getId()).get();
+		Assertions.assertEquals(2, storedGroup.getRevision());
+		Assertions.assertTrue(fresh.getLinkIds(storedGroup, Device.class).isEmpty());
+	}
+
+	@TestDatabase
+	void testEntityLinksKeepOtherTypes(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = database(dynamoDbManager);
+		final var group = db.put(new Group("group")).get();
+		final var other = db.put(new Group("other")).get();
+		var device = db.put(new Device("device")).get();
+		device = db.link(device, Group.class, group.getId()).get();
+		device = db.link(device, Device.class, device.getId()).get();
+		device = db.link(device, Group.class, other.getId()).get();
+
+		final var fresh = database(dynamoDbManager);
+		final var stored = fresh.get(Device.class, device.getId()).get();
+		Assertions.assertEquals(List.of(other.getId()), List.copyOf(fresh.getLinkIds(stored, Group.class)));
+		Assertions.assertEquals(List.of(device.getId()), List.copyOf(fresh.getLinkIds(stored, Device.class)));
+		Assertions.assertTrue(fresh.getLinkIds(fresh.get(Group.class, group.getId()).get(), Device.class).isEmpty());
+	}
+
+	@TestDatabase
+	void testConcurrentLinksToLegacyItem(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = database(dynamoDbManager);
+		//the race is not certain to happen in one go so give it a few chances
+		for (int i = 0; i < 10; i++) {
+			final var legacy = db.put(new Group("legacy" + i)).get();
+			final var other = db.put(new Group("other" + i)).get();
+			final var first = db.put(new Device("first" + i)).get();
+			final var second = db.put(new Device("second" + i)).get();
+			removeRevision(dynamoDbManager, legacy);
+
+			final var writer = database(dynamoDbManager);
+			final var stored = writer.get(Group.class, legacy.getId()).get();
+			Assertions.assertEquals(0, stored.getRevision());
+
+			CompletableFuture.allOf(
+					writer.link(stored, Group.class, other.getId()),
+					database(dynamoDbManager).link(first, Group.class, legacy.getId()),
+					database(dynamoDbManager).link(second, Group.class, legacy.getId())).get();
+
+			final var fresh = database(dynamoDbManager);
+			final var result = fresh.get(Group.class, legacy.getId()).get();
+			Assertions.assertEquals(Set.of(other.getId()), Set.copyOf(fresh.getLinkIds(result, Group.class)));
+			Assertions.assertEquals(Set.of(first.getId(), second.getId()), Set.copyOf(fresh.getLinkIds(result, Device.class)));
+		}
+	}
+
+	@TestDatabase
+	void testTransactionKeepsLinksOnLegacyItem(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = database(dynamoDbManager);
+		final var legacy = db.put(new Group("legacy")).get();
+		final var other = db.put(new Group("other")).get();
+		final var device = db.put(new Device("device")).get();
+		removeRevision(dynamoDbManager, legacy);
+
+		final var writer = database(dynamoDbManager);
+		final var stored = writer.get(Group.class, legacy.getId()).get();
+		Assertions.assertEquals(0, stored.getRevision());
+
+		//linked after the transaction read the group so it does not know about it
+		database(dynamoDbManager).link(device, Group.class, legacy.getId()).get();
+		writer.transaction(tx -> tx.link(stored, Group.class, other.getId())).get();
+
+		final var fresh = database(dynamoDbManager);
+		final var result = fresh.get(Group.class, legacy.getId()).get();
+		Assertions.assertEquals(List.of(other.getId()), List.copyOf(fresh.getLinkIds(result, Group.class)));
+		Assertions.assertEquals(List.of(device.getId()), List.copyOf(fresh.getLinkIds(result, Device.class)));
+	}
+
+	//items written before revisions were tracked are never checked
+	private void removeRevision(final DynamoDbManager dynamoDbManager, final Table entity) throws InterruptedException, ExecutionException {
+		dynamoDbManager.getDynamoDbAsyncClient().updateItem(request -> request.tableName("table")
+				.key(Map.of(
+						"organisationId", AttributeValue.builder().s("organisation").build(),
+						"id", AttributeValue.builder().s(TableCoreUtil.table(entity.getClass()) + ":" + entity.getId()).build()))
+				.updateExpression("REMOVE revision")).get();
+	}
+
+	//items written before every put included a links map
+	private void removeLinks(final DynamoDbManager dynamoDbManager, final Table entity) throws InterruptedException, ExecutionException {
+		dynamoDbManager.getDynamoDbAsyncClient().updateItem(request -> request.tableName("table")
+				.key(Map.of(
+						"organisationId", AttributeValue.builder().s("organisation").build(),
+						"id", AttributeValue.builder().s(TableCoreUtil.table(entity.getClass()) + ":" + entity.getId()).build()))
+				.updateExpression("REMOVE links")).get();
+	}
+
+	private Database database(final DynamoDbManager manager) {
+		final var db = manager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		return db;
+	}
+
+	static class Group extends Table {
+		private String name;
+
+		public Group() {
+		}
+
+		public Group(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class Device extends Table {
+		private String name;
+
+		public Device() {
+		}
+
+		public Device(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
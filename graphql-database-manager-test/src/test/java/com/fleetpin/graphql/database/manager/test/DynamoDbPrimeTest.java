@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.annotations.GlobalIndex;
+import com.fleetpin.graphql.database.manager.annotations.SecondaryIndex;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+final class DynamoDbPrimeTest {
+
+	@TestDatabase
+	void testPutPrimes(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+
+		final var garry = db.put(new SimpleTable("garry")).get();
+		Assertions.assertSame(garry, db.get(SimpleTable.class, garry.getId()).get());
+
+		garry.name = "bob";
+		final var bob = db.put(garry).get();
+		final var fetched = db.get(SimpleTable.class, garry.getId()).get();
+		Assertions.assertSame(bob, fetched);
+		Assertions.assertEquals(2, fetched.getRevision());
+
+		final var fresh = dynamoDbManager.getDatabase("organisation");
+		fresh.start(new CompletableFuture<>());
+		Assertions.assertEquals(2, fresh.get(SimpleTable.class, garry.getId()).get().getRevision());
+	}
+
+	@TestDatabase
+	void testLinksPrime(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+
+		var garry = db.put(new SimpleTable("garry")).get();
+		final var john = db.put(new AnotherTable("john")).get();
+		final var frank = db.put(new AnotherTable("frank")).get();
+
+		garry = db.links(garry, AnotherTable.class, List.of(john.getId(), frank.getId())).get();
+		Assertions.assertSame(garry, db.get(SimpleTable.class, garry.getId()).get());
+
+		garry = db.unlink(garry, AnotherTable.class, john.getId()).get();
+		Assertions.assertSame(garry, db.get(SimpleTable.class, garry.getId()).get());
+		Assertions.assertEquals(1, db.getLinkIds(garry, AnotherTable.class).size());
+
+		final var fresh = dynamoDbManager.getDatabase("organisation");
+		fresh.start(new CompletableFuture<>());
+		final var stored = fresh.get(SimpleTable.class, garry.getId()).get();
+		Assertions.assertEquals(garry.getRevision(), stored.getRevision());
+		Assertions.assertEquals(Set.of(frank.getId()), fresh.getLinkIds(stored, AnotherTable.class));
+
+		//the revision handed back can be used for the next write
+		garry = db.deleteLinks(garry).get();
+		Assertions.assertSame(garry, db.get(SimpleTable.class, garry.getId()).get());
+		Assertions.assertTrue(db.getLinkIds(garry, AnotherTable.class).isEmpty());
+		db.put(garry).get();
+	}
+
+	@TestDatabase
+	void testQueryPrimes(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var writer = dynamoDbManager.getDatabase("organisation");
+		writer.start(new CompletableFuture<>());
+		final var garry = writer.put(new SimpleTable("garry", "john")).get();
+
+		var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		var list = db.query(SimpleTable.class).get();
+		Assertions.assertSame(list.get(0), db.get(SimpleTable.class, garry.getId()).get());
+
+		db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		list = db.queryGlobal(SimpleTable.class, "john").get();
+		Assertions.assertSame(list.get(0), db.get(SimpleTable.class, garry.getId()).get());
+
+		db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		list = db.querySecondary(SimpleTable.class, "garry").get();
+		Assertions.assertEquals("john", list.get(0).getGlobalLookup());
+		Assertions.assertEquals(1, list.get(0).getRevision());
+		Assertions.assertSame(list.get(0), db.get(SimpleTable.class, garry.getId()).get());
+	}
+
+	@TestDatabase
+	void testQueryKeepsLoaded(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		final var garry = db.put(new SimpleTable("garry")).get();
+
+		final var list = db.query(SimpleTable.class).get();
+		Assertions.assertNotSame(garry, list.get(0));
+		Assertions.assertSame(garry, db.get(SimpleTable.class, garry.getId()).get());
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+		private String globalLookup;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String name) {
+			this.name = name;
+		}
+
+		public SimpleTable(String name, String globalLookup) {
+			this.name = name;
+			this.globalLookup = globalLookup;
+		}
+
+		@SecondaryIndex
+		public String getName() {
+			return name;
+		}
+
+		@GlobalIndex
+		public String getGlobalLookup() {
+			return globalLookup;
+		}
+	}
+
+	static class AnotherTable extends Table {
+		private String name;
+
+		public AnotherTable() {
+		}
+
+		public AnotherTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
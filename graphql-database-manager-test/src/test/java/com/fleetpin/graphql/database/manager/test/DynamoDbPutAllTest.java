@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.RevisionMismatchException;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.WriteResult;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+final class DynamoDbPutAllTest {
+
+	@TestDatabase
+	void testUnchecked(final Database db) throws InterruptedException, ExecutionException {
+		var entities = new ArrayList<SimpleTable>();
+		for (int i = 0; i < 60; i++) {
+			entities.add(new SimpleTable("name" + i));
+		}
+
+		var results = db.putAll(entities, false).get();
+		Assertions.assertEquals(60, results.size());
+		Assertions.assertTrue(results.stream().allMatch(WriteResult::isSuccess));
+		for (int i = 0; i < 60; i++) {
+			Assertions.assertSame(entities.get(i), results.get(i).getEntity());
+			Assertions.assertNotNull(results.get(i).getEntity().getId());
+			Assertions.assertEquals(1, results.get(i).getEntity().getRevision());
+		}
+
+		Assertions.assertEquals(60, db.query(SimpleTable.class).get().size());
+	}
+
+	@TestDatabase
+	void testCheckedReportsMismatch(final Database db) throws InterruptedException, ExecutionException {
+		var entities = new ArrayList<SimpleTable>();
+		for (int i = 0; i < 20; i++) {
+			entities.add(new SimpleTable("name" + i));
+		}
+		db.putAll(entities, true).get();
+
+		var stale = new SimpleTable("stale");
+		stale.setId(entities.get(5).getId());
+		stale.setRevision(0);
+
+		var updates = new ArrayList<SimpleTable>(entities);
+		updates.set(5, stale);
+		updates.forEach(entity -> entity.name = entity.name + " updated");
+
+		var results = db.putAll(updates, true).get();
+		Assertions.assertFalse(results.get(5).isSuccess());
+		Assertions.assertTrue(results.get(5).isRevisionMismatch());
+		Assertions.assertTrue(results.get(5).getFailure() instanceof RevisionMismatchException);
+
+		var succeeded = results.stream().filter(WriteResult::isSuccess).collect(Collectors.toList());
+		Assertions.assertEquals(19, succeeded.size());
+		succeeded.forEach(result -> Assertions.assertEquals(2, result.getEntity().getRevision()));
+
+		var stored = db.query(SimpleTable.class).get();
+		Assertions.assertEquals(19, stored.stream().filter(entity -> entity.getName().endsWith("updated")).count());
+		Assertions.assertEquals("name5", db.get(SimpleTable.class, stale.getId()).get().getName());
+	}
+
+	@TestDatabase
+	void testRepeatedEntity(final Database db) throws InterruptedException, ExecutionException {
+		var entity = db.put(new SimpleTable("first")).get();
+		entity.name = "second";
+
+		List<WriteResult<SimpleTable>> results = db.putAll(List.of(entity, entity), true).get();
+		Assertions.assertTrue(results.get(0).isSuccess());
+		Assertions.assertTrue(results.get(1).isSuccess());
+		Assertions.assertEquals(3, entity.getRevision());
+		Assertions.assertEquals(3, db.get(SimpleTable.class, entity.getId()).get().getRevision());
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.test.annotations.DatabaseNames;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+final class DynamoDbQueryBatchTest {
+
+	@TestDatabase
+	void testOverlappingPrefixes(final Database db) throws InterruptedException, ExecutionException {
+		for (var id : List.of("a:1", "a:2", "ab:1", "b:1", "b:2", "c:1")) {
+			db.put(new SimpleTable(id, id)).get();
+		}
+		db.put(new AnotherTable("a:1")).get();
+
+		//all queued before the loader dispatches so they go through as one batch
+		var a = db.query(SimpleTable.class, builder -> builder.startsWith("a"));
+		var aColon = db.query(SimpleTable.class, builder -> builder.startsWith("a:"));
+		var aColonAgain = db.query(SimpleTable.class, builder -> builder.startsWith("a:"));
+		var ab = db.query(SimpleTable.class, builder -> builder.startsWith("ab"));
+		var b = db.query(SimpleTable.class, builder -> builder.startsWith("b:"));
+		var missing = db.query(SimpleTable.class, builder -> builder.startsWith("d"));
+		var limited = db.query(SimpleTable.class, builder -> builder.startsWith("a").limit(1));
+		var other = db.query(AnotherTable.class, builder -> builder.startsWith("a"));
+
+		Assertions.assertEquals(Set.of("a:1", "a:2", "ab:1"), ids(a.get()));
+		Assertions.assertEquals(Set.of("a:1", "a:2"), ids(aColon.get()));
+		Assertions.assertEquals(Set.of("a:1", "a:2"), ids(aColonAgain.get()));
+		Assertions.assertEquals(Set.of("ab:1"), ids(ab.get()));
+		Assertions.assertEquals(Set.of("b:1", "b:2"), ids(b.get()));
+		Assertions.assertTrue(missing.get().isEmpty());
+		Assertions.assertEquals(Set.of("a:1"), ids(limited.get()));
+		Assertions.assertEquals(Set.of("a:1"), ids(other.get()));
+	}
+
+	@TestDatabase
+	void testWholeTypeCoversPrefixes(final Database db) throws InterruptedException, ExecutionException {
+		for (var id : List.of("a:1", "b:1", "c:1")) {
+			db.put(new SimpleTable(id, id)).get();
+		}
+
+		var all = db.query(SimpleTable.class);
+		var b = db.query(SimpleTable.class, builder -> builder.startsWith("b"));
+
+		Assertions.assertEquals(Set.of("a:1", "b:1", "c:1"), ids(all.get()));
+		Assertions.assertEquals(Set.of("b:1"), ids(b.get()));
+	}
+
+	@TestDatabase
+	void testInheritance(@DatabaseNames({"prod", "stage"}) final Database db, @DatabaseNames({"prod"}) final Database dbProd) throws InterruptedException, ExecutionException {
+		dbProd.put(new SimpleTable("a:1", "prod")).get();
+		dbProd.put(new SimpleTable("a:2", "prod")).get();
+		db.put(new SimpleTable("a:2", "stage")).get();
+		db.put(new SimpleTable("a:3", "stage")).get();
+
+		var a = db.query(SimpleTable.class, builder -> builder.startsWith("a"));
+		var a2 = db.query(SimpleTable.class, builder -> builder.startsWith("a:2"));
+
+		Assertions.assertEquals(Set.of("a:1", "a:2", "a:3"), ids(a.get()));
+		Assertions.assertEquals(1, a2.get().size());
+		Assertions.assertEquals("stage", a2.get().get(0).getName());
+	}
+
+	private Set<String> ids(List<? extends Table> entries) {
+		return entries.stream().map(Table::getId).collect(Collectors.toSet());
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String id, String name) {
+			setId(id);
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class AnotherTable extends Table {
+
+		public AnotherTable() {
+		}
+
+		public AnotherTable(String id) {
+			setId(id);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+final class DynamoDbQueryCacheTest {
+
+	@TestDatabase
+	void testOtherTypeKeepsQuery(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+
+		db.put(new SimpleTable("a:1", "garry")).get();
+		final var before = db.query(SimpleTable.class).get();
+		Assertions.assertEquals(1, before.size());
+
+		db.put(new AnotherTable("a:1", "john")).get();
+
+		final var after = db.query(SimpleTable.class).get();
+		Assertions.assertSame(before.get(0), after.get(0));
+		Assertions.assertEquals(1, db.query(AnotherTable.class).get().size());
+	}
+
+	@TestDatabase
+	void testPrefixInvalidation(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+
+		db.put(new SimpleTable("a:1", "garry")).get();
+		db.put(new SimpleTable("b:1", "john")).get();
+
+		final var aBefore = db.query(SimpleTable.class, builder -> builder.startsWith("a:")).get();
+		final var bBefore = db.query(SimpleTable.class, builder -> builder.startsWith("b:")).get();
+		Assertions.assertEquals(1, db.query(SimpleTable.class, builder -> builder.startsWith("b:")).get().size());
+		Assertions.assertEquals(2, db.query(SimpleTable.class).get().size());
+
+		db.put(new SimpleTable("b:2", "frank")).get();
+
+		final var aAfter = db.query(SimpleTable.class, builder -> builder.startsWith("a:")).get();
+		Assertions.assertSame(aBefore.get(0), aAfter.get(0));
+
+		final var bAfter = db.query(SimpleTable.class, builder -> builder.startsWith("b:")).get();
+		Assertions.assertEquals(1, bBefore.size());
+		Assertions.assertEquals(2, bAfter.size());
+		Assertions.assertEquals(3, db.query(SimpleTable.class).get().size());
+	}
+
+	@TestDatabase
+	void testDeleteLinksOnlyClearsLinked(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = dynamoDbManager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+
+		var garry = db.put(new SimpleTable("a:1", "garry")).get();
+		final var john = db.put(new AnotherTable("a:1", "john")).get();
+		final var frank = db.put(new AnotherTable("a:2", "frank")).get();
+
+		garry = db.link(garry, AnotherTable.class, john.getId()).get();
+
+		final var johnBefore = db.get(AnotherTable.class, john.getId()).get();
+		final var frankBefore = db.get(AnotherTable.class, frank.getId()).get();
+		Assertions.assertEquals(1, db.getLinks(johnBefore, SimpleTable.class).get().size());
+
+		db.deleteLinks(garry).get();
+
+		Assertions.assertSame(frankBefore, db.get(AnotherTable.class, frank.getId()).get());
+		final var johnAfter = db.get(AnotherTable.class, john.getId()).get();
+		Assertions.assertNotSame(johnBefore, johnAfter);
+		Assertions.assertTrue(db.getLinks(johnAfter, SimpleTable.class).get().isEmpty());
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String id, String name) {
+			setId(id);
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class AnotherTable extends Table {
+		private String name;
+
+		public AnotherTable() {
+		}
+
+		public AnotherTable(String id, String name) {
+			setId(id);
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
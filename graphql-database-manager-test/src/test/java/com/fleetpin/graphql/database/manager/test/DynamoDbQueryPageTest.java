@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.QueryBuilder;
+import com.fleetpin.graphql.database.manager.QueryPage;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.test.annotations.DatabaseNames;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+final class DynamoDbQueryPageTest {
+
+	@TestDatabase
+	void testPages(final Database db) throws InterruptedException, ExecutionException {
+		for (int i = 0; i < 25; i++) {
+			db.put(new SimpleTable(String.format("a:%02d", i), "name" + i)).get();
+		}
+
+		var first = page(db, null, 10);
+		Assertions.assertEquals(10, first.getItems().size());
+		Assertions.assertTrue(first.hasMore());
+		Assertions.assertEquals("a:00", first.getItems().get(0).getId());
+
+		var second = page(db, first.getCursor(), 10);
+		Assertions.assertEquals("a:10", second.getItems().get(0).getId());
+		Assertions.assertTrue(second.hasMore());
+
+		var third = page(db, second.getCursor(), 10);
+		Assertions.assertEquals(5, third.getItems().size());
+		Assertions.assertFalse(third.hasMore());
+		Assertions.assertNull(third.getCursor());
+	}
+
+	@TestDatabase
+	void testExactlyFullPage(final Database db) throws InterruptedException, ExecutionException {
+		for (int i = 0; i < 4; i++) {
+			db.put(new SimpleTable("a:" + i, "name" + i)).get();
+		}
+		var page = page(db, null, 4);
+		Assertions.assertEquals(4, page.getItems().size());
+		Assertions.assertFalse(page.hasMore());
+	}
+
+	@TestDatabase
+	void testPagesAcrossTables(@DatabaseNames({"prod", "stage"}) final Database db, @DatabaseNames({"prod"}) final Database dbProd) throws InterruptedException, ExecutionException {
+		for (int i = 0; i < 12; i++) {
+			dbProd.put(new SimpleTable(String.format("a:%02d", i), "prod")).get();
+		}
+		for (int i = 6; i < 18; i += 2) {
+			db.put(new SimpleTable(String.format("a:%02d", i), "stage")).get();
+		}
+		db.delete(db.get(SimpleTable.class, "a:03").get(), false).get();
+
+		var expected = db.query(SimpleTable.class).get();
+
+		var all = new ArrayList<SimpleTable>();
+		String cursor = null;
+		do {
+			var page = page(db, cursor, 3);
+			Assertions.assertTrue(page.getItems().size() <= 3);
+			all.addAll(page.getItems());
+			cursor = page.hasMore() ? page.getCursor() : null;
+		} while (cursor != null);
+
+		Assertions.assertEquals(ids(expected), ids(all));
+		Assertions.assertEquals(expected.stream().map(SimpleTable::getName).collect(Collectors.toList()), all.stream().map(SimpleTable::getName).collect(Collectors.toList()));
+	}
+
+	private QueryPage<SimpleTable> page(Database db, String cursor, int size) throws InterruptedException, ExecutionException {
+		return db.queryPage(QueryBuilder.create(SimpleTable.class).limit(size).cursor(cursor).build()).get();
+	}
+
+	private List<String> ids(List<? extends Table> entries) {
+		return entries.stream().map(Table::getId).collect(Collectors.toList());
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String id, String name) {
+			setId(id);
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
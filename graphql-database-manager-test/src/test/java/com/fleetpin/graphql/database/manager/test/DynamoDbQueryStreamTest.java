@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Query;
+import com.fleetpin.graphql.database.manager.QueryBuilder;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.test.annotations.DatabaseNames;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+
+final class DynamoDbQueryStreamTest {
+
+	@TestDatabase
+	void testStreamMatchesQuery(final Database db) throws InterruptedException, ExecutionException {
+		for (int i = 0; i < 50; i++) {
+			db.put(new SimpleTable(String.format("a:%03d", i), "name" + i)).get();
+		}
+		db.put(new SimpleTable("b:1", "other")).get();
+
+		var query = QueryBuilder.create(SimpleTable.class).startsWith("a:").build();
+		var streamed = collect(db, query, 1);
+		var listed = db.query(query).get();
+
+		Assertions.assertEquals(50, streamed.size());
+		Assertions.assertEquals(ids(listed), ids(streamed));
+	}
+
+	@TestDatabase
+	void testLimitAndAfter(final Database db) throws InterruptedException, ExecutionException {
+		for (int i = 0; i < 10; i++) {
+			db.put(new SimpleTable("a:" + i, "name" + i)).get();
+		}
+
+		var limited = collect(db, QueryBuilder.create(SimpleTable.class).limit(3).build(), 100);
+		Assertions.assertEquals(List.of("a:0", "a:1", "a:2"), ids(limited));
+
+		var after = collect(db, QueryBuilder.create(SimpleTable.class).after("a:6").build(), 2);
+		Assertions.assertEquals(List.of("a:7", "a:8", "a:9"), ids(after));
+	}
+
+	@TestDatabase
+	void testStreamMergesTables(@DatabaseNames({"prod", "stage"}) final Database db, @DatabaseNames({"prod"}) final Database dbProd) throws InterruptedException, ExecutionException {
+		dbProd.put(new SimpleTable("a:1", "prod")).get();
+		dbProd.put(new SimpleTable("a:2", "prod")).get();
+		dbProd.put(new SimpleTable("a:3", "prod")).get();
+		db.put(new SimpleTable("a:2", "stage")).get();
+		db.put(new SimpleTable("a:4", "stage")).get();
+		db.delete(db.get(SimpleTable.class, "a:3").get(), false).get();
+
+		var streamed = collect(db, QueryBuilder.create(SimpleTable.class).build(), 1);
+		Assertions.assertEquals(List.of("a:1", "a:2", "a:4"), ids(streamed));
+		Assertions.assertEquals(List.of("prod", "stage", "stage"), streamed.stream().map(SimpleTable::getName).collect(Collectors.toList()));
+	}
+
+	private <T extends Table> List<T> collect(Database db, Query<T> query, int batch) throws InterruptedException, ExecutionException {
+		var result = new CompletableFuture<List<T>>();
+		db.queryStream(query).subscribe(new Flow.Subscriber<T>() {
+			private final List<T> items = new ArrayList<>();
+			private Flow.Subscription subscription;
+			private int outstanding;
+
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				this.subscription = subscription;
+				outstanding = batch;
+				subscription.request(batch);
+			}
+
+			@Override
+			public void onNext(T item) {
+				items.add(item);
+				if (--outstanding == 0) {
+					outstanding = batch;
+					subscription.request(batch);
+				}
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				result.completeExceptionally(throwable);
+			}
+
+			@Override
+			public void onComplete() {
+				result.complete(items);
+			}
+		});
+		return result.get();
+	}
+
+	private List<String> ids(List<? extends Table> entries) {
+		return entries.stream().map(Table::getId).collect(Collectors.toList());
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(String id, String name) {
+			setId(id);
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoBackupItem;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoTableExport;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import com.fleetpin.graphql.database.manager.util.BackupReader;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+final class DynamoDbTableExportTest {
+
+	@TestDatabase
+	void testExportAllOrganisations(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException, IOException {
+		for (int organisation = 0; organisation < 3; organisation++) {
+			final var db = dynamoDbManager.getDatabase("organisation-" + organisation);
+			db.start(new CompletableFuture<>());
+			final var entries = new ArrayList<SimpleTable>();
+			for (int i = 0; i < 20; i++) {
+				entries.add(new SimpleTable("entry" + i));
+			}
+			db.putAll(entries, false).get();
+		}
+
+		final var directory = Files.createTempDirectory("export");
+		final var export = export(dynamoDbManager, directory);
+		Assertions.assertEquals(60L, (long) export.run().get());
+
+		Assertions.assertEquals(60, read(dynamoDbManager, export));
+
+		//every segment has a finished checkpoint so running again reads nothing
+		final var sizes = new ArrayList<Long>();
+		for (int segment = 0; segment < 4; segment++) {
+			sizes.add(Files.size(export.segmentFile(segment)));
+		}
+		Assertions.assertEquals(60L, (long) export(dynamoDbManager, directory).run().get());
+		for (int segment = 0; segment < 4; segment++) {
+			Assertions.assertEquals(sizes.get(segment), Files.size(export.segmentFile(segment)));
+		}
+
+		final var restoreTo = dynamoDbManager.getDatabase("organisation-0");
+		restoreTo.start(new CompletableFuture<>());
+		restoreTo.destroyOrganisation("organisation-0").get();
+		for (int segment = 0; segment < 4; segment++) {
+			try (var in = Files.newInputStream(export.segmentFile(segment))) {
+				restoreTo.restore(in).get();
+			}
+		}
+		Assertions.assertEquals(20, restoreTo.query(SimpleTable.class).get().size());
+	}
+
+	@TestDatabase
+	void testSegmentCountCanNotChangeOnResume(final DynamoDbManager dynamoDbManager) throws ExecutionException, InterruptedException, IOException {
+		final var db = dynamoDbManager.getDatabase("organisation-0");
+		db.start(new CompletableFuture<>());
+		db.put(new SimpleTable("entry")).get();
+
+		final var directory = Files.createTempDirectory("export");
+		Assertions.assertEquals(1L, (long) export(dynamoDbManager, directory).run().get());
+
+		final var resized = DynamoTableExport.builder()
+			.client(dynamoDbManager.getDynamoDbAsyncClient())
+			.objectMapper(dynamoDbManager.getMapper())
+			.table("table")
+			.directory(directory)
+			.segments(2)
+			.build();
+		final var failure = Assertions.assertThrows(ExecutionException.class, () -> resized.run().get());
+		Assertions.assertTrue(failure.getCause() instanceof IllegalStateException);
+	}
+
+	private DynamoTableExport export(final DynamoDbManager dynamoDbManager, final Path directory) {
+		return DynamoTableExport.builder()
+			.client(dynamoDbManager.getDynamoDbAsyncClient())
+			.objectMapper(dynamoDbManager.getMapper())
+			.table("table")
+			.directory(directory)
+			.segments(4)
+			.parallelism(2)
+			.gzip(true)
+			.build();
+	}
+
+	/**
+	 * Reads every segment back checking no item was written twice and every organisation is there
+	 */
+	private int read(final DynamoDbManager dynamoDbManager, final DynamoTableExport export) throws IOException {
+		final var ids = new HashSet<String>();
+		final var organisations = new HashSet<String>();
+		for (int segment = 0; segment < 4; segment++) {
+			try (var in = Files.newInputStream(export.segmentFile(segment));
+				 var reader = new BackupReader<>(dynamoDbManager.getMapper(), in, DynamoBackupItem.class)) {
+				DynamoBackupItem item;
+				while ((item = reader.next()) != null) {
+					Assertions.assertTrue(ids.add(item.getOrganisationId() + ":" + item.getId()));
+					organisations.add(item.getOrganisationId());
+				}
+			}
+		}
+		Assertions.assertEquals(Set.of("organisation-0", "organisation-1", "organisation-2"), organisations);
+		return ids.size();
+	}
+
+	static class SimpleTable extends Table {
+		private String name;
+
+		public SimpleTable() {
+		}
+
+		public SimpleTable(final String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
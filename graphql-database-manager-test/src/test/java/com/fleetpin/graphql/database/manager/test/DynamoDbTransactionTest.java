@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.RevisionMismatchException;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+final class DynamoDbTransactionTest {
+
+	@TestDatabase
+	void testPutAndLinkNew(final Database db) throws InterruptedException, ExecutionException {
+		var group = new Group("group");
+		var device = new Device("device");
+
+		db.transaction(tx -> tx.put(group).put(device).link(device, Group.class, group.getId())).get();
+
+		Assertions.assertNotNull(group.getId());
+		Assertions.assertEquals(1, group.getRevision());
+		Assertions.assertEquals(1, device.getRevision());
+		Assertions.assertEquals(List.of(group.getId()), List.copyOf(db.getLinkIds(device, Group.class)));
+		Assertions.assertEquals(List.of(device.getId()), List.copyOf(db.getLinkIds(group, Device.class)));
+
+		var storedGroup = db.get(Group.class, group.getId()).get();
+		Assertions.assertEquals("group", storedGroup.getName());
+		Assertions.assertEquals("device", db.getLink(storedGroup, Device.class).get().getName());
+		Assertions.assertEquals("group", db.getLink(db.get(Device.class, device.getId()).get(), Group.class).get().getName());
+	}
+
+	@TestDatabase
+	void testLinkExisting(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("group")).get();
+		var device = db.put(new Device("device")).get();
+		device.name = "renamed";
+
+		db.transaction(tx -> tx.put(device).link(device, Group.class, group.getId())).get();
+		Assertions.assertEquals(2, device.getRevision());
+
+		var storedDevice = db.get(Device.class, device.getId()).get();
+		Assertions.assertEquals("renamed", storedDevice.getName());
+		Assertions.assertEquals(2, storedDevice.getRevision());
+		var storedGroup = db.get(Group.class, group.getId()).get();
+		Assertions.assertEquals("renamed", db.getLink(storedGroup, Device.class).get().getName());
+	}
+
+	@TestDatabase
+	void testMoveBetweenGroups(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("group")).get();
+		var first = db.put(new Device("first")).get();
+		var second = db.put(new Device("second")).get();
+		first = db.link(first, Group.class, group.getId()).get();
+
+		var from = first;
+		db.transaction(tx -> tx.unlink(from, Group.class, group.getId()).link(second, Group.class, group.getId())).get();
+
+		Assertions.assertTrue(db.getLinkIds(first, Group.class).isEmpty());
+		var storedGroup = db.get(Group.class, group.getId()).get();
+		Assertions.assertEquals("second", db.getLink(storedGroup, Device.class).get().getName());
+		Assertions.assertNull(db.getLink(db.get(Device.class, first.getId()).get(), Group.class).get());
+	}
+
+	@TestDatabase
+	void testMismatchWritesNothing(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("group")).get();
+		var device = db.put(new Device("device")).get();
+
+		var stale = new Device("stale");
+		stale.setId(device.getId());
+		group.name = "changed";
+
+		var cause = Assertions.assertThrows(ExecutionException.class, () -> db.transaction(tx -> tx.put(group).put(stale).link(stale, Group.class, group.getId())).get());
+		Assertions.assertEquals(RevisionMismatchException.class, cause.getCause().getClass());
+
+		var storedGroup = db.get(Group.class, group.getId()).get();
+		Assertions.assertEquals("group", storedGroup.getName());
+		Assertions.assertEquals(1, storedGroup.getRevision());
+		Assertions.assertTrue(db.getLinkIds(storedGroup, Device.class).isEmpty());
+		Assertions.assertEquals("device", db.get(Device.class, device.getId()).get().getName());
+	}
+
+	@TestDatabase
+	void testDelete(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("group")).get();
+		var device = db.put(new Device("device")).get();
+		device = db.link(device, Group.class, group.getId()).get();
+
+		var linked = device;
+		Assertions.assertThrows(ExecutionException.class, () -> db.transaction(tx -> tx.delete(linked)).get());
+		Assertions.assertNotNull(db.get(Device.class, device.getId()).get());
+
+		db.transaction(tx -> tx.link(linked, Group.class, null).delete(linked)).get();
+		Assertions.assertNull(db.get(Device.class, device.getId()).get());
+		var storedGroup = db.get(Group.class, group.getId()).get();
+		Assertions.assertTrue(db.getLinkIds(storedGroup, Device.class).isEmpty());
+	}
+
+	static class Group extends Table {
+		private String name;
+
+		public Group() {
+		}
+
+		public Group(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class Device extends Table {
+		private String name;
+
+		public Device() {
+		}
+
+		public Device(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.fleetpin.graphql.database.manager.test;
+
+import com.fleetpin.graphql.database.manager.Database;
+import com.fleetpin.graphql.database.manager.Table;
+import com.fleetpin.graphql.database.manager.dynamo.DynamoDbManager;
+import com.fleetpin.graphql.database.manager.test.annotations.TestDatabase;
+import com.fleetpin.graphql.database.manager.util.TableCoreUtil;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Link throughput against DynamoDB Local. Targets without a links map were written before every put included one
+ * and take the old path of a failed conditional write, a write of an empty map and the retry, targets with one take a single write.
+ * Not picked up by {@code mvn test}, run it with {@code mvn test -Dtest=LinkThroughputBenchmark}.
+ */
+final class LinkThroughputBenchmark {
+
+	private static final int LINKS = 500;
+
+	@TestDatabase
+	void linkThroughput(final DynamoDbManager dynamoDbManager) throws InterruptedException, ExecutionException {
+		final var db = database(dynamoDbManager);
+		//warm up
+		linksPerSecond(dynamoDbManager, db, "warm", false);
+
+		final var legacy = linksPerSecond(dynamoDbManager, db, "legacy", true);
+		final var current = linksPerSecond(dynamoDbManager, db, "current", false);
+		System.out.println(LINKS + " links to targets without a links map: " + legacy + " per second");
+		System.out.println(LINKS + " links to targets with a links map: " + current + " per second");
+	}
+
+	private long linksPerSecond(final DynamoDbManager dynamoDbManager, final Database db, final String prefix, final boolean legacy) throws InterruptedException, ExecutionException {
+		final var groups = new ArrayList<Group>();
+		final var devices = new ArrayList<Device>();
+		for (int i = 0; i < LINKS; i++) {
+			final var group = db.put(new Group(prefix + i)).get();
+			if (legacy) {
+				removeLinks(dynamoDbManager, group);
+			}
+			groups.add(group);
+			devices.add(db.put(new Device(prefix + i)).get());
+		}
+
+		final var writer = database(dynamoDbManager);
+		final long start = System.nanoTime();
+		final List<CompletableFuture<Device>> futures = new ArrayList<>();
+		for (int i = 0; i < LINKS; i++) {
+			futures.add(writer.link(devices.get(i), Group.class, groups.get(i).getId()));
+		}
+		CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+		final long took = System.nanoTime() - start;
+		return LINKS * TimeUnit.SECONDS.toNanos(1) / Math.max(took, 1);
+	}
+
+	private void removeLinks(final DynamoDbManager dynamoDbManager, final Table entity) throws InterruptedException, ExecutionException {
+		dynamoDbManager.getDynamoDbAsyncClient().updateItem(request -> request.tableName("table")
+				.key(Map.of(
+						"organisationId", AttributeValue.builder().s("organisation").build(),
+						"id", AttributeValue.builder().s(TableCoreUtil.table(entity.getClass()) + ":" + entity.getId()).build()))
+				.updateExpression("REMOVE links")).get();
+	}
+
+	private Database database(final DynamoDbManager manager) {
+		final var db = manager.getDatabase("organisation");
+		db.start(new CompletableFuture<>());
+		return db;
+	}
+
+	static class Group extends Table {
+		private String name;
+
+		public Group() {
+		}
+
+		public Group(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	static class Device extends Table {
+		private String name;
+
+		public Device() {
+		}
+
+		public Device(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}